@@ -0,0 +1,119 @@
+package org.example.ec_bench;
+
+import org.example.ec_central.model.CityMap;
+import org.example.ec_central.model.TaxiState;
+import org.example.ec_central.service.CityMapProjection;
+import org.example.ec_central.service.TaxiWebSocketService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the production path of the map broadcast: rendering the projection of the fleet into a city map
+ * and broadcasting it to the browsers as a keyframe or as a delta, through a STOMP channel that drops the messages.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CityMapBenchmark {
+
+    @Param({"20", "1000"})
+    private int size;
+
+    @Param({"50", "5000"})
+    private int entities;
+
+    private int[] xs;
+    private int[] ys;
+    private String[] labels;
+    private CityMapProjection projection;
+    private TaxiWebSocketService keyframes;
+    private TaxiWebSocketService deltas;
+    private CityMap populated;
+    private CityMap moved;
+    private int next;
+    private boolean flip;
+    private volatile Message<?> sent;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        xs = new int[entities];
+        ys = new int[entities];
+        labels = new String[entities];
+        for (int i = 0; i < entities; i++) {
+            xs[i] = random.nextInt(size);
+            ys[i] = random.nextInt(size);
+            labels[i] = String.valueOf(i);
+        }
+
+        // Los repositorios solo se usan al arrancar
+        projection = new CityMapProjection(null, null, null);
+        projection.setMapSize(size);
+        for (int i = 0; i < entities; i++) {
+            projection.updateTaxi(labels[i], xs[i], ys[i], TaxiState.EN_ROUTE_TO_PICKUP);
+        }
+        populated = projection.toCityMap();
+        // Un tick típico: una décima parte de la flota avanza una celda
+        for (int i = 0; i < entities; i += 10) {
+            projection.updateTaxi(labels[i], (xs[i] + 1) % size, ys[i], TaxiState.EN_ROUTE_TO_PICKUP);
+        }
+        moved = projection.toCityMap();
+
+        SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> {
+            sent = message;
+            return true;
+        });
+        keyframes = new TaxiWebSocketService(template);
+        keyframes.setKeyframeInterval(1);
+        deltas = new TaxiWebSocketService(template);
+        deltas.setKeyframeInterval(Integer.MAX_VALUE);
+        deltas.broadcastToClients(populated);
+    }
+
+    @Benchmark
+    public CityMap populate() {
+        CityMap map = new CityMap(size);
+        for (int i = 0; i < entities; i++) {
+            map.updatePosition(xs[i], ys[i], labels[i], CityMap.Color.GREEN);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public CityMap renderProjection() {
+        // Un taxi se mueve en cada iteración, así que el mapa se reconstruye siempre
+        int i = next++ % entities;
+        projection.updateTaxi(labels[i], (xs[i] + next) % size, ys[i], TaxiState.EN_ROUTE_TO_PICKUP);
+        return projection.toCityMap();
+    }
+
+    @Benchmark
+    public Message<?> broadcastKeyframe() {
+        keyframes.broadcastToClients(populated);
+        return sent;
+    }
+
+    @Benchmark
+    public Message<?> broadcastDelta() {
+        flip = !flip;
+        deltas.broadcastToClients(flip ? moved : populated);
+        return sent;
+    }
+}
@@ -0,0 +1,100 @@
+package org.example.ec_bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.SecretKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the encryption of a taxi position update, as done by EC_DE when publishing
+ * and by EC_Central when receiving, for both the RSA-wrapped and the session key formats.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EncryptionBenchmark {
+
+    private static final String TAXI_ID = "1";
+
+    private org.example.ec_central.service.EncryptionService central;
+    private org.example.ec_de.services.EncryptionService taxi;
+    private String message;
+    private SecretKey aesKey;
+    private String encodedAesKey;
+    private String rsaEncrypted;
+    private String aesEncrypted;
+    private String gcmEncrypted;
+
+    @Setup
+    public void setup() throws Exception {
+        central = new org.example.ec_central.service.EncryptionService();
+        taxi = new org.example.ec_de.services.EncryptionService();
+        taxi.setCentralPublicKey(central.getCentralPublicKey());
+        message = Fixtures.taxiStatusJson();
+        aesKey = taxi.generateAESKey();
+        encodedAesKey = taxi.encodeKey(aesKey);
+        rsaEncrypted = taxi.encryptWithRSA(encodedAesKey, central.getCentralPublicKey());
+        aesEncrypted = taxi.encryptWithAES(message, aesKey);
+        gcmEncrypted = taxi.encryptWithAESGCM(message, aesKey, TAXI_ID);
+    }
+
+    @Benchmark
+    public String rsaEncrypt() throws Exception {
+        return taxi.encryptWithRSA(encodedAesKey, central.getCentralPublicKey());
+    }
+
+    @Benchmark
+    public String rsaDecrypt() throws Exception {
+        return central.decryptWithRSA(rsaEncrypted);
+    }
+
+    @Benchmark
+    public String aesEncrypt() throws Exception {
+        return taxi.encryptWithAES(message, aesKey);
+    }
+
+    @Benchmark
+    public String aesDecrypt() throws Exception {
+        return central.decryptWithAES(aesEncrypted, aesKey);
+    }
+
+    @Benchmark
+    public String gcmEncrypt() throws Exception {
+        return taxi.encryptWithAESGCM(message, aesKey, TAXI_ID);
+    }
+
+    @Benchmark
+    public String gcmDecrypt() throws Exception {
+        return central.decryptWithAESGCM(gcmEncrypted, aesKey, TAXI_ID);
+    }
+
+    /**
+     * Full legacy publish path: new AES key, AES encryption and RSA key wrapping.
+     */
+    @Benchmark
+    public String legacyPayloadEncrypt() throws Exception {
+        SecretKey key = taxi.generateAESKey();
+        return taxi.encryptWithRSA(taxi.encodeKey(key), central.getCentralPublicKey()) + "#" + taxi.encryptWithAES(message, key);
+    }
+
+    /**
+     * Full legacy receive path: RSA key unwrapping and AES decryption.
+     */
+    @Benchmark
+    public String legacyPayloadDecrypt() throws Exception {
+        SecretKey key = central.decodeKey(central.decryptWithRSA(rsaEncrypted));
+        return central.decryptWithAES(aesEncrypted, key);
+    }
+}
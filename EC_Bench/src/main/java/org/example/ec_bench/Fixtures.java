@@ -0,0 +1,46 @@
+package org.example.ec_bench;
+
+import org.example.ec_central.model.CustomerStatusDto;
+import org.example.ec_central.model.TaxiState;
+import org.example.ec_central.model.TaxiStatusDto;
+import org.example.ec_central.utils.MappingUtils;
+
+/**
+ * Sample messages shared by the benchmarks.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static TaxiStatusDto taxiStatus() {
+        return TaxiStatusDto.builder()
+                            .taxiId("1")
+                            .x(7)
+                            .y(12)
+                            .status(TaxiState.EN_ROUTE_TO_DESTINATION)
+                            .token("3f2b8c1e-5d4a-4e6b-9a7c-0d1e2f3a4b5c")
+                            .build();
+    }
+
+    static CustomerStatusDto customerStatus() {
+        return CustomerStatusDto.builder()
+                                .taxiId("1")
+                                .x(7)
+                                .y(12)
+                                .status(TaxiState.ASSIGNED)
+                                .customerX(3)
+                                .customerY(4)
+                                .destX(15)
+                                .destY(18)
+                                .build();
+    }
+
+    static String taxiStatusJson() {
+        return MappingUtils.map(taxiStatus());
+    }
+
+    static String customerStatusJson() {
+        return MappingUtils.map(customerStatus());
+    }
+}
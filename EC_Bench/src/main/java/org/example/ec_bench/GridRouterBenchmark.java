@@ -0,0 +1,51 @@
+package org.example.ec_bench;
+
+import org.example.ec_de.model.GridGeometry;
+import org.example.ec_de.model.GridRouter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the A* route of a leg across the grid, around a wall with a single gap and a band of costly cells.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GridRouterBenchmark {
+
+    @Param({"20", "100"})
+    private int size;
+
+    private GridRouter router;
+
+    @Setup
+    public void setup() {
+        StringBuilder blocked = new StringBuilder();
+        StringBuilder costs = new StringBuilder();
+        // Muro vertical en el centro con un solo hueco abajo, y una franja cara a su izquierda
+        for (int y = 0; y < size - 1; y++) {
+            blocked.append(size / 2).append(',').append(y).append(';');
+            costs.append(size / 2 - 1).append(',').append(y).append("=5;");
+        }
+        router = GridRouter.fromSpec(new GridGeometry(size, false), blocked.toString(), costs.toString());
+    }
+
+    @Benchmark
+    public int[] route() {
+        return router.route(0, 0, size - 1, 0);
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.ec_bench;
+
+import org.example.ec_central.utils.MappingUtils;
+import org.example.ec_central.utils.StatusDtoCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the JSON mapping and the compact binary encoding of the DTOs exchanged over Kafka, on the side that
+ * actually does each step: EC_DE writes TaxiStatusDto and reads CustomerStatusDto, EC_Central does the opposite.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MappingBenchmark {
+
+    private org.example.ec_de.model.TaxiStatusDto taxiStatus;
+    private org.example.ec_central.model.CustomerStatusDto customerStatus;
+    private String taxiStatusJson;
+    private String customerStatusJson;
+    private byte[] taxiStatusBinary;
+    private byte[] customerStatusBinary;
+
+    @Setup
+    public void setup() {
+        taxiStatus = new org.example.ec_de.model.TaxiStatusDto("1", 7, 12,
+                org.example.ec_de.model.TaxiState.EN_ROUTE_TO_DESTINATION, "3f2b8c1e-5d4a-4e6b-9a7c-0d1e2f3a4b5c");
+        customerStatus = Fixtures.customerStatus();
+        taxiStatusJson = Fixtures.taxiStatusJson();
+        customerStatusJson = Fixtures.customerStatusJson();
+        taxiStatusBinary = org.example.ec_de.utils.StatusDtoCodec.encode(taxiStatus);
+        customerStatusBinary = StatusDtoCodec.encode(customerStatus);
+    }
+
+    @Benchmark
+    public String taxiStatusToJson() {
+        return org.example.ec_de.utils.MappingUtils.map(taxiStatus);
+    }
+
+    @Benchmark
+    public Object taxiStatusFromJson() {
+        return MappingUtils.mapFromString(taxiStatusJson, org.example.ec_central.model.TaxiStatusDto.class);
+    }
+
+    @Benchmark
+    public String customerStatusToJson() {
+        return MappingUtils.map(customerStatus);
+    }
+
+    @Benchmark
+    public Object customerStatusFromJson() {
+        return org.example.ec_de.utils.MappingUtils.mapFromString(customerStatusJson, org.example.ec_de.model.CustomerStatusDto.class);
+    }
+
+    @Benchmark
+    public byte[] taxiStatusToBinary() {
+        return org.example.ec_de.utils.StatusDtoCodec.encode(taxiStatus);
+    }
+
+    @Benchmark
+    public Object taxiStatusFromBinary() {
+        return StatusDtoCodec.decodeTaxiStatus(taxiStatusBinary);
+    }
+
+    @Benchmark
+    public byte[] customerStatusToBinary() {
+        return StatusDtoCodec.encode(customerStatus);
+    }
+
+    @Benchmark
+    public Object customerStatusFromBinary() {
+        return org.example.ec_de.utils.StatusDtoCodec.decodeCustomerStatus(customerStatusBinary);
+    }
+}
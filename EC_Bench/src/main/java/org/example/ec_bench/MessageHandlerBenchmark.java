@@ -0,0 +1,60 @@
+package org.example.ec_bench;
+
+import org.example.ec_central.service.MessageHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the STX/ETX/LRC framing of the socket protocol. The LRC is private and is measured
+ * through buildRequest, which computes it once, and isValidMessage, which recomputes it to check a frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MessageHandlerBenchmark {
+
+    private MessageHandler messageHandler;
+    private String authMessage;
+    private String keyMessage;
+
+    @Setup
+    public void setup() {
+        messageHandler = new MessageHandler();
+        authMessage = messageHandler.buildRequest("AUTH", "1", "token123", MessageHandler.CAPABILITY_SESSION_KEY);
+        // Mensaje con el tamaño de una clave RSA-2048 en Base64
+        keyMessage = messageHandler.buildRequest(MessageHandler.KEY, "1", "A".repeat(344));
+    }
+
+    @Benchmark
+    public String buildRequest() {
+        return messageHandler.buildRequest("AUTH", "1", "token123", MessageHandler.CAPABILITY_SESSION_KEY);
+    }
+
+    @Benchmark
+    public boolean isValidMessage() {
+        return messageHandler.isValidMessage(authMessage);
+    }
+
+    @Benchmark
+    public boolean isValidMessageLarge() {
+        return messageHandler.isValidMessage(keyMessage);
+    }
+
+    @Benchmark
+    public boolean isValidAuthentication() {
+        return messageHandler.isValidAuthentication(authMessage);
+    }
+}
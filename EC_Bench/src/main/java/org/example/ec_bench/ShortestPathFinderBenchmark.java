@@ -0,0 +1,50 @@
+package org.example.ec_bench;
+
+import org.example.ec_de.model.ShortestPathFinder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the per-step routing of a taxi, driving it back and forth across the grid.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ShortestPathFinderBenchmark {
+
+    private ShortestPathFinder pathFinder;
+    private int targetX;
+    private int targetY;
+
+    @Setup
+    public void setup() {
+        pathFinder = new ShortestPathFinder();
+        targetX = pathFinder.getSize() - 1;
+        targetY = pathFinder.getSize() / 2;
+    }
+
+    @Benchmark
+    public int[] getNextPosition() {
+        int[] next = pathFinder.getNextPosition(targetX, targetY);
+        if (pathFinder.isStop()) {
+            // Destino alcanzado: dar la vuelta
+            pathFinder.setStop(false);
+            targetX = pathFinder.getSize() - 1 - targetX;
+            targetY = pathFinder.getSize() - 1 - targetY;
+        }
+        return next;
+    }
+}
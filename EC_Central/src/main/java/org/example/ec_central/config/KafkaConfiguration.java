@@ -5,9 +5,12 @@ import org.apache.kafka.clients.admin.AdminClientConfig;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.annotation.EnableKafka;
@@ -30,12 +33,59 @@ import java.util.Map;
 @EnableKafka
 public class KafkaConfiguration {
 
+    /**
+     * Shared topic for the responses to all customers, keyed by customer identifier.
+     */
+    public static final String CUSTOMER_RESPONSES_TOPIC = "customer-responses";
+
+    /**
+     * Shared topic for the commands to all taxis, keyed by taxi identifier.
+     */
+    public static final String TAXI_COMMANDS_TOPIC = "taxi-commands";
+
     /**
      * The bootstrap servers for Kafka, injected from application properties.
      */
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    /**
+     * Number of consumer threads dispatching service requests, injected from application properties.
+     */
+    @Value("${dispatch.listener-concurrency:1}")
+    private int dispatchConcurrency;
+
+    /**
+     * Number of partitions of the service requests topic, injected from application properties.
+     */
+    @Value("${dispatch.request-partitions:1}")
+    private int requestPartitions;
+
+    /**
+     * Number of consumer threads processing taxi position updates, injected from application properties.
+     */
+    @Value("${directions.listener-concurrency:1}")
+    private int directionsConcurrency;
+
+    /**
+     * Number of partitions of the taxi directions topic, injected from application properties.
+     */
+    @Value("${directions.partitions:1}")
+    private int directionsPartitions;
+
+    /**
+     * Maximum number of taxi position updates handed to the batch listener at once, injected from application properties.
+     */
+    @Value("${directions.batch.max-records:500}")
+    private int directionsBatchMaxRecords;
+
+    /**
+     * Number of partitions of the shared customer and taxi topics, injected from application properties.
+     * EC_Customer and EC_DE must be configured with the same value to find their partition.
+     */
+    @Value("${messaging.shared-topics.partitions:16}")
+    private int sharedTopicPartitions;
+
     /**
      * Creates a KafkaAdmin bean to manage Kafka topics.
      *
@@ -65,6 +115,19 @@ public class KafkaConfiguration {
         return new DefaultKafkaConsumerFactory<>(configProps);
     }
 
+    /**
+     * Creates a ConsumerFactory for String key and byte array value, used for topics that carry binary payloads
+     * as well as string ones.
+     *
+     * @return the ConsumerFactory bean
+     */
+    @Bean
+    public ConsumerFactory<String, byte[]> byteArrayConsumerFactory() {
+        Map<String, Object> configProps = new HashMap<>(stringConsumerFactory().getConfigurationProperties());
+        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        return new DefaultKafkaConsumerFactory<>(configProps);
+    }
+
     /**
      * Creates a ConcurrentKafkaListenerContainerFactory for String key and String value.
      *
@@ -74,6 +137,39 @@ public class KafkaConfiguration {
     public ConcurrentKafkaListenerContainerFactory<String, String> stringKafkaListenerContainerFactory() {
         ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(stringConsumerFactory());
+        factory.setConcurrency(dispatchConcurrency);
+        return factory;
+    }
+
+    /**
+     * Creates the listener container factory for the "taxi-directions" topic.
+     * Records are keyed by taxi id, so each taxi's updates stay in one partition and are consumed in order
+     * by a single thread, while different taxis are processed in parallel.
+     *
+     * @return the ConcurrentKafkaListenerContainerFactory bean
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, byte[]> taxiDirectionsListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(byteArrayConsumerFactory());
+        factory.setConcurrency(directionsConcurrency);
+        return factory;
+    }
+
+    /**
+     * Creates the batch listener container factory for the "taxi-directions" topic, used when directions.batch.enabled is set.
+     * Each poll of up to directions.batch.max-records records is handed to the listener as a single list.
+     *
+     * @return the ConcurrentKafkaListenerContainerFactory bean
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, byte[]> taxiDirectionsBatchListenerContainerFactory() {
+        Map<String, Object> configProps = new HashMap<>(byteArrayConsumerFactory().getConfigurationProperties());
+        configProps.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, directionsBatchMaxRecords);
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(configProps));
+        factory.setConcurrency(directionsConcurrency);
+        factory.setBatchListener(true);
         return factory;
     }
 
@@ -101,6 +197,30 @@ public class KafkaConfiguration {
         return new KafkaTemplate<>(stringProducerFactory());
     }
 
+    /**
+     * Creates a ProducerFactory for String key and byte array value.
+     *
+     * @return the ProducerFactory bean
+     */
+    @Bean
+    public ProducerFactory<String, byte[]> byteArrayProducerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        return new DefaultKafkaProducerFactory<>(configProps);
+    }
+
+    /**
+     * Creates a KafkaTemplate for String key and byte array value, used for the binary status messages.
+     *
+     * @return the KafkaTemplate bean
+     */
+    @Bean
+    public KafkaTemplate<String, byte[]> byteArrayKafkaTemplate() {
+        return new KafkaTemplate<>(byteArrayProducerFactory());
+    }
+
     /**
      * Creates a default topic named "taxi-requests" with 1 partition and replication factor of 1.
      *
@@ -110,4 +230,46 @@ public class KafkaConfiguration {
     public NewTopic defaultTopic() {
         return new NewTopic("taxi-requests", 1, (short) 1);
     }
-}
\ No newline at end of file
+
+    /**
+     * Creates the "service_requests" topic with one partition per dispatch thread.
+     *
+     * @return the NewTopic bean
+     */
+    @Bean
+    public NewTopic serviceRequestsTopic() {
+        return new NewTopic("service_requests", Math.max(requestPartitions, dispatchConcurrency), (short) 1);
+    }
+
+    /**
+     * Creates the "taxi-directions" topic with at least one partition per consumer thread.
+     *
+     * @return the NewTopic bean
+     */
+    @Bean
+    public NewTopic taxiDirectionsTopic() {
+        return new NewTopic("taxi-directions", Math.max(directionsPartitions, directionsConcurrency), (short) 1);
+    }
+
+    /**
+     * Creates the shared "customer-responses" topic, used when messaging.shared-topics.enabled is set.
+     *
+     * @return the NewTopic bean
+     */
+    @Bean
+    @ConditionalOnProperty(name = "messaging.shared-topics.enabled", havingValue = "true")
+    public NewTopic customerResponsesTopic() {
+        return new NewTopic(CUSTOMER_RESPONSES_TOPIC, sharedTopicPartitions, (short) 1);
+    }
+
+    /**
+     * Creates the shared "taxi-commands" topic, used when messaging.shared-topics.enabled is set.
+     *
+     * @return the NewTopic bean
+     */
+    @Bean
+    @ConditionalOnProperty(name = "messaging.shared-topics.enabled", havingValue = "true")
+    public NewTopic taxiCommandsTopic() {
+        return new NewTopic(TAXI_COMMANDS_TOPIC, sharedTopicPartitions, (short) 1);
+    }
+}
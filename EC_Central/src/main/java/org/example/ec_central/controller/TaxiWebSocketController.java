@@ -1,34 +1,36 @@
 package org.example.ec_central.controller;
 
-import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.example.ec_central.service.TaxiWebSocketService;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.stereotype.Controller;
 
 /**
  * Controller for handling WebSocket communications related to taxi coordinates.
+ * The map itself is only published by {@link TaxiWebSocketService} on {@link TaxiWebSocketService#MAP_TOPIC},
+ * as versioned keyframes and deltas, and on {@link TaxiWebSocketService#KEYFRAME_QUEUE} to the sessions that ask for it.
  */
 @Controller
 public class TaxiWebSocketController {
 
-    private final SimpMessagingTemplate messagingTemplate;
+    private final TaxiWebSocketService taxiWebSocketService;
 
     /**
      * Constructor for TaxiWebSocketController.
      *
-     * @param messagingTemplate the SimpMessagingTemplate used to send messages to WebSocket clients
+     * @param taxiWebSocketService the service that broadcasts the city map
      */
-    public TaxiWebSocketController(SimpMessagingTemplate messagingTemplate) {
-        this.messagingTemplate = messagingTemplate;
+    public TaxiWebSocketController(TaxiWebSocketService taxiWebSocketService) {
+        this.taxiWebSocketService = taxiWebSocketService;
     }
 
     /**
-     * Listens to the Kafka topic "taxi-coordinates" and broadcasts the received messages to WebSocket clients.
+     * Handles keyframe requests from clients that missed a map delta, answering only the requesting session.
      *
-     * @param message the message received from the Kafka topic
+     * @param headerAccessor the headers of the request, carrying the session id
      */
-    @KafkaListener(topics = "taxi-coordinates", groupId = "group")
-    public void broadcastTaxiCoordinates(String message) {
-        // Transmit the coordinates to clients connected to the WebSocket
-        messagingTemplate.convertAndSend("/topic/taxi-coordinates", message);
+    @MessageMapping("/map/keyframe")
+    public void requestKeyframe(SimpMessageHeaderAccessor headerAccessor) {
+        taxiWebSocketService.sendKeyframe(headerAccessor.getSessionId());
     }
-}
\ No newline at end of file
+}
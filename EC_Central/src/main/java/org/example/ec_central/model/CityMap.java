@@ -2,37 +2,72 @@ package org.example.ec_central.model;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
-import lombok.Setter;
-
-import java.util.Arrays;
+import org.example.ec_central.utils.LongObjectHashMap;
 
 /**
- * Represents a city map with a fixed size grid.
+ * Represents a city map with a square grid of configurable size.
+ * Only occupied cells are stored, keyed by their packed coordinates, so memory and
+ * iteration cost depend on the number of taxis, customers and locations rather than on the grid size.
  */
-@Getter
-@Setter
 public class CityMap {
     /**
-     * The size of the city map grid.
+     * The default size of the city map grid.
      */
-    private final int size = 20;
+    public static final int DEFAULT_SIZE = 20;
+
+    /**
+     * The content of every cell that is not stored.
+     */
+    public static final Cell EMPTY = new Cell(Color.WHITE, "");
+
+    /**
+     * The geometry of the grid, bounded or wrapping around at the edges.
+     */
+    @Getter
+    private final GridGeometry geometry;
+
     /**
-     * The 2D array representing the city map.
+     * The occupied cells, keyed by {@link #key(int, int)}.
      */
-    private final Cell[][] map;
+    private final LongObjectHashMap<Cell> cells = new LongObjectHashMap<>();
 
     /**
-     * Constructs a CityMap object and initializes the map with default values.
+     * Constructs an empty CityMap object with the default size.
      */
     public CityMap() {
-        this.map = new Cell[size][size];
-        for (Cell[] row : map) {
-            Arrays.fill(row, new Cell(Color.WHITE, ""));
-        }
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Constructs an empty CityMap object with the given size.
+     *
+     * @param size the number of rows and columns of the grid
+     */
+    public CityMap(int size) {
+        this(new GridGeometry(size, false));
+    }
+
+    /**
+     * Constructs an empty CityMap object with the given geometry.
+     * On a torus, positions outside the grid are wrapped around instead of ignored.
+     *
+     * @param geometry the geometry of the grid
+     */
+    public CityMap(GridGeometry geometry) {
+        this.geometry = geometry;
     }
 
     /**
-     * Updates the content at a specific position in the map.
+     * Returns the size of the city map grid.
+     *
+     * @return the number of rows and columns of the grid
+     */
+    public int getSize() {
+        return geometry.getSize();
+    }
+
+    /**
+     * Updates the content at a specific position in the map. Setting an empty white cell frees it.
      *
      * @param x     the x-coordinate of the position
      * @param y     the y-coordinate of the position
@@ -40,8 +75,14 @@ public class CityMap {
      * @param color the color of the cell
      */
     public void updatePosition(int x, int y, String data, Color color) {
-        if (x >= 0 && x < size && y >= 0 && y < size) {
-            map[x][y] = new Cell(color, data);
+        if (!contains(x, y)) {
+            return;
+        }
+        long key = key(geometry.normalize(x), geometry.normalize(y));
+        if (color == Color.WHITE && (data == null || data.isEmpty())) {
+            cells.remove(key);
+        } else {
+            cells.put(key, new Cell(color, data));
         }
     }
 
@@ -50,10 +91,82 @@ public class CityMap {
      *
      * @param x the x-coordinate of the position
      * @param y the y-coordinate of the position
-     * @return the content at the specified position
+     * @return the content at the specified position, or {@link #EMPTY} if nothing is there
      */
     public Cell getPosition(int x, int y) {
-        return map[x][y];
+        Cell cell = contains(x, y) ? cells.get(key(geometry.normalize(x), geometry.normalize(y))) : null;
+        return cell == null ? EMPTY : cell;
+    }
+
+    /**
+     * Checks whether a position is inside the grid. On a torus every position is.
+     *
+     * @param x the x-coordinate of the position
+     * @param y the y-coordinate of the position
+     * @return true if the position is inside the grid
+     */
+    public boolean contains(int x, int y) {
+        return geometry.contains(x, y);
+    }
+
+    /**
+     * Checks whether a position holds any content.
+     *
+     * @param x the x-coordinate of the position
+     * @param y the y-coordinate of the position
+     * @return true if the cell is stored
+     */
+    public boolean isOccupied(int x, int y) {
+        return contains(x, y) && cells.containsKey(key(geometry.normalize(x), geometry.normalize(y)));
+    }
+
+    /**
+     * Returns the number of occupied cells.
+     *
+     * @return the number of occupied cells
+     */
+    public int getOccupiedCount() {
+        return cells.size();
+    }
+
+    /**
+     * Visits every occupied cell.
+     *
+     * @param visitor the visitor called with the position and content of each occupied cell
+     */
+    public void forEachOccupied(CellVisitor visitor) {
+        cells.forEach((key, cell) -> visitor.visit(keyX(key), keyY(key), cell));
+    }
+
+    /**
+     * Packs a position into a single long key.
+     *
+     * @param x the x-coordinate of the position
+     * @param y the y-coordinate of the position
+     * @return the packed key
+     */
+    public static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Extracts the x-coordinate from a packed key.
+     *
+     * @param key the packed key
+     * @return the x-coordinate
+     */
+    public static int keyX(long key) {
+        return (int) (key >>> 32);
+    }
+
+    /**
+     * Extracts the y-coordinate from a packed key.
+     *
+     * @param key the packed key
+     * @return the y-coordinate
+     */
+    public static int keyY(long key) {
+        return (int) key;
     }
 
     @AllArgsConstructor
@@ -71,4 +184,12 @@ public class CityMap {
 
     public record Cell(Color color, String data) {
     }
-}
\ No newline at end of file
+
+    /**
+     * Callback used to visit the occupied cells of the map.
+     */
+    @FunctionalInterface
+    public interface CellVisitor {
+        void visit(int x, int y, Cell cell);
+    }
+}
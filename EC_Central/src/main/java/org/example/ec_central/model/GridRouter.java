@@ -0,0 +1,392 @@
+package org.example.ec_central.model;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * A* router over the city grid, with blocked cells and cells that cost more to cross.
+ * Besides single routes, it computes the cost of reaching one target from every cell with a single backward search,
+ * which is what dispatch needs to rank every taxi against one customer.
+ * <p>
+ * Taxis move as in EC_DE, one cell per step in any of the eight directions, and a step costs the
+ * cost of the cell it enters. Diagonal steps may not cut the corner of a blocked cell. The heuristic is the Chebyshev
+ * distance times the cheapest cell cost, so routes are optimal. On a wrap-around map, routes may cross the edges.
+ * <p>
+ * The grid is immutable and the router can be shared by any number of taxis. A search needs three ints per cell, so
+ * the node arrays are kept in a bounded pool instead of one set per thread: at most {@code maxSearches} searches run at
+ * once and further callers wait for a free set. The arrays are reused: the open set is a binary heap of primitive keys
+ * that starts small and grows with the frontier, and the marks of the previous search are invalidated by a generation
+ * stamp instead of being cleared, so a query only allocates its result.
+ */
+public class GridRouter {
+
+    /**
+     * Cost of a blocked cell.
+     */
+    public static final int BLOCKED = 0;
+
+    /**
+     * Cost of reaching the target from a cell it cannot be reached from.
+     */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final int[] DX = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] DY = {0, 0, 1, -1, 1, -1, 1, -1};
+
+    /**
+     * Initial capacity of the open set of a search.
+     */
+    private static final int INITIAL_HEAP_CAPACITY = 64;
+
+    private final GridGeometry geometry;
+    private final int size;
+    private final int[] costs;
+    private final int minCost;
+    private final Semaphore searchPermits;
+    private final Queue<Search> idleSearches = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructs a new GridRouter that runs as many searches at once as there are processors.
+     *
+     * @param geometry the geometry of the grid, whose cells are [0, size) on each axis
+     * @param costs    the cost of each cell, indexed by {@code y * size + x}, or {@link #BLOCKED}
+     */
+    public GridRouter(GridGeometry geometry, int[] costs) {
+        this(geometry, costs, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new GridRouter.
+     *
+     * @param geometry    the geometry of the grid, whose cells are [0, size) on each axis
+     * @param costs       the cost of each cell, indexed by {@code y * size + x}, or {@link #BLOCKED}
+     * @param maxSearches the maximum number of searches running at once, which bounds the memory of the node arrays
+     */
+    public GridRouter(GridGeometry geometry, int[] costs, int maxSearches) {
+        int size = geometry.getSize();
+        if (costs.length != size * size) {
+            throw new IllegalArgumentException("Expected " + size * size + " cell costs, got " + costs.length);
+        }
+        this.geometry = geometry;
+        this.size = size;
+        this.costs = costs.clone();
+        this.minCost = Math.max(1, Arrays.stream(this.costs).filter(cost -> cost > 0).min().orElse(1));
+        this.searchPermits = new Semaphore(Math.max(1, maxSearches));
+    }
+
+    /**
+     * Builds a router from the city map configuration.
+     *
+     * @param geometry     the geometry of the grid
+     * @param blockedCells the blocked cells, as "x,y;x,y", or empty
+     * @param cellCosts    the cells that cost more than 1 to cross, as "x,y=cost;x,y=cost", or empty
+     * @return the router
+     * @throws IllegalArgumentException if a cell is malformed or outside the grid
+     */
+    public static GridRouter fromSpec(GridGeometry geometry, String blockedCells, String cellCosts) {
+        int size = geometry.getSize();
+        int[] costs = new int[size * size];
+        Arrays.fill(costs, 1);
+        for (String entry : cellCosts.split(";")) {
+            if (!entry.isBlank()) {
+                String[] parts = entry.split("=");
+                costs[cellOf(parts[0], size)] = Integer.parseInt(parts[1].trim());
+            }
+        }
+        for (String entry : blockedCells.split(";")) {
+            if (!entry.isBlank()) {
+                costs[cellOf(entry, size)] = BLOCKED;
+            }
+        }
+        return new GridRouter(geometry, costs);
+    }
+
+    private static int cellOf(String coordinates, int size) {
+        String[] xy = coordinates.trim().split(",");
+        int x = Integer.parseInt(xy[0].trim());
+        int y = Integer.parseInt(xy[1].trim());
+        if (x < 0 || x >= size || y < 0 || y >= size) {
+            throw new IllegalArgumentException("Cell outside the city map: " + coordinates);
+        }
+        return y * size + x;
+    }
+
+    /**
+     * Returns the size of the grid.
+     *
+     * @return the number of cells on each axis
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the geometry of the grid.
+     *
+     * @return the geometry the routes follow
+     */
+    public GridGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Checks whether a cell can be crossed.
+     *
+     * @param x the X coordinate
+     * @param y the Y coordinate
+     * @return false if the cell is blocked or outside a bounded grid
+     */
+    public boolean isPassable(int x, int y) {
+        if (!geometry.contains(x, y)) {
+            return false;
+        }
+        return costs[geometry.normalize(y) * size + geometry.normalize(x)] != BLOCKED;
+    }
+
+    /**
+     * Finds the cheapest route between two cells.
+     *
+     * @param fromX the X coordinate of the start
+     * @param fromY the Y coordinate of the start
+     * @param toX   the X coordinate of the target
+     * @param toY   the Y coordinate of the target
+     * @return the cells of the route after the start, as {@code y * size + x}, ending at the target;
+     * empty if the start is the target, or null if the target cannot be reached
+     */
+    public int[] route(int fromX, int fromY, int toX, int toY) {
+        if (!isPassable(toX, toY) || !geometry.contains(fromX, fromY)) {
+            return null;
+        }
+        return withSearch(search -> search.run(geometry.normalize(fromY) * size + geometry.normalize(fromX),
+                geometry.normalize(toX), geometry.normalize(toY)));
+    }
+
+    /**
+     * Computes the cost of the cheapest route from every cell to a target, with one backward Dijkstra search.
+     *
+     * @param toX the X coordinate of the target
+     * @param toY the Y coordinate of the target
+     * @return the cost of the cheapest route from each cell, indexed by {@code y * size + x}, or {@link #UNREACHABLE};
+     * null if the target is blocked or outside the grid
+     */
+    public int[] costsTo(int toX, int toY) {
+        if (!isPassable(toX, toY)) {
+            return null;
+        }
+        return withSearch(search -> search.costsTo(geometry.normalize(toY) * size + geometry.normalize(toX)));
+    }
+
+    private int[] withSearch(Function<Search, int[]> query) {
+        searchPermits.acquireUninterruptibly();
+        Search search = idleSearches.poll();
+        try {
+            if (search == null) {
+                search = new Search();
+            }
+            return query.apply(search);
+        } finally {
+            if (search != null) {
+                idleSearches.offer(search);
+            }
+            searchPermits.release();
+        }
+    }
+
+    /**
+     * Returns the cost of the cheapest cell, so that the distance times this cost never exceeds the cost of a route.
+     *
+     * @return the cost of the cheapest passable cell
+     */
+    public int getMinCost() {
+        return minCost;
+    }
+
+    /**
+     * Returns the cost of following a route.
+     *
+     * @param route the cells of the route after the start, as returned by {@link #route}
+     * @return the sum of the costs of the cells entered
+     */
+    public int costOf(int[] route) {
+        int cost = 0;
+        for (int cell : route) {
+            cost += costs[cell];
+        }
+        return cost;
+    }
+
+    private int heuristic(int x, int y, int toX, int toY) {
+        return geometry.distance(x, y, toX, toY) * minCost;
+    }
+
+    /**
+     * The working arrays of one search, reused by the following ones.
+     */
+    private final class Search {
+        private final int[] g = new int[size * size];
+        private final int[] parent = new int[size * size];
+        // Marca por celda: generation si está abierta, generation + 1 si está cerrada, menor si no se ha visto
+        private final int[] marks = new int[size * size];
+        // Montículo con entradas repetidas en lugar de decrease-key: cada clave es f << 32 | h, y el nodo va aparte
+        private long[] heapKeys = new long[INITIAL_HEAP_CAPACITY];
+        private int[] heapNodes = new int[INITIAL_HEAP_CAPACITY];
+        private int heapSize;
+        private int generation = -1;
+
+        int[] run(int start, int toX, int toY) {
+            int target = toY * size + toX;
+            if (start == target) {
+                return new int[0];
+            }
+            int closed = nextGeneration() + 1;
+            heapSize = 0;
+            g[start] = 0;
+            marks[start] = generation;
+            parent[start] = -1;
+            push(start, heuristic(start % size, start / size, toX, toY), heuristic(start % size, start / size, toX, toY));
+
+            while (heapSize > 0) {
+                int node = pop();
+                if (marks[node] == closed) {
+                    continue; // Entrada obsoleta
+                }
+                if (node == target) {
+                    return path(start, target);
+                }
+                marks[node] = closed;
+                int x = node % size;
+                int y = node / size;
+                for (int direction = 0; direction < DX.length; direction++) {
+                    // En un toro los vecinos del borde están al otro lado
+                    int nx = geometry.isWrapAround() ? Math.floorMod(x + DX[direction], size) : x + DX[direction];
+                    int ny = geometry.isWrapAround() ? Math.floorMod(y + DY[direction], size) : y + DY[direction];
+                    if (!isPassable(nx, ny)
+                            || (DX[direction] != 0 && DY[direction] != 0 && (!isPassable(nx, y) || !isPassable(x, ny)))) {
+                        continue;
+                    }
+                    int next = ny * size + nx;
+                    if (marks[next] == closed) {
+                        continue;
+                    }
+                    int tentative = g[node] + costs[next];
+                    if (marks[next] != generation || tentative < g[next]) {
+                        marks[next] = generation;
+                        g[next] = tentative;
+                        parent[next] = node;
+                        int h = heuristic(nx, ny, toX, toY);
+                        push(next, tentative + h, h);
+                    }
+                }
+            }
+            return null;
+        }
+
+        int[] costsTo(int target) {
+            int closed = nextGeneration() + 1;
+            int[] costTo = new int[size * size];
+            Arrays.fill(costTo, UNREACHABLE);
+            heapSize = 0;
+            costTo[target] = 0;
+            push(target, 0, 0);
+
+            while (heapSize > 0) {
+                int node = pop();
+                if (marks[node] == closed) {
+                    continue; // Entrada obsoleta
+                }
+                marks[node] = closed;
+                int x = node % size;
+                int y = node / size;
+                // Se recorren los pasos al revés: desde el vecino se entra en node, que cuesta costs[node]
+                int tentative = costTo[node] + costs[node];
+                for (int direction = 0; direction < DX.length; direction++) {
+                    int nx = geometry.isWrapAround() ? Math.floorMod(x + DX[direction], size) : x + DX[direction];
+                    int ny = geometry.isWrapAround() ? Math.floorMod(y + DY[direction], size) : y + DY[direction];
+                    if (!geometry.contains(nx, ny)
+                            || (DX[direction] != 0 && DY[direction] != 0 && (!isPassable(nx, y) || !isPassable(x, ny)))) {
+                        continue;
+                    }
+                    int previous = ny * size + nx;
+                    if (tentative < costTo[previous]) {
+                        costTo[previous] = tentative;
+                        // Un taxi puede salir de una celda bloqueada, pero ninguna ruta pasa por ella
+                        if (costs[previous] != BLOCKED) {
+                            push(previous, tentative, 0);
+                        }
+                    }
+                }
+            }
+            return costTo;
+        }
+
+        private int nextGeneration() {
+            if (generation >= Integer.MAX_VALUE - 2) {
+                // Vuelta del contador: las marcas antiguas podrían coincidir
+                Arrays.fill(marks, 0);
+                generation = -1;
+            }
+            generation += 2;
+            return generation;
+        }
+
+        private int[] path(int start, int target) {
+            int length = 0;
+            for (int node = target; node != start; node = parent[node]) {
+                length++;
+            }
+            int[] path = new int[length];
+            for (int node = target, i = length - 1; node != start; node = parent[node], i--) {
+                path[i] = node;
+            }
+            return path;
+        }
+
+        private void push(int node, int f, int h) {
+            if (heapSize == heapKeys.length) {
+                heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+                heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+            }
+            long key = ((long) f << 32) | h;
+            int i = heapSize++;
+            while (i > 0) {
+                int up = (i - 1) >>> 1;
+                if (heapKeys[up] <= key) {
+                    break;
+                }
+                heapKeys[i] = heapKeys[up];
+                heapNodes[i] = heapNodes[up];
+                i = up;
+            }
+            heapKeys[i] = key;
+            heapNodes[i] = node;
+        }
+
+        private int pop() {
+            int top = heapNodes[0];
+            long key = heapKeys[--heapSize];
+            int node = heapNodes[heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+                    child++;
+                }
+                if (key <= heapKeys[child]) {
+                    break;
+                }
+                heapKeys[i] = heapKeys[child];
+                heapNodes[i] = heapNodes[child];
+                i = child;
+            }
+            heapKeys[i] = key;
+            heapNodes[i] = node;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.example.ec_central.model;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object (DTO) sent to the map clients over WebSocket.
+ * A KEYFRAME carries every occupied cell; a DELTA only carries the cells that changed since {@code baseVersion}.
+ */
+@Getter
+@Builder
+public class MapUpdateDto {
+
+    /**
+     * Whether this update is a full keyframe or a patch.
+     */
+    private final Type type;
+
+    /**
+     * The version of the map after applying this update.
+     */
+    private final long version;
+
+    /**
+     * The version a DELTA applies on top of. Clients holding a different version must wait for a keyframe.
+     */
+    private final long baseVersion;
+
+    /**
+     * The size of the city map grid.
+     */
+    private final int size;
+
+    /**
+     * The cells included in this update. Cleared cells are sent as WHITE with empty data.
+     */
+    private final List<CellUpdate> cells;
+
+    /**
+     * Enum representing the kind of update.
+     */
+    public enum Type {
+        KEYFRAME,
+        DELTA
+    }
+
+    /**
+     * Record representing the content of a single cell.
+     */
+    public record CellUpdate(int x, int y, CityMap.Color color, String data) {
+    }
+}
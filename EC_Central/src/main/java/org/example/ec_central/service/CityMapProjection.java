@@ -0,0 +1,247 @@
+package org.example.ec_central.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ec_central.model.CityMap;
+import org.example.ec_central.model.GridGeometry;
+import org.example.ec_central.model.TaxiState;
+import org.example.ec_central.model.entity.Customer;
+import org.example.ec_central.model.entity.Location;
+import org.example.ec_central.model.entity.Taxi;
+import org.example.ec_central.repository.CustomerRepository;
+import org.example.ec_central.repository.LocationRepository;
+import org.example.ec_central.repository.TaxiRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory projection of the fleet, customers and locations shown on the city map.
+ * It is loaded from the database once on startup and then kept up to date by the
+ * Kafka handlers and the location loader, so rendering the map never touches the database.
+ */
+@Service
+@Slf4j
+public class CityMapProjection {
+
+    private final TaxiRepository taxiRepository;
+    private final CustomerRepository customerRepository;
+    private final LocationRepository locationRepository;
+
+    /**
+     * The size of the city map grid, injected from application properties.
+     */
+    @Setter
+    @Value("${city.map.size:" + CityMap.DEFAULT_SIZE + "}")
+    private int mapSize;
+
+    /**
+     * Whether the city map wraps around at the edges, injected from application properties.
+     */
+    @Setter
+    @Value("${city.map.wrap-around:false}")
+    private boolean wrapAround;
+
+    private final Map<String, TaxiView> taxis = new ConcurrentHashMap<>();
+    private final Map<String, CustomerView> customers = new ConcurrentHashMap<>();
+    private final Map<String, LocationView> locations = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on every change so that the rendered map is only rebuilt when something moved.
+     */
+    private final AtomicLong version = new AtomicLong();
+    private CityMap renderedMap;
+    private long renderedVersion = -1;
+
+    /**
+     * Constructs a new CityMapProjection with the specified repositories.
+     *
+     * @param taxiRepository     the repository for managing taxi entities
+     * @param customerRepository the repository for managing customer entities
+     * @param locationRepository the repository for managing location entities
+     */
+    public CityMapProjection(TaxiRepository taxiRepository, CustomerRepository customerRepository,
+                             LocationRepository locationRepository) {
+        this.taxiRepository = taxiRepository;
+        this.customerRepository = customerRepository;
+        this.locationRepository = locationRepository;
+    }
+
+    /**
+     * Loads the projection from the database. Only called on startup.
+     */
+    @PostConstruct
+    public void rebuildFromDatabase() {
+        taxis.clear();
+        customers.clear();
+        locations.clear();
+        locationRepository.findAll().forEach(this::updateLocation);
+        customerRepository.findAll().forEach(this::updateCustomer);
+        taxiRepository.findAll().forEach(this::updateTaxi);
+        log.info("City map projection loaded: {} taxis, {} customers, {} locations",
+                taxis.size(), customers.size(), locations.size());
+    }
+
+    /**
+     * Updates the projected position and state of a taxi from its entity.
+     *
+     * @param taxi the taxi entity
+     */
+    public void updateTaxi(Taxi taxi) {
+        updateTaxi(taxi.getIdentifier(), taxi.getX(), taxi.getY(), taxi.getState());
+    }
+
+    /**
+     * Updates the projected position and state of a taxi. The passenger destination, if any, is kept.
+     *
+     * @param identifier the identifier of the taxi
+     * @param x          the x-coordinate of the taxi
+     * @param y          the y-coordinate of the taxi
+     * @param state      the state of the taxi
+     */
+    public void updateTaxi(String identifier, int x, int y, TaxiState state) {
+        taxis.compute(identifier, (id, current) -> new TaxiView(id, x, y, state,
+                current != null && state == TaxiState.EN_ROUTE_TO_DESTINATION ? current.destination() : null));
+        version.incrementAndGet();
+    }
+
+    /**
+     * Removes a taxi from the projection, for example once it has been deleted through EC_Registry.
+     *
+     * @param identifier the identifier of the taxi
+     */
+    public void removeTaxi(String identifier) {
+        if (taxis.remove(identifier) != null) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Updates the projected position of a taxi that is carrying a customer to a destination.
+     *
+     * @param identifier  the identifier of the taxi
+     * @param x           the x-coordinate of the taxi
+     * @param y           the y-coordinate of the taxi
+     * @param destination the identifier of the passenger's destination
+     */
+    public void updateTaxiWithPassenger(String identifier, int x, int y, String destination) {
+        taxis.put(identifier, new TaxiView(identifier, x, y, TaxiState.EN_ROUTE_TO_DESTINATION, destination));
+        version.incrementAndGet();
+    }
+
+    /**
+     * Updates the projected position of a customer.
+     *
+     * @param customer the customer entity
+     */
+    public void updateCustomer(Customer customer) {
+        updateCustomer(customer.getIdentifier(), customer.getX(), customer.getY());
+    }
+
+    /**
+     * Updates the projected position of a customer.
+     *
+     * @param identifier the identifier of the customer
+     * @param x          the x-coordinate of the customer
+     * @param y          the y-coordinate of the customer
+     */
+    public void updateCustomer(String identifier, int x, int y) {
+        customers.put(identifier, new CustomerView(identifier, x, y));
+        version.incrementAndGet();
+    }
+
+    /**
+     * Adds or replaces a location in the projection.
+     *
+     * @param location the location entity
+     */
+    public void updateLocation(Location location) {
+        locations.put(location.getIdentifier(), new LocationView(location.getIdentifier(), location.getX(), location.getY()));
+        version.incrementAndGet();
+    }
+
+    /**
+     * Removes all locations from the projection, used before the locations file is reloaded.
+     */
+    public void clearLocations() {
+        locations.clear();
+        version.incrementAndGet();
+    }
+
+    /**
+     * Returns the current version of the projection.
+     *
+     * @return the number of changes applied so far
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Renders the projection as a city map. The previous map is reused if nothing changed since it was built.
+     *
+     * @return the city map with locations, customers and taxis
+     */
+    public synchronized CityMap toCityMap() {
+        long current = version.get();
+        if (renderedMap != null && renderedVersion == current) {
+            return renderedMap;
+        }
+        CityMap map = new CityMap(new GridGeometry(mapSize, wrapAround));
+
+        // Primero añadimos las localizaciones (monumentos) al mapa
+        for (LocationView location : locations.values()) {
+            addToCell(map, location.x(), location.y(), location.identifier(), CityMap.Color.YELLOW);
+        }
+
+        // Luego añadimos los clientes al mapa
+        for (CustomerView customer : customers.values()) {
+            addToCell(map, customer.x(), customer.y(), customer.identifier(), CityMap.Color.BLUE);
+        }
+
+        // Finalmente añadimos los taxis al mapa
+        for (TaxiView taxi : taxis.values()) {
+            CityMap.Color color = (taxi.state() == TaxiState.STOPPED) ? CityMap.Color.RED : CityMap.Color.GREEN;
+            String label = taxi.destination() == null ? taxi.identifier() : taxi.identifier() + taxi.destination();
+            addToCell(map, taxi.x(), taxi.y(), label, color);
+        }
+
+        renderedMap = map;
+        renderedVersion = current;
+        return map;
+    }
+
+    /**
+     * Appends an identifier to the content of a cell and sets its color.
+     */
+    private void addToCell(CityMap map, int x, int y, String identifier, CityMap.Color color) {
+        if (!map.contains(x, y)) {
+            return;
+        }
+        String currentContent = map.getPosition(x, y).data();
+        String updatedContent = currentContent.isEmpty() ? identifier : currentContent + ", " + identifier;
+        map.updatePosition(x, y, updatedContent, color);
+    }
+
+    /**
+     * Projected view of a taxi.
+     */
+    public record TaxiView(String identifier, int x, int y, TaxiState state, String destination) {
+    }
+
+    /**
+     * Projected view of a customer.
+     */
+    public record CustomerView(String identifier, int x, int y) {
+    }
+
+    /**
+     * Projected view of a location.
+     */
+    public record LocationView(String identifier, int x, int y) {
+    }
+}
@@ -5,23 +5,29 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.example.ec_central.model.entity.Taxi;
 import org.example.ec_central.repository.TaxiRepository;
+import org.example.ec_central.utils.BinaryFrameCodec;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaAdmin;
 import org.springframework.stereotype.Service;
 
-import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
-import java.security.KeyFactory;
+import java.net.SocketTimeoutException;
 import java.security.PublicKey;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -39,8 +45,40 @@ public class ClientHandler {
     private final KafkaAdmin kafkaAdmin;
     private final TaxiRepository taxiRepository;
     private final EncryptionService encryptionService;
+    private final TaxiLivenessTracker taxiLivenessTracker;
+    private final TaxiAvailabilityRegistry taxiAvailabilityRegistry;
+    private final TaxiSpatialIndex taxiSpatialIndex;
+    private final CityMapProjection cityMapProjection;
+    private final TaxiRideCache taxiRideCache;
+
+    /**
+     * Read timeout for taxis that send heartbeats, injected from application properties.
+     */
+    @Value("${taxi.liveness.timeout-ms:15000}")
+    private int readTimeoutMs;
+
+    /**
+     * Whether taxis read their commands from the shared "taxi-commands" topic, injected from application properties.
+     */
+    @Value("${messaging.shared-topics.enabled:false}")
+    private boolean sharedTopics;
+
+    /**
+     * Largest binary frame accepted from a taxi, injected from application properties.
+     */
+    @Value("${taxi.protocol.max-frame-bytes:4096}")
+    private int maxFrameBytes;
+
+    /**
+     * Time a taxi has to complete the authentication handshake, injected from application properties.
+     */
+    @Value("${taxi.protocol.handshake-timeout-ms:10000}")
+    private int handshakeTimeoutMs;
+
+    // Taxis que reciben y envían los DTO en formato binario compacto
+    private final Set<String> binaryDtoTaxis = ConcurrentHashMap.newKeySet();
     //mapa para registrar los tokens
-    private Map<String, String> tokenRegistry = new HashMap<>();
+    private Map<String, String> tokenRegistry = new ConcurrentHashMap<>();
 
     /**
      * Constructs a new ClientHandler with the specified dependencies.
@@ -48,13 +86,26 @@ public class ClientHandler {
      * @param taxiService the service for handling taxi-related operations
      * @param messageHandler the handler for processing messages
      * @param kafkaAdmin the Kafka admin for managing topics
+     * @param taxiLivenessTracker the tracker that evicts taxis which stop sending heartbeats
+     * @param taxiAvailabilityRegistry the registry of the taxis that can take a new service
+     * @param taxiSpatialIndex the spatial index of the idle taxis
+     * @param cityMapProjection the in-memory city map projection to keep in sync
+     * @param taxiRideCache the cache of the taxis' state read by the status updates
      */
-    public ClientHandler(TaxiService taxiService, MessageHandler messageHandler, @Qualifier("kafkaAdmin") KafkaAdmin kafkaAdmin, TaxiRepository taxiRepository, EncryptionService encryptionService) {
+    public ClientHandler(TaxiService taxiService, MessageHandler messageHandler, @Qualifier("kafkaAdmin") KafkaAdmin kafkaAdmin, TaxiRepository taxiRepository, EncryptionService encryptionService, TaxiLivenessTracker taxiLivenessTracker,
+                         TaxiAvailabilityRegistry taxiAvailabilityRegistry, TaxiSpatialIndex taxiSpatialIndex,
+                         CityMapProjection cityMapProjection, TaxiRideCache taxiRideCache) {
         this.taxiService = taxiService;
         this.messageHandler = messageHandler;
         this.kafkaAdmin = kafkaAdmin;
         this.taxiRepository = taxiRepository;
         this.encryptionService = encryptionService;
+        this.taxiLivenessTracker = taxiLivenessTracker;
+        this.taxiAvailabilityRegistry = taxiAvailabilityRegistry;
+        this.taxiSpatialIndex = taxiSpatialIndex;
+        this.cityMapProjection = cityMapProjection;
+        this.taxiRideCache = taxiRideCache;
+        taxiLivenessTracker.setEvictionListener(this::evictTaxi);
     }
 
     /**
@@ -63,66 +114,186 @@ public class ClientHandler {
      * @param taxiSocket the socket representing the taxi connection
      */
     public void handleTaxiConnection(Socket taxiSocket) {
-        try (DataInputStream inputStream = new DataInputStream(taxiSocket.getInputStream());
+        String id = null;
+        boolean handshakeDone = false;
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(taxiSocket.getInputStream()));
              DataOutputStream outputStream = new DataOutputStream(taxiSocket.getOutputStream())) {
+            // Una conexión que no completa el handshake no puede retener su hueco indefinidamente
+            taxiSocket.setSoTimeout(handshakeTimeoutMs);
             String authMessage = inputStream.readUTF();
             log.info("Received authentication message: {}", authMessage);
 
             if (messageHandler.isValidAuthentication(authMessage)) {
-                String id = authMessage.split("#")[1];
+                id = authMessage.split("#")[1];
+                Set<String> capabilities = messageHandler.extractCapabilities(authMessage);
                 // Verificar si el taxi está registrado en la base de datos a través del módulo EC_Registry
-                if (!isTaxiRegistered(id)) {
+                Optional<Taxi> registeredTaxi = findRegisteredTaxi(id);
+                if (registeredTaxi.isEmpty()) {
                     outputStream.writeUTF(messageHandler.buildAck(false)); // Responder con NACK si no está registrado
                     log.error("Taxi {} is not registered. Connection rejected.", id);
                     return; // Finalizar el manejo de la conexión
                 }
 
                 // Intercambiar claves públicas
-                exchangePublicKeys(inputStream, outputStream, id);
+                boolean sessionKeys = capabilities.contains(MessageHandler.CAPABILITY_SESSION_KEY);
+                exchangePublicKeys(inputStream, outputStream, id, sessionKeys);
 
 
-                // Responder con el token
+                // Responder con el token y las capacidades que Central acepta para el resto de la conexión
+                boolean binary = capabilities.contains(MessageHandler.CAPABILITY_BINARY);
+                List<String> accepted = new ArrayList<>();
+                if (binary) {
+                    accepted.add(MessageHandler.CAPABILITY_BINARY);
+                }
+                // Los DTO binarios solo viajan cifrados con la clave de sesión
+                if (sessionKeys && capabilities.contains(MessageHandler.CAPABILITY_BINARY_DTO)) {
+                    accepted.add(MessageHandler.CAPABILITY_BINARY_DTO);
+                    binaryDtoTaxis.add(id);
+                } else {
+                    binaryDtoTaxis.remove(id);
+                }
                 String token = UUID.randomUUID().toString();
-                String ackMessage = messageHandler.buildAckWithToken(token);
+                String ackMessage = messageHandler.buildAckWithToken(token, accepted);
                 outputStream.writeUTF(ackMessage);
                 log.info("Taxi authenticated successfully. Token: {}", token);
 
 
-                log.info("Updating connected taxis, current connected taxis: {}", connectedTaxis.values().stream().map(Socket::getInetAddress).toList());
+                // Solo el número de taxis: listar todas las conexiones en cada alta no escala
+                log.info("Updating connected taxis, current connected taxis: {}", connectedTaxis.size());
 
 
+                boolean heartbeats = capabilities.contains(MessageHandler.CAPABILITY_HEARTBEAT);
+                if (heartbeats) {
+                    // Un taxi que anuncia latidos debe escribir antes del timeout; si no, la lectura falla
+                    taxiSocket.setSoTimeout(readTimeoutMs);
+                    taxiLivenessTracker.touch(id);
+                } else {
+                    // Los taxis sin latidos pueden pasar mucho tiempo sin escribir
+                    taxiSocket.setSoTimeout(0);
+                }
+                handshakeDone = true;
                 connectedTaxis.put(id, taxiSocket);
                 tokenRegistry.put(id, token); // tokenRegistry es un mapa id -> token
+                registerConnectedTaxi(registeredTaxi.get());
+
+                log.info("Connected taxis updated, current connected taxis: {}", connectedTaxis.size());
+                if (!sharedTopics) {
+                    // Con tópicos compartidos no hay llamada al broker en el handshake
+                    String topicName = "taxi-start-service-" + id;
+                    NewTopic newTopic = new NewTopic(topicName, 1, (short) 1);
+                    kafkaAdmin.createOrModifyTopics(newTopic);
+                    log.info("Created topic for client: {}", topicName);
+                }
 
-                log.info("Connected taxis updated, current connected taxis: {}", connectedTaxis.values().stream().map(Socket::getInetAddress).toList());
-                String topicName = "taxi-start-service-" + id;
-                NewTopic newTopic = new NewTopic(topicName, 1, (short) 1);
-                kafkaAdmin.createOrModifyTopics(newTopic);
-                log.info("Created topic for client: {}", topicName);
-
-                handleTaxiRequests(inputStream, outputStream, id);
-
-                connectedTaxis.remove(id);
-                tokenRegistry.remove(id);
+                if (binary) {
+                    handleBinaryTaxiRequests(inputStream, outputStream, id, sessionKeys);
+                } else {
+                    handleTaxiRequests(inputStream, outputStream, id, sessionKeys);
+                }
             } else {
                 outputStream.writeUTF(messageHandler.buildAck(false)); // Respond with NACK if authentication fails
                 log.error("Taxi authentication failed.");
             }
 
+        } catch (SocketTimeoutException e) {
+            if (handshakeDone) {
+                log.warn("Taxi {} sent no heartbeat in {} ms, closing connection", id, readTimeoutMs);
+            } else {
+                log.warn("Connection from {} did not complete the handshake in {} ms, closing it",
+                        taxiSocket.getInetAddress(), handshakeTimeoutMs);
+            }
         } catch (IOException e) {
             log.error("Error handling taxi connection: {}", e.getMessage());
+        } finally {
+            // Solo se limpia si esta conexión sigue siendo la registrada (el taxi puede haberse reconectado)
+            if (id != null && connectedTaxis.remove(id, taxiSocket)) {
+                tokenRegistry.remove(id);
+                encryptionService.removeSessionKeys(id);
+                taxiLivenessTracker.remove(id);
+                binaryDtoTaxis.remove(id);
+                forgetIfDeleted(id);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a taxi is connected and still alive.
+     * Taxis that send heartbeats must have been heard from within the timeout;
+     * for older taxis only the state of the socket is known.
+     *
+     * @param taxiId the identifier of the taxi
+     * @return true if the taxi can receive services
+     */
+    public boolean isTaxiAlive(String taxiId) {
+        Socket socket = connectedTaxis.get(taxiId);
+        if (socket == null) {
+            return false;
+        }
+        if (taxiLivenessTracker.isTracked(taxiId)) {
+            return taxiLivenessTracker.isAlive(taxiId);
         }
+        return socket.isConnected() && !socket.isClosed();
     }
 
+    /**
+     * Checks whether a taxi negotiated the compact binary encoding of the status DTOs.
+     *
+     * @param taxiId the identifier of the taxi
+     * @return true if messages to the taxi can be sent in binary
+     */
+    public boolean acceptsBinaryDto(String taxiId) {
+        return binaryDtoTaxis.contains(taxiId);
+    }
 
+    /**
+     * Records that a taxi has been heard from outside the socket, for example through Kafka.
+     *
+     * @param taxiId the identifier of the taxi
+     */
+    public void recordActivity(String taxiId) {
+        if (taxiLivenessTracker.isTracked(taxiId)) {
+            taxiLivenessTracker.touch(taxiId);
+        }
+    }
 
-    private void exchangePublicKeys(DataInputStream inputStream, DataOutputStream outputStream, String taxiId) throws IOException {
+    /**
+     * Drops a taxi that stopped sending heartbeats and closes its socket, which also ends its reader thread.
+     *
+     * @param taxiId the identifier of the taxi
+     */
+    private void evictTaxi(String taxiId) {
+        Socket socket = connectedTaxis.remove(taxiId);
+        tokenRegistry.remove(taxiId);
+        encryptionService.removeSessionKeys(taxiId);
+        binaryDtoTaxis.remove(taxiId);
+        forgetIfDeleted(taxiId);
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.error("Error closing socket of taxi {}: {}", taxiId, e.getMessage());
+            }
+        }
+        log.info("Taxi {} evicted, current connected taxis: {}", taxiId, connectedTaxis.size());
+    }
+
+
+
+    /**
+     * Exchanges public keys with the taxi and, if the taxi supports it, sends it its first session key
+     * wrapped with the taxi's public key. Afterwards both sides encrypt Kafka traffic with the session key only.
+     *
+     * @param inputStream the input stream to read from
+     * @param outputStream the output stream to write to
+     * @param taxiId the identifier of the taxi
+     * @param sessionKeys whether the taxi advertised the session key capability
+     * @throws IOException if the exchange fails
+     */
+    private void exchangePublicKeys(DataInputStream inputStream, DataOutputStream outputStream, String taxiId, boolean sessionKeys) throws IOException {
         try {
             // Recibir la clave pública del taxi
             String taxiPublicKeyBase64 = inputStream.readUTF();
-            byte[] taxiPublicKeyBytes = Base64.getDecoder().decode(taxiPublicKeyBase64);
-            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-            PublicKey taxiPublicKey = keyFactory.generatePublic(new X509EncodedKeySpec(taxiPublicKeyBytes));
+            PublicKey taxiPublicKey = encryptionService.decodePublicKey(taxiPublicKeyBase64);
             encryptionService.registerTaxiPublicKey(taxiId, taxiPublicKey);
             log.info("Received and registered public key for taxi: {}", taxiId);
             log.info("PUBLIC KEY: {}", taxiPublicKey);
@@ -132,6 +303,11 @@ public class ClientHandler {
             outputStream.writeUTF(centralPublicKeyBase64);
             log.info("Sent public key to taxi: {}", taxiId);
 
+            if (sessionKeys) {
+                outputStream.writeUTF(buildSessionKeyMessage(taxiId, taxiPublicKey));
+                log.info("Sent session key to taxi: {}", taxiId);
+            }
+
         } catch (Exception e) {
             log.error("Error exchanging public keys with taxi {}: {}", taxiId, e.getMessage());
             throw new IOException("Public key exchange failed", e);
@@ -141,39 +317,151 @@ public class ClientHandler {
 
 
 
+    /**
+     * Generates a new session key for the taxi and builds the KEY#keyId#wrappedKey message that delivers it.
+     *
+     * @param taxiId the identifier of the taxi
+     * @param taxiPublicKey the public key used to wrap the session key
+     * @return the framed message
+     * @throws Exception if the key cannot be generated or wrapped
+     */
+    private String buildSessionKeyMessage(String taxiId, PublicKey taxiPublicKey) throws Exception {
+        EncryptionService.SessionKey sessionKey = encryptionService.rotateSessionKey(taxiId);
+        return messageHandler.buildRequest(MessageHandler.KEY, String.valueOf(sessionKey.id()),
+                encryptionService.wrapSessionKey(sessionKey, taxiPublicKey));
+    }
+
+    /**
+     * Rotates the session key of a taxi at its request.
+     * Central keeps encrypting with the current key until the taxi confirms the new one with KEYACK#keyId.
+     *
+     * @param taxiId the identifier of the taxi
+     * @return the KEY message with the new key, or a NACK if it could not be generated
+     */
+    private String rotateSessionKey(String taxiId) {
+        try {
+            String keyMessage = buildSessionKeyMessage(taxiId, encryptionService.getTaxiPublicKey(taxiId));
+            log.info("Session key rotated for taxi: {}", taxiId);
+            return keyMessage;
+        } catch (Exception e) {
+            log.error("Error rotating session key for taxi {}: {}", taxiId, e.getMessage());
+            return messageHandler.buildAck(false);
+        }
+    }
+
     /**
      * Verifica si el taxi está registrado en la base de datos a través de EC_Registry.
      *
      * @param taxiId el ID del taxi a verificar
-     * @return true si el taxi está registrado, false en caso contrario
+     * @return el taxi si está registrado, o vacío en caso contrario
      */
-    private boolean isTaxiRegistered(String taxiId) {
+    private Optional<Taxi> findRegisteredTaxi(String taxiId) {
         try {
-            return taxiRepository.findByIdentifier(taxiId).isPresent();
+            return taxiRepository.findByIdentifier(taxiId);
         } catch (Exception e) {
             log.error("Error checking taxi registration status: {}", e.getMessage());
-            return false;
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Makes a newly authenticated taxi known to dispatch and to the map. Taxis registered through EC_Registry after
+     * EC_Central started are not in the in-memory structures loaded on startup, so they are added here.
+     *
+     * @param taxi the taxi as stored in the database
+     */
+    private void registerConnectedTaxi(Taxi taxi) {
+        // El estado en caché puede ser de una conexión anterior: se vuelve a leer con la primera actualización
+        taxiRideCache.remove(taxi.getIdentifier());
+        cityMapProjection.updateTaxi(taxi);
+        if (taxi.isAvailable()) {
+            // Primero el índice: en cuanto el registro lo marca libre, el taxi puede ser reclamado
+            taxiSpatialIndex.add(taxi.getIdentifier(), taxi.getX(), taxi.getY());
+            taxiAvailabilityRegistry.markAvailable(taxi.getIdentifier());
         }
     }
 
 
+    /**
+     * Drops a disconnected taxi from the map and from dispatch if it has been deleted through EC_Registry.
+     * Taxis that still exist stay on the map where they were last seen.
+     *
+     * @param taxiId the identifier of the taxi
+     */
+    private void forgetIfDeleted(String taxiId) {
+        try {
+            if (taxiRepository.findByIdentifier(taxiId).isPresent()) {
+                return;
+            }
+        } catch (Exception e) {
+            log.error("Error checking whether taxi {} still exists: {}", taxiId, e.getMessage());
+            return;
+        }
+        cityMapProjection.removeTaxi(taxiId);
+        taxiSpatialIndex.remove(taxiId);
+        taxiAvailabilityRegistry.remove(taxiId);
+        taxiRideCache.remove(taxiId);
+        log.info("Taxi {} no longer registered, removed from the map", taxiId);
+    }
+
+    /**
+     * Promotes the session key the taxi confirmed it installed, so Central starts encrypting with it.
+     *
+     * @param taxiId the identifier of the taxi
+     * @param keyId  the identifier of the confirmed key
+     * @return true if the key was the one pending confirmation
+     */
+    private boolean acknowledgeSessionKey(String taxiId, String keyId) {
+        try {
+            boolean promoted = encryptionService.promoteSessionKey(taxiId, Integer.parseInt(keyId));
+            if (promoted) {
+                log.info("Session key {} confirmed by taxi: {}", keyId, taxiId);
+            } else {
+                log.warn("Taxi {} confirmed unknown session key {}", taxiId, keyId);
+            }
+            return promoted;
+        } catch (NumberFormatException e) {
+            log.error("Invalid session key confirmation from taxi {}: {}", taxiId, keyId);
+            return false;
+        }
+    }
+
     /**
      * Handles requests from authenticated taxis.
      *
      * @param inputStream the input stream to read requests from
      * @param outputStream the output stream to send responses to
      * @param id the identifier of the taxi
+     * @param sessionKeys whether the taxi negotiated session keys and may ask to rotate them
      * @throws IOException if an I/O error occurs
      */
-    private void handleTaxiRequests(DataInputStream inputStream, DataOutputStream outputStream, String id) throws IOException {
+    private void handleTaxiRequests(DataInputStream inputStream, DataOutputStream outputStream, String id, boolean sessionKeys) throws IOException {
         String request;
 
         while (true) {
             request = inputStream.readUTF();
-            log.info("Received request: {}", request);
 
             if (messageHandler.isValidMessage(request)) {
                 String data = messageHandler.extractData(request);
+                // Cualquier trama válida cuenta como señal de vida
+                recordActivity(id);
+
+                if (MessageHandler.HEARTBEAT.equals(data)) {
+                    outputStream.writeUTF(messageHandler.buildAck(true));
+                    continue;
+                }
+                log.info("Received request: {}", request);
+
+                if (sessionKeys && MessageHandler.REKEY.equals(data)) {
+                    // Rotación pedida por el taxi: se responde con la nueva clave en lugar de un ACK
+                    outputStream.writeUTF(rotateSessionKey(id));
+                    continue;
+                }
+                if (sessionKeys && data.startsWith(MessageHandler.KEY_ACK + "#")) {
+                    // El taxi ya tiene la nueva clave: a partir de aquí Central cifra con ella
+                    outputStream.writeUTF(messageHandler.buildAck(acknowledgeSessionKey(id, data.substring(MessageHandler.KEY_ACK.length() + 1))));
+                    continue;
+                }
 
                 outputStream.writeUTF(messageHandler.buildAck(true));
                 log.info("Processed request from taxi: {}", data);
@@ -189,8 +477,74 @@ public class ClientHandler {
         }
     }
 
+    /**
+     * Handles requests from authenticated taxis that negotiated the binary framing.
+     * Heartbeats and ACKs are handled on the reused buffers of the codec without building strings.
+     *
+     * @param inputStream the input stream to read frames from
+     * @param outputStream the output stream to send frames to
+     * @param id the identifier of the taxi
+     * @param sessionKeys whether the taxi negotiated session keys and may ask to rotate them
+     * @throws IOException if an I/O error occurs or a frame cannot be parsed
+     */
+    private void handleBinaryTaxiRequests(DataInputStream inputStream, DataOutputStream outputStream, String id, boolean sessionKeys) throws IOException {
+        BinaryFrameCodec codec = new BinaryFrameCodec(maxFrameBytes);
 
+        while (true) {
+            byte type = codec.readFrom(inputStream);
+            if (type == BinaryFrameCodec.INVALID) {
+                codec.begin(BinaryFrameCodec.NACK).writeTo(outputStream);
+                log.error("Invalid frame received from taxi {}.", id);
+                continue;
+            }
+            // Cualquier trama válida cuenta como señal de vida
+            recordActivity(id);
+
+            switch (type) {
+                case BinaryFrameCodec.HEARTBEAT, BinaryFrameCodec.REQUEST -> codec.begin(BinaryFrameCodec.ACK).writeTo(outputStream);
+                case BinaryFrameCodec.REKEY -> {
+                    if (sessionKeys) {
+                        writeSessionKeyFrame(codec, outputStream, id);
+                    } else {
+                        codec.begin(BinaryFrameCodec.NACK).writeTo(outputStream);
+                    }
+                }
+                case BinaryFrameCodec.KEY_ACK -> {
+                    boolean promoted = sessionKeys && acknowledgeSessionKey(id, String.valueOf(codec.getInt()));
+                    codec.begin(promoted ? BinaryFrameCodec.ACK : BinaryFrameCodec.NACK).writeTo(outputStream);
+                }
+                case BinaryFrameCodec.EOT -> {
+                    codec.begin(BinaryFrameCodec.ACK).writeTo(outputStream);
+                    log.info("End of transmission received. Closing connection.");
+                    return;
+                }
+                default -> {
+                    codec.begin(BinaryFrameCodec.NACK).writeTo(outputStream);
+                    log.error("Unexpected frame type {} received from taxi {}.", type, id);
+                }
+            }
+        }
+    }
 
-
-
-}
\ No newline at end of file
+    /**
+     * Rotates the session key of a taxi and sends it as a KEY frame (key id, wrapped key), or a NACK if it could not be generated.
+     * Central keeps encrypting with the current key until the taxi confirms the new one with a KEY_ACK frame.
+     *
+     * @param codec the codec of the connection
+     * @param outputStream the output stream to send the frame to
+     * @param taxiId the identifier of the taxi
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeSessionKeyFrame(BinaryFrameCodec codec, DataOutputStream outputStream, String taxiId) throws IOException {
+        try {
+            EncryptionService.SessionKey sessionKey = encryptionService.rotateSessionKey(taxiId);
+            String wrapped = encryptionService.wrapSessionKey(sessionKey, encryptionService.getTaxiPublicKey(taxiId));
+            codec.begin(BinaryFrameCodec.KEY).putInt(sessionKey.id()).putString(wrapped);
+            log.info("Session key rotated for taxi: {}", taxiId);
+        } catch (Exception e) {
+            log.error("Error rotating session key for taxi {}: {}", taxiId, e.getMessage());
+            codec.begin(BinaryFrameCodec.NACK);
+        }
+        codec.writeTo(outputStream);
+    }
+}
@@ -2,6 +2,7 @@ package org.example.ec_central.service;
 
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
@@ -9,17 +10,46 @@ import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 /**
  * Service class for handling the central socket server operations.
+ * In the default "virtual" mode every taxi connection runs on its own virtual thread, so mostly-idle
+ * connections blocked in readUTF only cost a small heap-allocated stack instead of a platform thread.
+ * The "platform" mode keeps the original thread-per-connection behaviour.
  */
 @Service
 @Slf4j
 public class ECCentralSocketServer {
 
-    private static final int PORT = 9090;
     private final ClientHandler clientHandler;
 
+    /**
+     * Port the server listens on, injected from application properties.
+     */
+    @Value("${central.server.port:9090}")
+    private int port;
+
+    /**
+     * Length of the queue of pending connections, injected from application properties.
+     */
+    @Value("${central.server.backlog:1024}")
+    private int backlog;
+
+    /**
+     * Threading mode for connections: "virtual" or "platform", injected from application properties.
+     */
+    @Value("${central.server.mode:virtual}")
+    private String mode;
+
+    /**
+     * Maximum number of simultaneous taxi connections, injected from application properties.
+     * Once reached, new connections wait in the backlog until one is closed.
+     */
+    @Value("${central.server.max-connections:100000}")
+    private int maxConnections;
 
     private int lastTaxi = 0;
 
@@ -38,22 +68,65 @@ public class ECCentralSocketServer {
     @PostConstruct
     public void startServer() throws UnknownHostException {
         String localIp = InetAddress.getLocalHost().getHostAddress();
-        log.info("Central Server IP: " + localIp + ", port: " + PORT);
+        log.info("Central Server IP: " + localIp + ", port: " + port);
+        ExecutorService connectionExecutor = "platform".equalsIgnoreCase(mode)
+                ? Executors.newThreadPerTaskExecutor(Thread.ofPlatform().name("taxi-connection-", 0).factory())
+                : Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("taxi-connection-", 0).factory());
+        Semaphore connectionSlots = new Semaphore(maxConnections);
+
         new Thread(() -> {
-            try (ServerSocket serverSocket = new ServerSocket(PORT, 50, InetAddress.getByName("0.0.0.0"))) {
-                log.info("Central Server started on IP 0.0.0.0 and port " + PORT);
+            try (ServerSocket serverSocket = new ServerSocket(port, backlog, InetAddress.getByName("0.0.0.0"))) {
+                log.info("Central Server started on IP 0.0.0.0 and port {} ({} threads, backlog {}, max {} connections)",
+                        port, mode, backlog, maxConnections);
 
                 while (true) {
-                    Socket clientSocket = serverSocket.accept();
+                    // Sin hueco libre no se acepta: las conexiones nuevas esperan en el backlog del sistema
+                    connectionSlots.acquireUninterruptibly();
+                    Socket clientSocket;
+                    try {
+                        clientSocket = serverSocket.accept();
+                    } catch (IOException e) {
+                        connectionSlots.release();
+                        if (serverSocket.isClosed()) {
+                            throw e;
+                        }
+                        // Un fallo de una sola conexión no debe parar el servidor
+                        log.warn("Error accepting taxi connection: {}", e.getMessage());
+                        continue;
+                    }
                     log.info("New taxi connected from: " + clientSocket.getInetAddress()); // esto no se ve en el log
 
-                    new Thread(() -> clientHandler.handleTaxiConnection(clientSocket)).start();
+                    try {
+                        connectionExecutor.execute(() -> {
+                            try {
+                                clientSocket.setTcpNoDelay(true);
+                                clientHandler.handleTaxiConnection(clientSocket);
+                            } catch (IOException e) {
+                                log.warn("Error setting up taxi connection from {}: {}", clientSocket.getInetAddress(), e.getMessage());
+                            } finally {
+                                closeQuietly(clientSocket);
+                                connectionSlots.release();
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        log.error("Could not start handler for taxi connection: {}", e.getMessage());
+                        closeQuietly(clientSocket);
+                        connectionSlots.release();
+                        continue;
+                    }
                     lastTaxi++;
                 }
             } catch (IOException e) {
-                log.error("Error starting server: {}", e.getMessage());
-                e.printStackTrace();
+                log.error("Error starting server: {}", e.getMessage(), e);
             }
-        }).start();
+        }, "taxi-acceptor").start();
+    }
+
+    private void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.debug("Error closing taxi socket: {}", e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
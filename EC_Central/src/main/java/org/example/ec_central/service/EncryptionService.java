@@ -1,13 +1,16 @@
 package org.example.ec_central.service;
 
-import javax.crypto.Cipher;
-import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.*;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.example.ec_central.utils.CryptoEngine;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -15,6 +18,16 @@ public class EncryptionService {
 
     private final KeyPair rsaKeyPair;
     private final ConcurrentHashMap<String, PublicKey> taxiPublicKeys = new ConcurrentHashMap<>();
+    // Claves de sesión por taxi: la actual, la anterior, que se sigue aceptando durante la rotación,
+    // y la nueva que el taxi aún no ha confirmado
+    private final ConcurrentHashMap<String, SessionKeys> taxiSessionKeys = new ConcurrentHashMap<>();
+    private final AtomicInteger sessionKeyIds = new AtomicInteger();
+    // Cifradores reutilizados por hilo en lugar de crearlos en cada mensaje
+    private final CryptoEngine cryptoEngine = new CryptoEngine();
+
+    public static final String SESSION_PAYLOAD_PREFIX = "S";
+    // Primer byte de los payloads binarios; los de texto empiezan por un carácter imprimible
+    public static final byte BINARY_PAYLOAD_VERSION = 1;
 
 
     public EncryptionService() throws Exception {
@@ -26,17 +39,13 @@ public class EncryptionService {
 
     // RSA Encryption
     public String encryptWithRSA(String plainText, PublicKey publicKey) throws Exception {
-        Cipher cipher = Cipher.getInstance("RSA");
-        cipher.init(Cipher.ENCRYPT_MODE, publicKey);
-        byte[] encryptedBytes = cipher.doFinal(plainText.getBytes());
+        byte[] encryptedBytes = cryptoEngine.rsaEncrypt(publicKey, plainText.getBytes(StandardCharsets.UTF_8));
         return Base64.getEncoder().encodeToString(encryptedBytes);
     }
 
     public String decryptWithRSA(String encryptedText) throws Exception {
-        Cipher cipher = Cipher.getInstance("RSA");
-        cipher.init(Cipher.DECRYPT_MODE, rsaKeyPair.getPrivate());
-        byte[] decryptedBytes = cipher.doFinal(Base64.getDecoder().decode(encryptedText));
-        return new String(decryptedBytes);
+        byte[] decryptedBytes = cryptoEngine.rsaDecrypt(rsaKeyPair.getPrivate(), Base64.getDecoder().decode(encryptedText));
+        return new String(decryptedBytes, StandardCharsets.UTF_8);
     }
 
     public PublicKey getPublicKey() {
@@ -45,23 +54,27 @@ public class EncryptionService {
 
     // AES Encryption
     public String encryptWithAES(String plainText, SecretKey secretKey) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-        byte[] encryptedBytes = cipher.doFinal(plainText.getBytes());
+        byte[] encryptedBytes = cryptoEngine.aesEncrypt(secretKey, plainText.getBytes(StandardCharsets.UTF_8));
         return Base64.getEncoder().encodeToString(encryptedBytes);
     }
 
     public String decryptWithAES(String encryptedText, SecretKey secretKey) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.DECRYPT_MODE, secretKey);
-        byte[] decryptedBytes = cipher.doFinal(Base64.getDecoder().decode(encryptedText));
-        return new String(decryptedBytes);
+        byte[] decryptedBytes = cryptoEngine.aesDecrypt(secretKey, Base64.getDecoder().decode(encryptedText));
+        return new String(decryptedBytes, StandardCharsets.UTF_8);
+    }
+
+    public SecretKey generateAESKey() {
+        return cryptoEngine.generateAesKey();
+    }
+
+    // Decodificar una clave pública RSA recibida en Base64
+    public PublicKey decodePublicKey(String encodedKey) throws Exception {
+        return cryptoEngine.decodeRsaPublicKey(Base64.getDecoder().decode(encodedKey));
     }
 
-    public SecretKey generateAESKey() throws Exception {
-        KeyGenerator keyGen = KeyGenerator.getInstance("AES");
-        keyGen.init(256);
-        return keyGen.generateKey();
+    // Acceso directo a las operaciones sobre bytes/ByteBuffer, sin conversiones a String
+    public CryptoEngine getCryptoEngine() {
+        return cryptoEngine;
     }
 
     public String encodeKey(SecretKey secretKey) {
@@ -86,6 +99,104 @@ public class EncryptionService {
         return taxiPublicKeys.get(taxiId);
     }
 
+    // Olvidar las claves de sesión de un taxi desconectado
+    public void removeSessionKeys(String taxiId) {
+        taxiSessionKeys.remove(taxiId);
+    }
+
+
+    ///sesiones
+
+    // Crear una nueva clave de sesión para el taxi. La primera pasa a ser la actual; las siguientes quedan pendientes
+    // (sólo para descifrar) y se sigue cifrando con la actual hasta que el taxi confirme la nueva
+    public SessionKey rotateSessionKey(String taxiId) throws Exception {
+        SessionKey sessionKey = new SessionKey(sessionKeyIds.incrementAndGet(), generateAESKey());
+        taxiSessionKeys.compute(taxiId, (id, keys) -> keys == null
+                ? new SessionKeys(sessionKey, null, null)
+                : new SessionKeys(keys.current(), keys.previous(), sessionKey));
+        return sessionKey;
+    }
+
+    // El taxi confirma que ya tiene la clave pendiente: pasa a ser la actual y la actual queda como anterior
+    public boolean promoteSessionKey(String taxiId, int keyId) {
+        SessionKeys promoted = taxiSessionKeys.computeIfPresent(taxiId, (id, keys) ->
+                keys.pending() != null && keys.pending().id() == keyId
+                        ? new SessionKeys(keys.pending(), keys.current(), null)
+                        : keys);
+        return promoted != null && promoted.current().id() == keyId;
+    }
+
+    // Clave de sesión actual del taxi, o null si el taxi no negoció claves de sesión
+    public SessionKey getSessionKey(String taxiId) {
+        SessionKeys keys = taxiSessionKeys.get(taxiId);
+        return keys == null ? null : keys.current();
+    }
+
+    // Clave de sesión del taxi con el identificador dado, o null si ya no es válida
+    public SessionKey getSessionKey(String taxiId, int keyId) {
+        SessionKeys keys = taxiSessionKeys.get(taxiId);
+        if (keys == null) {
+            return null;
+        }
+        if (keys.current().id() == keyId) {
+            return keys.current();
+        }
+        if (keys.pending() != null && keys.pending().id() == keyId) {
+            return keys.pending();
+        }
+        return keys.previous() != null && keys.previous().id() == keyId ? keys.previous() : null;
+    }
+
+    // Clave de sesión cifrada con la clave pública del taxi, para enviarla por el socket
+    public String wrapSessionKey(SessionKey sessionKey, PublicKey taxiPublicKey) throws Exception {
+        return encryptWithRSA(encodeKey(sessionKey.key()), taxiPublicKey);
+    }
+
+    // AES-GCM: IV aleatorio de 12 bytes delante del texto cifrado; el taxiId va como dato autenticado
+    public String encryptWithAESGCM(String plainText, SecretKey secretKey, String associatedData) throws Exception {
+        byte[] encryptedBytes = cryptoEngine.gcmEncrypt(secretKey, associatedData.getBytes(StandardCharsets.UTF_8),
+                plainText.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(encryptedBytes);
+    }
+
+    public String decryptWithAESGCM(String encryptedText, SecretKey secretKey, String associatedData) throws Exception {
+        byte[] decryptedBytes = cryptoEngine.gcmDecrypt(secretKey, associatedData.getBytes(StandardCharsets.UTF_8),
+                Base64.getDecoder().decode(encryptedText));
+        return new String(decryptedBytes, StandardCharsets.UTF_8);
+    }
+
+    // Payload binario: versión | keyId | longitud y bytes del taxiId | iv||cifrado||tag (el taxiId va como dato autenticado)
+    public byte[] encryptBinaryPayload(byte[] plain, SessionKey sessionKey, String taxiId) throws Exception {
+        byte[] id = taxiId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer out = ByteBuffer.allocate(1 + Integer.BYTES + Short.BYTES + id.length + CryptoEngine.gcmOutputSize(plain.length));
+        out.put(BINARY_PAYLOAD_VERSION).putInt(sessionKey.id()).putShort((short) id.length).put(id);
+        cryptoEngine.gcmEncrypt(sessionKey.key(), id, ByteBuffer.wrap(plain), out);
+        return out.array();
+    }
+
+    // Descifra un payload binario de un taxi; la clave se busca por taxiId y keyId
+    public byte[] decryptBinaryPayload(byte[] payload) throws Exception {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        if (in.get() != BINARY_PAYLOAD_VERSION) {
+            throw new IllegalArgumentException("Versión de payload binario no soportada: " + payload[0]);
+        }
+        int keyId = in.getInt();
+        byte[] id = new byte[in.getShort()];
+        in.get(id);
+        String taxiId = new String(id, StandardCharsets.UTF_8);
+        SessionKey sessionKey = getSessionKey(taxiId, keyId);
+        if (sessionKey == null) {
+            throw new IllegalArgumentException("Clave de sesión desconocida para el taxi " + taxiId + ": " + keyId);
+        }
+        return cryptoEngine.gcmDecrypt(sessionKey.key(), id, Arrays.copyOfRange(payload, in.position(), payload.length));
+    }
+
+    public record SessionKey(int id, SecretKey key) {
+    }
+
+    private record SessionKeys(SessionKey current, SessionKey previous, SessionKey pending) {
+    }
+
     // Obtener clave pública de Central
     public PublicKey getCentralPublicKey() {
         return rsaKeyPair.getPublic();
@@ -4,28 +4,45 @@ import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.example.ec_central.config.KafkaConfiguration;
 import org.example.ec_central.model.*;
 import org.example.ec_central.model.entity.Customer;
-import org.example.ec_central.model.entity.CustomerTaxiAssignment;
 import org.example.ec_central.model.entity.Location;
 import org.example.ec_central.model.entity.Taxi;
 import org.example.ec_central.repository.CustomerRepository;
 import org.example.ec_central.repository.CustomerTaxiAssignmentRepository;
 import org.example.ec_central.repository.LocationRepository;
 import org.example.ec_central.repository.TaxiRepository;
+import org.example.ec_central.utils.HungarianAlgorithm;
 import org.example.ec_central.utils.MappingUtils;
+import org.example.ec_central.utils.SimulationClock;
+import org.example.ec_central.utils.StatusDtoCodec;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaAdmin;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.crypto.SecretKey;
-import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service class for handling Kafka-related operations.
@@ -36,6 +53,7 @@ import java.util.concurrent.ConcurrentHashMap;
 public class KafkaService {
     private final KafkaAdmin kafkaAdmin;
     private final KafkaTemplate<String, String> kafkaTemplate;
+    private final KafkaTemplate<String, byte[]> byteArrayKafkaTemplate;
     private final Map<String, String> clientTopics = new ConcurrentHashMap<>();
     private final TaxiService taxiService;
     private final TaxiWebSocketService taxiWebSocketService;
@@ -47,22 +65,77 @@ public class KafkaService {
     private final CustomerTaxiAssignmentRepository customerTaxiAssignmentRepository;
     private final CustomerTaxiAssignmentService customerTaxiAssignmentService;
     private final EncryptionService encryptionService;
-    private CityMap cityMap;
+    private final CityMapProjection cityMapProjection;
+    private final TaxiSpatialIndex taxiSpatialIndex;
+    private final TaxiAvailabilityRegistry taxiAvailabilityRegistry;
+    private final TaxiRideCache taxiRideCache;
+    private final RoutePlanner routePlanner;
+    private final PendingRequestQueue pendingRequestQueue;
+    private final PositionWriteBehind positionWriteBehind;
+    private final TransactionTemplate transactionTemplate;
+    private final SimulationClock clock;
 
     /**
-     * Initializes the city map after the bean is constructed.
+     * Whether customers and taxis share the keyed "customer-responses" and "taxi-commands" topics
+     * instead of having one topic each, injected from application properties.
+     */
+    @Value("${messaging.shared-topics.enabled:false}")
+    private boolean sharedTopics;
+
+    /**
+     * Number of nearest idle taxis considered for each request.
+     */
+    @Value("${dispatch.nearest-candidates:5}")
+    private int nearestCandidates;
+
+    /**
+     * Dispatch mode: "greedy" assigns each request as it arrives, "batch" collects requests and assigns them together.
+     */
+    @Value("${dispatch.mode:greedy}")
+    private String dispatchMode;
+
+    /**
+     * Length of the window during which requests are collected in batch mode, in milliseconds.
+     */
+    @Value("${dispatch.batch.window-ms:500}")
+    private long batchWindowMs;
+
+    /**
+     * Cost of pairing a customer with a taxi that is not among its candidates.
+     */
+    private static final long NOT_A_CANDIDATE = Integer.MAX_VALUE;
+
+    private final List<BatchRequest> batchRequests = new ArrayList<>();
+
+    /**
+     * Starts broadcasting the city map after the bean is constructed.
      */
     @PostConstruct
     private void fillCityMap() {
-        cityMap = new CityMap();
+        if (nearestCandidates < 1) {
+            throw new IllegalStateException("dispatch.nearest-candidates must be at least 1: " + nearestCandidates);
+        }
         new Thread(this::runThread).start();
+        startDispatchScheduler();
+    }
+
+    /**
+     * Starts the periodic dispatch tasks: expiring waiting requests and, if enabled, the batch dispatcher.
+     */
+    private void startDispatchScheduler() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        clock.scheduleWithFixedDelay(scheduler, this::expirePendingRequests, 1, 1, TimeUnit.SECONDS);
+        if (isBatchDispatch()) {
+            log.info("Batch dispatch enabled with a window of {} ms", batchWindowMs);
+            clock.scheduleWithFixedDelay(scheduler, this::dispatchBatch, batchWindowMs, batchWindowMs, TimeUnit.MILLISECONDS);
+        }
     }
 
     private void runThread() {
         while(true) {
             try {
-                taxiWebSocketService.broadcastToClients(populateMap());
-                Thread.sleep(1000);
+                taxiWebSocketService.broadcastToClients(cityMapProjection.toCityMap());
+                clock.sleep(1, TimeUnit.SECONDS);
             } catch (Exception e) {
                 log.error(e.getMessage(), e);
             }
@@ -87,11 +160,67 @@ public class KafkaService {
         customer.setDestIdentifier(destination);
         customer.setState(CustomerState.REQUESTING);
         customerRepository.save(customer);
+        cityMapProjection.updateCustomer(customer);
 
         createClientTopic(clientId);
 
+        if (isBatchDispatch()) {
+            synchronized (batchRequests) {
+                batchRequests.add(new BatchRequest(customer, destination, message));
+            }
+            return;
+        }
+
         boolean taxiAssigned = assignTaxiToClient(customer, destination);
+        replyOrQueue(customer, taxiAssigned, destination, message);
+    }
+
+    /**
+     * Answers a service request, or keeps it waiting for a taxi if none was free and the queue has room.
+     *
+     * @param customer     the customer that requested the taxi
+     * @param taxiAssigned whether a taxi was assigned
+     * @param destination  the identifier of the destination
+     * @param message      the original request, for logging
+     */
+    private void replyOrQueue(Customer customer, boolean taxiAssigned, String destination, String message) {
+        // Solo se encolan peticiones con destino válido, las demás nunca podrían servirse
+        if (!taxiAssigned && locationRepository.findByIdentifier(destination).isPresent()
+                && pendingRequestQueue.offer(customer, destination, message)) {
+            return;
+        }
+        replyToServiceRequest(customer, taxiAssigned, message);
+    }
+
+    /**
+     * Assigns the free taxis to the waiting requests, priority customers first and then by deadline.
+     */
+    private void servePendingRequests() {
+        List<PendingRequestQueue.PendingRequest> served = pendingRequestQueue.serve(
+                request -> assignTaxiToClient(request.customer(), request.destination()));
+        served.forEach(request -> replyToServiceRequest(request.customer(), true, request.message()));
+    }
+
+    /**
+     * Rejects the waiting requests whose deadline has passed.
+     */
+    private void expirePendingRequests() {
+        try {
+            pendingRequestQueue.pollExpired()
+                               .forEach(request -> replyToServiceRequest(request.customer(), false, request.message()));
+        } catch (Exception e) {
+            log.error("Error expiring pending requests: {}", e.getMessage(), e);
+        }
+    }
 
+    /**
+     * Sends the OK/KO answer of a service request to the customer.
+     *
+     * @param customer     the customer that requested the taxi
+     * @param taxiAssigned whether a taxi was assigned
+     * @param message      the original request, for logging
+     */
+    private void replyToServiceRequest(Customer customer, boolean taxiAssigned, String message) {
         String response;
 
         if (taxiAssigned) {
@@ -108,12 +237,85 @@ public class KafkaService {
         publishToClient(customer, response);
     }
 
+    private boolean isBatchDispatch() {
+        return "batch".equalsIgnoreCase(dispatchMode);
+    }
+
+    /**
+     * Assigns the requests collected during the last window all at once, minimising the total cost of the pickup routes.
+     * Each customer is only paired with its n cheapest idle taxis, n being the number of requests in the batch:
+     * an optimal assignment never needs a farther taxi, since one of those n is always left free for it.
+     */
+    private void dispatchBatch() {
+        List<BatchRequest> requests;
+        synchronized (batchRequests) {
+            if (batchRequests.isEmpty()) {
+                return;
+            }
+            requests = new ArrayList<>(batchRequests);
+            batchRequests.clear();
+        }
+        try {
+            List<BatchRequest> routable = new ArrayList<>();
+            List<Location> destinations = new ArrayList<>();
+            for (BatchRequest request : requests) {
+                Optional<Location> location = locationRepository.findByIdentifier(request.destination());
+                if (location.isEmpty()) {
+                    replyToServiceRequest(request.customer(), false, request.message());
+                } else {
+                    routable.add(request);
+                    destinations.add(location.get());
+                }
+            }
+            if (routable.isEmpty()) {
+                return;
+            }
+
+            // Columnas: la unión de los candidatos de todos los clientes
+            Map<String, Integer> columns = new LinkedHashMap<>();
+            List<List<RankedTaxi>> candidates = new ArrayList<>();
+            for (BatchRequest request : routable) {
+                List<RankedTaxi> nearest = cheapestTaxis(request.customer().getX(), request.customer().getY(), routable.size());
+                nearest.forEach(candidate -> columns.putIfAbsent(candidate.identifier(), columns.size()));
+                candidates.add(nearest);
+            }
+            List<String> taxis = new ArrayList<>(columns.keySet());
+
+            long[][] cost = new long[routable.size()][taxis.size()];
+            for (int row = 0; row < routable.size(); row++) {
+                Arrays.fill(cost[row], NOT_A_CANDIDATE);
+                for (RankedTaxi candidate : candidates.get(row)) {
+                    cost[row][columns.get(candidate.identifier())] = candidate.cost();
+                }
+            }
+            int[] assignment = HungarianAlgorithm.assign(cost);
+            log.info("Batch of {} requests dispatched over {} candidate taxis", routable.size(), taxis.size());
+
+            for (int row = 0; row < routable.size(); row++) {
+                BatchRequest request = routable.get(row);
+                int column = assignment[row];
+                boolean taxiAssigned = column >= 0 && cost[row][column] != NOT_A_CANDIDATE
+                        && tryAssignTaxi(taxis.get(column), request.customer(), destinations.get(row));
+                if (!taxiAssigned) {
+                    // Sin pareja en el lote (o el taxi ya no está libre): intentarlo con el más cercano que quede
+                    taxiAssigned = assignTaxiToClient(request.customer(), request.destination());
+                }
+                replyOrQueue(request.customer(), taxiAssigned, request.destination(), request.message());
+            }
+        } catch (Exception e) {
+            log.error("Error dispatching batch of {} requests: {}", requests.size(), e.getMessage(), e);
+        }
+    }
+
     /**
      * Creates a Kafka topic for a client if it does not already exist.
      *
      * @param clientId the identifier of the client
      */
     public void createClientTopic(String clientId) {
+        if (sharedTopics) {
+            return; // El cliente lee su clave en el tópico compartido
+        }
         String topicName = "taxi-requests-" + clientId;
         if (!clientTopics.containsKey(clientId)) {
             NewTopic newTopic = new NewTopic(topicName, 1, (short) 1);
@@ -124,14 +326,14 @@ public class KafkaService {
     }
 
     /**
-     * Publishes a message to a client's Kafka topic.
+     * Publishes a message to a client's Kafka topic, or to the shared topic keyed by the client's identifier.
      *
      * @param customer the customer to whom the message is addressed
      * @param message the message to be published
      */
     public void publishToClient(Customer customer, String message) {
-        String topicName = "taxi-requests-" + customer.getIdentifier();
-        kafkaTemplate.send(topicName, message);
+        String topicName = sharedTopics ? KafkaConfiguration.CUSTOMER_RESPONSES_TOPIC : "taxi-requests-" + customer.getIdentifier();
+        kafkaTemplate.send(topicName, customer.getIdentifier(), message);
     }
 
 
@@ -145,22 +347,40 @@ public class KafkaService {
      */
     public void publishToTaxi(Taxi taxi, CustomerStatusDto customerStatusDto) {
         try {
-            String topicName = "taxi-start-service-" + taxi.getIdentifier();
+            String topicName = sharedTopics ? KafkaConfiguration.TAXI_COMMANDS_TOPIC : "taxi-start-service-" + taxi.getIdentifier();
 
             // Verificar si la clave pública del taxi está registrada
             if (encryptionService.getTaxiPublicKey(taxi.getIdentifier()) == null) {
                 throw new IllegalArgumentException("Clave pública no encontrada para el taxi: " + taxi.getIdentifier());
             }
 
+            // Si el taxi negoció una clave de sesión, solo se usa cifrado simétrico: S#taxiId#keyId#iv||cifrado
+            EncryptionService.SessionKey sessionKey = encryptionService.getSessionKey(taxi.getIdentifier());
+            if (sessionKey != null && clientHandler.acceptsBinaryDto(taxi.getIdentifier())) {
+                // Formato binario compacto en lugar de JSON y Base64
+                byte[] payload = encryptionService.encryptBinaryPayload(StatusDtoCodec.encode(customerStatusDto), sessionKey, taxi.getIdentifier());
+                byteArrayKafkaTemplate.send(topicName, taxi.getIdentifier(), payload);
+                log.info("Published binary session-encrypted Kafka event to {}", topicName);
+                return;
+            }
+
+            // Convertir DTO a String
+            String message = MappingUtils.map(customerStatusDto);
+
+            if (sessionKey != null) {
+                String payload = String.join("#", EncryptionService.SESSION_PAYLOAD_PREFIX, taxi.getIdentifier(),
+                        String.valueOf(sessionKey.id()), encryptionService.encryptWithAESGCM(message, sessionKey.key(), taxi.getIdentifier()));
+                kafkaTemplate.send(topicName, taxi.getIdentifier(), payload);
+                log.info("Published session-encrypted Kafka event to {}", topicName);
+                return;
+            }
+
             // Obtener la clave pública del taxi
             PublicKey taxiPublicKey = encryptionService.getTaxiPublicKey(taxi.getIdentifier());
 
             // Generar clave AES
             SecretKey aesKey = encryptionService.generateAESKey();
 
-            // Convertir DTO a String
-            String message = MappingUtils.map(customerStatusDto);
-
             // Cifrar el mensaje con AES
             String encryptedMessage = encryptionService.encryptWithAES(message, aesKey);
 
@@ -171,7 +391,7 @@ public class KafkaService {
             String payload = encryptedAESKey + "#" + encryptedMessage;
 
             // Publicar el mensaje cifrado en Kafka
-            kafkaTemplate.send(topicName, payload);
+            kafkaTemplate.send(topicName, taxi.getIdentifier(), payload);
             log.info("Published encrypted Kafka event to {}: {}", topicName, payload);
         } catch (Exception e) {
             log.error("Error encrypting or publishing message to taxi {}: {}", taxi.getIdentifier(), e.getMessage());
@@ -189,241 +409,425 @@ public class KafkaService {
     private boolean assignTaxiToClient(Customer customer, String destination) {
         log.info("Asignando taxi para el cliente {} hacia {}", customer.getIdentifier(), destination);
 
-        List<Taxi> availableTaxis = taxiRepository.findAllByAvailable(true);
-
-        for (Taxi taxi : availableTaxis) {
-            log.info("Taxi disponible en DATABASE: {}, connectedTaxis con sockets(SIN COMPROBAR CONEXION): {}", taxi.getIdentifier(), clientHandler.getConnectedTaxis());
-            if (clientHandler.getConnectedTaxis().containsKey(taxi.getIdentifier())) {
-                log.info("Taxi key: {}", taxi.getIdentifier());
-                if (isTaxiConnected(clientHandler.getConnectedTaxis().get(taxi.getIdentifier()), taxi.getIdentifier())) {
-                    log.info("Taxi conectado: {}", taxi.getIdentifier());
-                    Optional<Location> location = locationRepository.findByIdentifier(destination);
-                    if (location.isEmpty()) {
-                        return false;
-                    }
+        Optional<Location> location = locationRepository.findByIdentifier(destination);
+        if (location.isEmpty()) {
+            return false;
+        }
 
-                    taxi.setAvailable(false);
-                    taxi.setDestIdentifier(customer.getIdentifier());
-                    taxi.setState(TaxiState.ASSIGNED); //asignat
-                    Taxi savedTaxi = taxiRepository.save(taxi);
-                    log.info("Taxi asignado: {}", savedTaxi.getIdentifier());
-
-                    CustomerStatusDto customerStatusDto = CustomerStatusDto.builder()
-                                                                  .customerX(customer.getX())
-                                                                  .customerY(customer.getY())
-                                                                  .x(taxi.getX())
-                                                                  .y(taxi.getY())
-                                                                  .taxiId(taxi.getIdentifier())
-                                                                  .status(taxi.getState())
-                                                                  .destX(location.get().getX())
-                                                                  .destY(location.get().getY())
-                                                                  .build();
-                    publishToTaxi(taxi, customerStatusDto);
-                    customerTaxiAssignmentRepository.deleteAllByIdTaxiId(taxi.getId());
-
-                    customerTaxiAssignmentService.createCustomerTaxiAssignment(customer.getId(), taxi.getId());
-                    return true;
-                } else{
-                    log.error("Taxi {} not connected, available socket IPs are: {}", taxi.getIdentifier(), clientHandler.getConnectedTaxis().values()
-                            .stream()
-                            .map(client -> client.getInetAddress().getHostAddress())
-                            .toList());
-                }
+        List<RankedTaxi> nearestTaxis = cheapestTaxis(customer.getX(), customer.getY(), nearestCandidates);
+        log.info("Taxis libres más cercanos a [{}, {}]: {}", customer.getX(), customer.getY(), nearestTaxis);
+
+        for (RankedTaxi candidate : nearestTaxis) {
+            if (tryAssignTaxi(candidate.identifier(), customer, location.get())) {
+                return true;
             }
         }
-        log.error("NOT CONTAINS");
+        log.debug("Ningún taxi asignado al cliente {}: {} candidatos probados", customer.getIdentifier(), nearestTaxis.size());
         return false;
     }
 
+    /**
+     * Finds the k dispatchable taxis with the cheapest route to a position, as planned by the {@link RoutePlanner}.
+     * Taxis are fetched from the spatial index nearest first. A route costs at least its number of steps times the
+     * cheapest cell cost, so the search widens until no farther taxi can beat the k-th cheapest route found.
+     *
+     * @param x the x-coordinate of the position
+     * @param y the y-coordinate of the position
+     * @param k the maximum number of taxis to return
+     * @return the taxis, cheapest route first; taxis that cannot reach the position are left out
+     */
+    private List<RankedTaxi> cheapestTaxis(int x, int y, int k) {
+        for (int fetch = Math.max(1, k); ; fetch *= 2) {
+            List<TaxiSpatialIndex.Candidate> nearest = taxiSpatialIndex.nearestCandidates(x, y, fetch, this::isDispatchable);
+            List<RankedTaxi> ranked = new ArrayList<>(nearest.size());
+            for (TaxiSpatialIndex.Candidate candidate : nearest) {
+                int cost = routePlanner.cost(candidate.x(), candidate.y(), x, y);
+                if (cost != RoutePlanner.UNREACHABLE) {
+                    ranked.add(new RankedTaxi(candidate.identifier(), cost));
+                }
+            }
+            ranked.sort(Comparator.comparingInt(RankedTaxi::cost).thenComparing(RankedTaxi::identifier));
+            // Con menos taxis de los pedidos ya están todos; si no, hay que ver si uno más lejano podría ser más barato
+            boolean allFetched = nearest.size() < fetch;
+            if (allFetched || (ranked.size() >= k && ranked.get(k - 1).cost()
+                    <= routePlanner.lowerBound(nearest.get(nearest.size() - 1).distance()))) {
+                return ranked.subList(0, Math.min(k, ranked.size()));
+            }
+        }
+    }
 
     /**
-     * Check if the taxi socket is still up.
+     * Checks whether a taxi can be offered to a customer: it is connected and nobody has claimed it.
      *
-     * @param socket taxi Socket
-     * @return true if a taxi socket was successfully up, false otherwise
+     * @param identifier the identifier of the taxi
+     * @return true if the taxi can be dispatched
      */
+    private boolean isDispatchable(String identifier) {
+        return taxiAvailabilityRegistry.isAvailable(identifier) && isTaxiConnected(identifier);
+    }
 
-    public boolean isTaxiConnected(Socket socket, String identifier){
+    /**
+     * Claims a taxi and assigns it to a customer.
+     *
+     * @param identifier the identifier of the taxi
+     * @param customer   the customer requesting the taxi
+     * @param location   the destination of the customer
+     * @return true if the taxi was assigned, false if it is not connected or no longer available
+     */
+    private boolean tryAssignTaxi(String identifier, Customer customer, Location location) {
+        if (!isTaxiConnected(identifier)) {
+            log.error("Taxi {} not connected or not alive, connected taxis: {}", identifier, clientHandler.getConnectedTaxis().size());
+            return false;
+        }
+        // Solo el hilo que gana el compare-and-set puede asignar este taxi
+        if (!taxiAvailabilityRegistry.tryClaim(identifier)) {
+            log.info("Taxi {} already claimed by another request", identifier);
+            return false;
+        }
+        taxiSpatialIndex.remove(identifier);
+        Taxi taxi = taxiRepository.findTaxiByIdentifier(identifier);
+        if (taxi == null || !taxi.isAvailable()) {
+            // El registro estaba desactualizado respecto a la base de datos, el taxi se queda reclamado
+            return false;
+        }
+        log.info("Taxi conectado: {}", taxi.getIdentifier());
 
-        if (socket != null && socket.isConnected() && !socket.isClosed()) {
-            log.info("socket SI disponible {}", socket);
-            return true;
-        } else if (socket != null && socket.isClosed()) {
-            clientHandler.getConnectedTaxis().remove(identifier);
+        taxi.setAvailable(false);
+        taxi.setDestIdentifier(customer.getIdentifier());
+        taxi.setState(TaxiState.ASSIGNED); //asignat
+        Taxi savedTaxi;
+        try {
+            savedTaxi = taxiRepository.save(taxi);
+        } catch (RuntimeException e) {
+            log.error("Could not store assignment of taxi {}: {}", identifier, e.getMessage());
+            taxiAvailabilityRegistry.release(identifier);
+            taxiSpatialIndex.add(identifier, taxi.getX(), taxi.getY());
+            return false;
         }
-        log.info("socket NO disponible {}", socket);
-        return false;
+        cityMapProjection.updateTaxi(savedTaxi);
+        log.info("Taxi asignado: {}", savedTaxi.getIdentifier());
+
+        CustomerStatusDto customerStatusDto = CustomerStatusDto.builder()
+                                                      .customerX(customer.getX())
+                                                      .customerY(customer.getY())
+                                                      .x(taxi.getX())
+                                                      .y(taxi.getY())
+                                                      .taxiId(taxi.getIdentifier())
+                                                      .status(taxi.getState())
+                                                      .destX(location.getX())
+                                                      .destY(location.getY())
+                                                      .build();
+        publishToTaxi(taxi, customerStatusDto);
+        customerTaxiAssignmentRepository.deleteAllByIdTaxiId(taxi.getId());
+
+        customerTaxiAssignmentService.createCustomerTaxiAssignment(customer.getId(), taxi.getId());
+        taxiRideCache.assign(taxi.getIdentifier(), taxi.getId(), customer, location.getIdentifier());
+        return true;
     }
 
 
+    /**
+     * Check if the taxi is connected and has been heard from recently.
+     *
+     * @param identifier the identifier of the taxi
+     * @return true if the taxi is connected and alive, false otherwise
+     */
+    public boolean isTaxiConnected(String identifier) {
+        return clientHandler.isTaxiAlive(identifier);
+    }
+
+
+    /**
+     * Decrypts a message published by a taxi. Taxis with a session key send S#taxiId#keyId#iv||ciphertext
+     * and only need AES-GCM; older taxis send an RSA-wrapped AES key with every message.
+     *
+     * @param encryptedPayload the payload received from Kafka
+     * @return the decrypted message
+     * @throws Exception if the payload is malformed or cannot be decrypted
+     */
+    private String decryptTaxiPayload(String encryptedPayload) throws Exception {
+        if (encryptedPayload.startsWith(EncryptionService.SESSION_PAYLOAD_PREFIX + "#")) {
+            String[] parts = encryptedPayload.split("#", 4);
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Invalid session payload format. Expected S#taxiId#keyId#message.");
+            }
+            String taxiId = parts[1];
+            EncryptionService.SessionKey sessionKey = encryptionService.getSessionKey(taxiId, Integer.parseInt(parts[2]));
+            if (sessionKey == null) {
+                throw new IllegalArgumentException("Unknown session key " + parts[2] + " for taxi " + taxiId);
+            }
+            return encryptionService.decryptWithAESGCM(parts[3], sessionKey.key(), taxiId);
+        }
+
+        // Dividir el payload en clave AES cifrada y mensaje cifrado
+        String[] parts = encryptedPayload.split("#", 2);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid payload format. Expected AES key and encrypted message separated by '#'.");
+        }
+        String encryptedAESKey = parts[0];
+        String encryptedMessage = parts[1];
+
+        // Descifrar la clave AES con la clave privada de Central
+        String aesKeyEncoded = encryptionService.decryptWithRSA(encryptedAESKey);
+        SecretKey aesKey = encryptionService.decodeKey(aesKeyEncoded);
+
+        // Descifrar el mensaje con AES
+        return encryptionService.decryptWithAES(encryptedMessage, aesKey);
+    }
+
     /**
      * Listens for taxi directions from Kafka.
      *
-     * @param encryptedPayload the message containing the taxi status
+     * @param encryptedPayload the message containing the taxi status, binary or a JSON-carrying string
      */
-    @KafkaListener(topics = "taxi-directions", groupId = "group", containerFactory = "kafkaListenerContainerFactory")
-    public void listenTaxiDirections(String encryptedPayload) {
-        log.info("Received encrypted Taxi Status Update: {}", encryptedPayload);
+    @KafkaListener(id = "taxiDirections", topics = "taxi-directions", groupId = "group",
+            containerFactory = "taxiDirectionsListenerContainerFactory", autoStartup = "#{!${directions.batch.enabled:false}}")
+    public void listenTaxiDirections(byte[] encryptedPayload) {
+        log.info("Received encrypted Taxi Status Update ({} bytes)", encryptedPayload.length);
 
         try {
-            // Dividir el payload en clave AES cifrada y mensaje cifrado
-            String[] parts = encryptedPayload.split("#", 2);
-            if (parts.length != 2) {
-                throw new IllegalArgumentException("Invalid payload format. Expected AES key and encrypted message separated by '#'.");
+            applyTaxiStatus(readTaxiStatus(encryptedPayload));
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid message format: {}", e.getMessage());
+        } catch (Exception e) {
+            log.error("Error processing taxi directions: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Listens to the "taxi-directions" topic in batch mode, enabled with directions.batch.enabled.
+     * The whole poll is decrypted and validated first; consecutive updates of a taxi with the same state
+     * are collapsed to the latest one, and the rest are applied in a single transaction. If that transaction fails,
+     * the batch is applied again one update per transaction, so a failing update does not hold back the others.
+     * Kafka messages and in-memory changes of an update only happen once it has been committed.
+     *
+     * @param records the records of one poll
+     */
+    @KafkaListener(id = "taxiDirectionsBatch", topics = "taxi-directions", groupId = "group",
+            containerFactory = "taxiDirectionsBatchListenerContainerFactory", autoStartup = "${directions.batch.enabled:false}")
+    public void listenTaxiDirectionsBatch(List<ConsumerRecord<String, byte[]>> records) {
+        List<TaxiStatusDto> updates = new ArrayList<>(records.size());
+        Map<String, Integer> lastUpdate = new HashMap<>();
+        for (ConsumerRecord<String, byte[]> record : records) {
+            TaxiStatusDto taxiStatusDto;
+            try {
+                taxiStatusDto = readTaxiStatus(record.value());
+            } catch (Exception e) {
+                log.error("Error reading taxi directions at offset {}: {}", record.offset(), e.getMessage());
+                continue;
+            }
+            // Los cambios de estado nunca se descartan: solo se colapsan actualizaciones seguidas con el mismo estado
+            Integer index = lastUpdate.get(taxiStatusDto.getTaxiId());
+            if (index != null && updates.get(index).getStatus() == taxiStatusDto.getStatus()) {
+                updates.set(index, taxiStatusDto);
+            } else {
+                lastUpdate.put(taxiStatusDto.getTaxiId(), updates.size());
+                updates.add(taxiStatusDto);
             }
-            String encryptedAESKey = parts[0];
-            String encryptedMessage = parts[1];
+        }
+        log.info("Applying {} taxi updates out of {} records", updates.size(), records.size());
+
+        try {
+            // Un único commit para todo el lote; si falla no queda nada aplicado ni se ejecuta ningún efecto
+            transactionTemplate.executeWithoutResult(status -> updates.forEach(this::applyTaxiStatus));
+            return;
+        } catch (Exception e) {
+            log.warn("Batch of {} taxi updates failed, applying them one by one: {}", updates.size(), e.getMessage());
+        }
 
-            // Descifrar la clave AES con la clave privada de Central
-            String aesKeyEncoded = encryptionService.decryptWithRSA(encryptedAESKey);
-            SecretKey aesKey = encryptionService.decodeKey(aesKeyEncoded);
+        TransactionTemplate perUpdate = new TransactionTemplate(transactionTemplate.getTransactionManager(), transactionTemplate);
+        perUpdate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        for (TaxiStatusDto update : updates) {
+            try {
+                // La excepción sale del callback: solo se deshace esta actualización y no se ejecutan sus efectos
+                perUpdate.executeWithoutResult(status -> applyTaxiStatus(update));
+            } catch (Exception e) {
+                log.error("Error applying update of taxi {}: {}", update.getTaxiId(), e.getMessage());
+            }
+        }
+    }
 
-            // Descifrar el mensaje con AES
-            String decryptedMessage = encryptionService.decryptWithAES(encryptedMessage, aesKey);
+    /**
+     * Decrypts and parses a taxi status update and validates the taxi's token.
+     *
+     * @param encryptedPayload the payload received from Kafka
+     * @return the status update
+     * @throws Exception if the payload cannot be decrypted or parsed, or the token is invalid
+     */
+    private TaxiStatusDto readTaxiStatus(byte[] encryptedPayload) throws Exception {
+        TaxiStatusDto taxiStatusDto;
+        if (encryptedPayload.length > 0 && encryptedPayload[0] == EncryptionService.BINARY_PAYLOAD_VERSION) {
+            taxiStatusDto = StatusDtoCodec.decodeTaxiStatus(encryptionService.decryptBinaryPayload(encryptedPayload));
+        } else {
+            String decryptedMessage = decryptTaxiPayload(new String(encryptedPayload, StandardCharsets.UTF_8));
 
             // Mapear el mensaje descifrado a un objeto DTO
-            TaxiStatusDto taxiStatusDto = MappingUtils.mapFromString(decryptedMessage, TaxiStatusDto.class);
-            log.info("transcription de encryptedPayload: {}", taxiStatusDto);
-            // Validar el token
-            String registeredToken = clientHandler.getTokenRegistry().get(taxiStatusDto.getTaxiId());
-            if (registeredToken == null || !registeredToken.equals(taxiStatusDto.getToken())) {
-                log.error("Invalid token for taxi {}. Received token: {}, Expected token: {}",
-                        taxiStatusDto.getTaxiId(), taxiStatusDto.getToken(), registeredToken);
-                throw new RuntimeException("Invalid token");
-            }
-            log.info("Token validated successfully for taxi {}", taxiStatusDto.getTaxiId());
-
-            // Actualizar la localización del taxi en el sistema
-            taxiService.updateTaxiLocationByIdentifier(taxiStatusDto);
-
-            int x = taxiStatusDto.getX();
-            int y = taxiStatusDto.getY();
-            Taxi taxi = taxiRepository.findTaxiByIdentifier(taxiStatusDto.getTaxiId());
-
-            switch (taxiStatusDto.getStatus()) {
-                case TaxiState.STOPPED -> cityMap.updatePosition(x, y, cityMap.getPosition(x, y).data(), CityMap.Color.RED);
-
-                case TaxiState.EN_ROUTE_TO_DESTINATION -> {
-                    Optional<CustomerTaxiAssignment> taxiAssignment = customerTaxiAssignmentRepository.findByIdTaxiId(taxi.getId());
-                    if (taxiAssignment.isPresent()) {
-                        Long customerId = taxiAssignment.get().getId().getCustomerId();
-                        Customer customer = customerRepository.findById(customerId).orElseThrow();
-                        customer.setX(x);
-                        customer.setY(y);
-                        customerRepository.save(customer);
-                        cityMap.updatePosition(x, y, taxiStatusDto.getTaxiId() + customer.getDestIdentifier(), CityMap.Color.GREEN);
-                    } else {
-                        log.error("Taxi assignment not found for taxi {}", taxi.getIdentifier());
-                    }
+            taxiStatusDto = MappingUtils.mapFromString(decryptedMessage, TaxiStatusDto.class);
+        }
+        log.info("transcription de encryptedPayload: {}", taxiStatusDto);
+        // Validar el token
+        String registeredToken = clientHandler.getTokenRegistry().get(taxiStatusDto.getTaxiId());
+        if (registeredToken == null || !registeredToken.equals(taxiStatusDto.getToken())) {
+            log.error("Invalid token for taxi {}. Received token: {}, Expected token: {}",
+                    taxiStatusDto.getTaxiId(), taxiStatusDto.getToken(), registeredToken);
+            throw new RuntimeException("Invalid token");
+        }
+        log.info("Token validated successfully for taxi {}", taxiStatusDto.getTaxiId());
+        clientHandler.recordActivity(taxiStatusDto.getTaxiId());
+        return taxiStatusDto;
+    }
+
+    /**
+     * Applies a validated taxi status update to the database, the map projection and the dispatch structures.
+     * When called inside a transaction, the map, the dispatch structures and the messages to taxis and customers
+     * are only updated once the database changes have been committed.
+     *
+     * @param taxiStatusDto the status update
+     */
+    private void applyTaxiStatus(TaxiStatusDto taxiStatusDto) {
+        // Actualizar la localización del taxi en el sistema
+        taxiService.updateTaxiLocationByIdentifier(taxiStatusDto);
+
+        String identifier = taxiStatusDto.getTaxiId();
+        int x = taxiStatusDto.getX();
+        int y = taxiStatusDto.getY();
+        afterCommit(() -> {
+            cityMapProjection.updateTaxi(identifier, x, y, taxiStatusDto.getStatus());
+            taxiSpatialIndex.updatePosition(identifier, x, y);
+        });
+        // Los mensajes de posición solo consultan la caché; la base de datos se lee en las transiciones de estado
+        TaxiRideCache.CachedTaxi cached = taxiRideCache.get(identifier);
+        if (cached == null) {
+            log.error("Taxi {} not found", identifier);
+            return;
+        }
+
+        switch (taxiStatusDto.getStatus()) {
+            case TaxiState.STOPPED -> log.info("Taxi {} stopped at [{}, {}]", identifier, x, y);
+
+            case TaxiState.EN_ROUTE_TO_DESTINATION -> {
+                TaxiRideCache.Ride ride = cached.ride();
+                if (ride != null) {
+                    positionWriteBehind.updateCustomer(ride.customerId(), x, y);
+                    afterCommit(() -> {
+                        cityMapProjection.updateCustomer(ride.customerIdentifier(), x, y);
+                        cityMapProjection.updateTaxiWithPassenger(identifier, x, y, ride.destination());
+                    });
+                } else {
+                    log.error("Taxi assignment not found for taxi {}", identifier);
                 }
-                case TaxiState.RETURNING_TO_BASE -> {
-                    if (taxi.getX() == 1 && taxi.getY() == 1) {
-                        taxi.setAvailable(true);
-                        taxi.setState(TaxiState.IDLE);
-                        taxi.setDestIdentifier(null);
+            }
+            case TaxiState.RETURNING_TO_BASE -> {
+                // Mientras vuelve, la posición ya la guarda la escritura diferida: solo se escribe al llegar a la base
+                if (x == 1 && y == 1 && cached.state() != TaxiState.IDLE) {
+                    Taxi taxi = loadTaxi(identifier, x, y);
+                    taxi.setAvailable(true);
+                    taxi.setState(TaxiState.IDLE);
+                    taxi.setDestIdentifier(null);
+                    taxiRepository.save(taxi);
+                    afterCommit(() -> {
                         log.info(clientHandler.getTokenRegistry().toString());
                         clientHandler.getTokenRegistry().remove(taxi.getIdentifier());
                         log.info(clientHandler.getTokenRegistry().toString());
-                    }
-                    taxiRepository.save(taxi);
+                        taxiRideCache.release(identifier);
+                        cityMapProjection.updateTaxi(taxi);
+                        taxiSpatialIndex.add(taxi.getIdentifier(), taxi.getX(), taxi.getY());
+                        taxiAvailabilityRegistry.markAvailable(taxi.getIdentifier());
+                        servePendingRequests();
+                    });
                 }
-                case TaxiState.DESTINATION_REACHED -> {
-                    taxi.setState(TaxiState.RETURNING_TO_BASE);
-                    taxiRepository.save(taxi);
-                    CustomerStatusDto customerStatusDto = CustomerStatusDto.builder()
-                                                                  .customerX(-1)
-                                                                  .customerY(-1)
-                                                                  .x(taxi.getX())
-                                                                  .y(taxi.getY())
-                                                                  .taxiId(taxi.getIdentifier())
-                                                                  .status(taxi.getState())
-                                                                  .destX(-1)
-                                                                  .destY(-1)
-                                                                  .build();
+            }
+            case TaxiState.DESTINATION_REACHED -> {
+                Taxi taxi = loadTaxi(identifier, x, y);
+                taxi.setState(TaxiState.RETURNING_TO_BASE);
+                taxiRepository.save(taxi);
+                CustomerStatusDto customerStatusDto = CustomerStatusDto.builder()
+                                                              .customerX(-1)
+                                                              .customerY(-1)
+                                                              .x(taxi.getX())
+                                                              .y(taxi.getY())
+                                                              .taxiId(taxi.getIdentifier())
+                                                              .status(taxi.getState())
+                                                              .destX(-1)
+                                                              .destY(-1)
+                                                              .build();
+                TaxiRideCache.Ride ride = cached.ride();
+                Customer customer = ride != null ? customerRepository.findById(ride.customerId()).orElseThrow() : null;
+                afterCommit(() -> {
+                    taxiRideCache.setState(identifier, TaxiState.RETURNING_TO_BASE);
+                    cityMapProjection.updateTaxi(taxi);
                     publishToTaxi(taxi, customerStatusDto);
-
-                    Optional<CustomerTaxiAssignment> taxiAssignment = customerTaxiAssignmentRepository.findByIdTaxiId(taxi.getId());
-                    if (taxiAssignment.isPresent()) {
-                        Long customerId = taxiAssignment.get().getId().getCustomerId();
-                        Customer customer = customerRepository.findById(customerId).orElseThrow();
+                    if (customer != null) {
                         publishToClient(customer, "END");
                     } else {
-                        log.error("Taxi assignment not found for taxi {}", taxi.getIdentifier());
+                        log.error("Taxi assignment not found for taxi {}", identifier);
                     }
-                }
-                case TaxiState.PICKUP -> {
-                    taxi.setState(TaxiState.EN_ROUTE_TO_DESTINATION);
-                    taxiRepository.save(taxi);
-                }
+                });
+            }
+            case TaxiState.PICKUP -> {
+                Taxi taxi = loadTaxi(identifier, x, y);
+                taxi.setState(TaxiState.EN_ROUTE_TO_DESTINATION);
+                taxiRepository.save(taxi);
+                afterCommit(() -> {
+                    taxiRideCache.setState(identifier, TaxiState.EN_ROUTE_TO_DESTINATION);
+                    cityMapProjection.updateTaxi(taxi);
+                });
             }
-
-            log.info("Taxi {} location updated to [{}, {}]",
-                    taxiStatusDto.getTaxiId(), taxiStatusDto.getX(), taxiStatusDto.getY());
-
-        } catch (IllegalArgumentException e) {
-            log.error("Invalid message format: {}", e.getMessage());
-        } catch (Exception e) {
-            log.error("Error processing taxi directions: {}", e.getMessage());
         }
-    }
-
 
+        log.info("Taxi {} location updated to [{}, {}]", identifier, x, y);
+    }
 
-//////////////////////////////////////////////////////////////////////////////////////////////////////
     /**
-     * Populates the city map with initial data.
+     * Runs an action once the current transaction commits, or straight away if there is no transaction.
      *
-     * @return the populated city map
+     * @param action the action to run
      */
-    private CityMap populateMap() {
-        CityMap map = new CityMap();
-
-        // Primero añadimos las localizaciones (monumentos) al mapa
-        List<Location> locations = locationRepository.findAll();
-        for (Location loc : locations) {
-            int x = loc.getX();
-            int y = loc.getY();
-            String identifier = loc.getIdentifier();
-
-            // Obtenemos el valor actual de la celda y lo concatenamos con el nuevo identificador
-            String currentContent = map.getPosition(x, y).data();  // Asumiendo que el método getPositionContent existe
-            String updatedContent = currentContent.isEmpty() ? identifier : currentContent + ", " + identifier;
-
-            // Actualizamos el mapa en la posición (x, y) con el contenido concatenado
-            map.updatePosition(x, y, updatedContent, CityMap.Color.YELLOW);
-        }
-
-        // Luego añadimos los clientes al mapa
-        List<Customer> customers = customerRepository.findAll();
-        for (Customer customer : customers) {
-            int x = customer.getX();
-            int y = customer.getY();
-            String identifier = customer.getIdentifier();
-
-            // Concatenamos el contenido actual con el identificador del cliente
-            String currentContent =  map.getPosition(x, y).data();
-            String updatedContent = currentContent.isEmpty() ? identifier : currentContent + ", " + identifier;
-
-            // Actualizamos el mapa en la posición (x, y) con el contenido concatenado
-            map.updatePosition(x, y, updatedContent, CityMap.Color.BLUE);
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
         }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
 
-        // Finalmente añadimos los taxis al mapa
-        List<Taxi> taxis = taxiRepository.findAll();
-        for (Taxi taxi : taxis) {
-            int x = taxi.getX();
-            int y = taxi.getY();
-            String identifier = taxi.getIdentifier();
-
-            // Concatenamos el contenido actual con el identificador del taxi
-            String currentContent = map.getPosition(x, y).data();
-            String updatedContent = currentContent.isEmpty() ? identifier : currentContent + ", " + identifier;
+    /**
+     * Loads a taxi for a state transition, with the position of the message being applied.
+     *
+     * @param identifier the identifier of the taxi
+     * @param x          the reported x-coordinate
+     * @param y          the reported y-coordinate
+     * @return the taxi entity
+     */
+    private Taxi loadTaxi(String identifier, int x, int y) {
+        Taxi taxi = taxiRepository.findTaxiByIdentifier(identifier);
+        // La posición en base de datos puede ir por detrás (escritura diferida): se usa la del mensaje
+        taxi.setX(x);
+        taxi.setY(y);
+        return taxi;
+    }
 
-            // Dependiendo del estado del taxi, establecemos el color apropiado
-            CityMap.Color color = (taxi.getState() == TaxiState.STOPPED) ? CityMap.Color.RED : CityMap.Color.GREEN;
-            map.updatePosition(x, y, updatedContent, color);
-        }
+    /**
+     * A service request waiting for the next batch.
+     *
+     * @param customer    the customer requesting the taxi
+     * @param destination the identifier of the destination
+     * @param message     the original request, for logging
+     */
+    private record BatchRequest(Customer customer, String destination, String message) {
+    }
 
-        return map;
+    /**
+     * An idle taxi ranked by the cost of its route to a customer.
+     *
+     * @param identifier the identifier of the taxi
+     * @param cost       the cost of the route from the taxi to the customer
+     */
+    private record RankedTaxi(String identifier, int cost) {
     }
-}
\ No newline at end of file
+}
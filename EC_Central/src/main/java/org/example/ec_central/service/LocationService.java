@@ -22,6 +22,7 @@ import java.util.Objects;
 public class LocationService {
 
     private final LocationRepository locationRepository;
+    private final CityMapProjection cityMapProjection;
     /**
      * Path to the locations file, injected from application properties.
      */
@@ -32,10 +33,12 @@ public class LocationService {
      * Constructor for LocationService.
      *
      * @param locationRepository the repository for managing Location entities
+     * @param cityMapProjection  the in-memory city map projection to keep in sync
      */
     @Autowired
-    public LocationService(LocationRepository locationRepository) {
+    public LocationService(LocationRepository locationRepository, CityMapProjection cityMapProjection) {
         this.locationRepository = locationRepository;
+        this.cityMapProjection = cityMapProjection;
     }
 
     /**
@@ -48,6 +51,7 @@ public class LocationService {
         log.info("Loading locations from file: {}", filePath);
         log.info("Deleting all locations from the database");
         locationRepository.deleteAll();
+        cityMapProjection.clearLocations();
         log.info("All locations deleted from the database");
         try (BufferedReader br = new BufferedReader(new InputStreamReader(
                 Objects.requireNonNull(getClass().getClassLoader().getResourceAsStream(filePath))))) {
@@ -64,7 +68,7 @@ public class LocationService {
                     location.setX(x);
                     location.setY(y);
 
-                    locationRepository.save(location);
+                    cityMapProjection.updateLocation(locationRepository.save(location));
                     log.debug("Saved location: {} at {},{}", identifier, x, y);
                 }
             }
@@ -2,12 +2,27 @@ package org.example.ec_central.service;
 
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 @Component
 public class MessageHandler {
     // Definición de constantes para los mensajes de control
     public static final String ACK = "ACK";
     public static final String NACK = "NACK";
     public static final String ENQ = "ENQ";
+    public static final String KEY = "KEY";
+    public static final String REKEY = "REKEY";
+    public static final String KEY_ACK = "KEYACK";
+    public static final String HEARTBEAT = "HB";
+
+    // Capacidades que el taxi puede anunciar al autenticarse
+    public static final String CAPABILITY_SESSION_KEY = "SK";
+    public static final String CAPABILITY_HEARTBEAT = "HB";
+    public static final String CAPABILITY_BINARY = "BIN";
+    public static final String CAPABILITY_BINARY_DTO = "BDTO";
 
     private static final char STX = 0x02; // Start of Text
     private static final char ETX = 0x03; // End of Text
@@ -116,11 +131,26 @@ public class MessageHandler {
         if (isValidMessage(message)) {
             String data = extractData(message);
             String[] parts = data.split("#");
-            return parts.length == 3 && "AUTH".equals(parts[0]) && "token123".equals(parts[2]);
+            return (parts.length == 3 || parts.length == 4) && "AUTH".equals(parts[0]) && "token123".equals(parts[2]);
         }
         return false;
     }
 
+    /**
+     * Extrae las capacidades anunciadas por el taxi en el mensaje de autenticación (AUTH#id#token#CAP1,CAP2).
+     * Los taxis antiguos no envían este campo.
+     *
+     * @param message El mensaje de autenticación completo.
+     * @return El conjunto de capacidades, vacío si no se anunció ninguna.
+     */
+    public Set<String> extractCapabilities(String message) {
+        String[] parts = extractData(message).split(String.valueOf(FIELD_SEPARATOR));
+        if (parts.length < 4 || parts[3].isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(Arrays.asList(parts[3].split(",")));
+    }
+
     public String extractData(String message) {
         return message.substring(1, message.indexOf(ETX));
     }
@@ -142,6 +172,21 @@ public class MessageHandler {
         return null;
     }
 
+    /**
+     * Construye un mensaje de "ACK" con un token y las capacidades aceptadas (ACK#token#CAP1,CAP2).
+     * Sin capacidades el mensaje es idéntico al de los taxis antiguos.
+     *
+     * @param token        El token que se debe incluir en el mensaje ACK.
+     * @param capabilities Las capacidades que Central acepta usar con este taxi.
+     * @return El mensaje formateado con STX, ETX y LRC.
+     */
+    public String buildAckWithToken(String token, Collection<String> capabilities) {
+        if (capabilities.isEmpty()) {
+            return buildAckWithToken(token);
+        }
+        return buildRequest(ACK, token, String.join(",", capabilities));
+    }
+
     /**
      * Construye un mensaje de "ACK" con un token.
      *
@@ -0,0 +1,213 @@
+package org.example.ec_central.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ec_central.model.entity.Customer;
+import org.example.ec_central.utils.SimulationClock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * Service class for holding the service requests that could not be served because no taxi was free.
+ * Requests wait until a taxi goes back to IDLE or their deadline passes. They are served by wait class first,
+ * priority customers (those whose identifier starts with one of dispatch.pending.priority-prefixes) before the rest,
+ * and then by deadline; each class has its own maximum wait.
+ * The queue is bounded: once full, new requests are rejected straight away.
+ * Taxis are assigned outside the queue's lock, so offers and expiry are never held up by the database or Kafka.
+ */
+@Service
+@Slf4j
+public class PendingRequestQueue {
+
+    /**
+     * Wait class of the priority customers; lower classes are served first.
+     */
+    public static final int PRIORITY = 0;
+
+    /**
+     * Wait class of the rest of the customers.
+     */
+    public static final int NORMAL = 1;
+
+    /**
+     * Maximum number of waiting requests, injected from application properties.
+     */
+    private final int capacity;
+
+    /**
+     * How long a request may wait for a taxi before it is rejected, injected from application properties.
+     */
+    private final Duration maxWait;
+
+    /**
+     * How long a request of a priority customer may wait, injected from application properties.
+     */
+    private final Duration priorityMaxWait;
+
+    /**
+     * Identifier prefixes of the priority customers, injected from application properties.
+     */
+    private final List<String> priorityPrefixes;
+
+    private final PriorityQueue<PendingRequest> queue =
+            new PriorityQueue<>(Comparator.comparingInt(PendingRequest::priority)
+                                          .thenComparingLong(PendingRequest::deadline)
+                                          .thenComparingLong(PendingRequest::enqueuedAt));
+
+    private final Timer servedWait;
+    private final Timer expiredWait;
+    private final SimulationClock clock;
+
+    /**
+     * Constructs a new PendingRequestQueue and registers its metrics.
+     *
+     * @param meterRegistry the registry where queue length and wait times are published
+     * @param capacity      the maximum number of waiting requests
+     * @param maxWaitMs          how long a request may wait, in simulated milliseconds
+     * @param priorityPrefixes   comma-separated identifier prefixes of the priority customers, or empty
+     * @param priorityMaxWaitMs  how long a request of a priority customer may wait, in simulated milliseconds
+     * @param clock              the clock that measures the waits
+     */
+    public PendingRequestQueue(MeterRegistry meterRegistry,
+                               @Value("${dispatch.pending.capacity:100}") int capacity,
+                               @Value("${dispatch.pending.max-wait-ms:30000}") long maxWaitMs,
+                               @Value("${dispatch.pending.priority-prefixes:}") String priorityPrefixes,
+                               @Value("${dispatch.pending.priority-max-wait-ms:${dispatch.pending.max-wait-ms:30000}}") long priorityMaxWaitMs,
+                               SimulationClock clock) {
+        this.capacity = capacity;
+        this.clock = clock;
+        this.maxWait = Duration.ofMillis(maxWaitMs);
+        this.priorityMaxWait = Duration.ofMillis(priorityMaxWaitMs);
+        this.priorityPrefixes = Arrays.stream(priorityPrefixes.split(","))
+                                      .map(String::trim)
+                                      .filter(prefix -> !prefix.isEmpty())
+                                      .toList();
+        Gauge.builder("dispatch.pending.size", this, PendingRequestQueue::size)
+             .description("Service requests waiting for a free taxi")
+             .register(meterRegistry);
+        this.servedWait = Timer.builder("dispatch.pending.wait")
+                               .description("Time a service request waited for a free taxi")
+                               .tag("outcome", "served")
+                               .register(meterRegistry);
+        this.expiredWait = Timer.builder("dispatch.pending.wait")
+                                .description("Time a service request waited for a free taxi")
+                                .tag("outcome", "expired")
+                                .register(meterRegistry);
+    }
+
+    /**
+     * Adds a request to the queue.
+     *
+     * @param customer    the customer requesting the taxi
+     * @param destination the identifier of the destination
+     * @param message     the original request, for logging
+     * @return true if the request is waiting, false if the queue is full
+     */
+    public synchronized boolean offer(Customer customer, String destination, String message) {
+        if (queue.size() >= capacity) {
+            log.warn("Pending request queue full ({}), rejecting {}", capacity, message);
+            return false;
+        }
+        long now = clock.nanoTime();
+        int priority = priorityOf(customer);
+        Duration wait = priority == PRIORITY ? priorityMaxWait : maxWait;
+        queue.add(new PendingRequest(customer, destination, message, priority, now, now + wait.toNanos()));
+        log.info("Request queued until a taxi is free: {} ({} waiting)", message, queue.size());
+        return true;
+    }
+
+    private int priorityOf(Customer customer) {
+        for (String prefix : priorityPrefixes) {
+            if (customer.getIdentifier().startsWith(prefix)) {
+                return PRIORITY;
+            }
+        }
+        return NORMAL;
+    }
+
+    /**
+     * Serves waiting requests in order while the given assignment succeeds.
+     * Stops at the first request that could not get a taxi, which goes back to its place, so later requests do not
+     * overtake it. The head is taken out of the queue while its taxi is assigned, so that the assignment runs
+     * without the lock and two callers never serve the same request.
+     *
+     * @param assigner tries to assign a taxi to a request and tells whether it did
+     * @return the requests that got a taxi
+     */
+    public List<PendingRequest> serve(Predicate<PendingRequest> assigner) {
+        List<PendingRequest> served = new ArrayList<>();
+        while (true) {
+            PendingRequest head;
+            synchronized (this) {
+                head = queue.poll();
+            }
+            if (head == null) {
+                break;
+            }
+            // La asignación (base de datos y Kafka) se hace fuera del cerrojo
+            if (!assigner.test(head)) {
+                synchronized (this) {
+                    queue.add(head);
+                }
+                break;
+            }
+            servedWait.record(Duration.ofNanos(clock.nanoTime() - head.enqueuedAt()));
+            served.add(head);
+        }
+        return served;
+    }
+
+    /**
+     * Removes the requests whose deadline has passed.
+     *
+     * @return the expired requests
+     */
+    public synchronized List<PendingRequest> pollExpired() {
+        List<PendingRequest> expired = new ArrayList<>();
+        long now = clock.nanoTime();
+        // El orden es por clase antes que por plazo: hay que recorrer toda la cola, que está acotada
+        for (Iterator<PendingRequest> it = queue.iterator(); it.hasNext(); ) {
+            PendingRequest request = it.next();
+            if (request.deadline() - now <= 0) {
+                it.remove();
+                expiredWait.record(Duration.ofNanos(now - request.enqueuedAt()));
+                expired.add(request);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Returns the number of waiting requests.
+     *
+     * @return the queue length
+     */
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    /**
+     * A service request waiting for a taxi.
+     *
+     * @param customer    the customer requesting the taxi
+     * @param destination the identifier of the destination
+     * @param message     the original request, for logging
+     * @param priority    the wait class of the request, {@link #PRIORITY} or {@link #NORMAL}
+     * @param enqueuedAt  when the request was queued, from {@link SimulationClock#nanoTime()}
+     * @param deadline    when the request expires, from {@link SimulationClock#nanoTime()}
+     */
+    public record PendingRequest(Customer customer, String destination, String message, int priority,
+                                 long enqueuedAt, long deadline) {
+    }
+}
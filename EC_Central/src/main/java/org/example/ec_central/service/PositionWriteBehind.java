@@ -0,0 +1,196 @@
+package org.example.ec_central.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ec_central.model.TaxiState;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Service class for persisting taxi and customer positions behind the message flow.
+ * Position updates are merged in memory per taxi and per customer, so only the last one is written,
+ * and are flushed in JDBC batches every interval or as soon as enough of them are pending.
+ * A change of taxi state is not buffered: it is written right away together with the position, and only counts as
+ * reported once the transaction it was written in commits.
+ * No lock is held while writing, so a listener waiting for a pooled connection never blocks the flusher.
+ */
+@Service
+@Slf4j
+public class PositionWriteBehind {
+
+    private static final String UPDATE_TAXI_POSITION = "UPDATE taxi SET x = ?, y = ? WHERE identifier = ?";
+    private static final String UPDATE_TAXI_STATE = "UPDATE taxi SET x = ?, y = ?, state = ? WHERE identifier = ?";
+    private static final String UPDATE_CUSTOMER_POSITION = "UPDATE customer SET x = ?, y = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Maximum time a position stays only in memory, injected from application properties.
+     */
+    @Value("${positions.write-behind.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    /**
+     * Number of pending positions that triggers an early flush, injected from application properties.
+     */
+    @Value("${positions.write-behind.max-pending:500}")
+    private int maxPending;
+
+    private final Map<String, Position> pendingTaxis = new ConcurrentHashMap<>();
+    private final Map<Long, Position> pendingCustomers = new ConcurrentHashMap<>();
+    private final Map<String, TaxiState> reportedStates = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private ScheduledExecutorService flusher;
+
+    /**
+     * Constructs a new PositionWriteBehind.
+     *
+     * @param jdbcTemplate the template used for the batch updates
+     */
+    public PositionWriteBehind(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Starts the periodic flush.
+     */
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "position-write-behind"));
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic flush and writes whatever is still pending.
+     */
+    @PreDestroy
+    public void stop() {
+        flusher.shutdown();
+        flush();
+    }
+
+    /**
+     * Records the position and state reported by a taxi.
+     * If the state is the same the taxi reported last time, only the position is buffered;
+     * otherwise position and state are written immediately.
+     *
+     * @param identifier the identifier of the taxi
+     * @param x          the x-coordinate of the taxi
+     * @param y          the y-coordinate of the taxi
+     * @param state      the state reported by the taxi
+     */
+    public void updateTaxi(String identifier, int x, int y, TaxiState state) {
+        Position position = new Position(x, y);
+        if (state != null && reportedStates.get(identifier) == state) {
+            pendingTaxis.put(identifier, position);
+            flushIfFull();
+            return;
+        }
+        // La posición se deja también pendiente: si un flush en curso escribe una posición anterior después de
+        // esta escritura, el siguiente flush la corrige. Una posición más nueva sustituye a esta y no se pierde.
+        pendingTaxis.put(identifier, position);
+        jdbcTemplate.update(UPDATE_TAXI_STATE, x, y, state == null ? null : state.name(), identifier);
+        if (state != null) {
+            afterCommit(() -> reportedStates.put(identifier, state));
+        }
+        flushIfFull();
+    }
+
+    /**
+     * Records the position of a customer being carried by a taxi.
+     *
+     * @param customerId the database id of the customer
+     * @param x          the x-coordinate of the customer
+     * @param y          the y-coordinate of the customer
+     */
+    public void updateCustomer(Long customerId, int x, int y) {
+        pendingCustomers.put(customerId, new Position(x, y));
+        flushIfFull();
+    }
+
+    /**
+     * Writes all pending positions in one batch per table.
+     */
+    public void flush() {
+        flushScheduled.set(false);
+        try {
+            List<Object[]> taxiArgs = new ArrayList<>(pendingTaxis.size());
+            for (Map.Entry<String, Position> entry : pendingTaxis.entrySet()) {
+                // remove(key, value) solo quita la entrada si no llegó una posición más nueva mientras tanto
+                if (pendingTaxis.remove(entry.getKey(), entry.getValue())) {
+                    taxiArgs.add(new Object[]{entry.getValue().x(), entry.getValue().y(), entry.getKey()});
+                }
+            }
+            List<Object[]> customerArgs = new ArrayList<>(pendingCustomers.size());
+            for (Map.Entry<Long, Position> entry : pendingCustomers.entrySet()) {
+                if (pendingCustomers.remove(entry.getKey(), entry.getValue())) {
+                    customerArgs.add(new Object[]{entry.getValue().x(), entry.getValue().y(), entry.getKey()});
+                }
+            }
+            if (!taxiArgs.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE_TAXI_POSITION, taxiArgs);
+            }
+            if (!customerArgs.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE_CUSTOMER_POSITION, customerArgs);
+            }
+            if (!taxiArgs.isEmpty() || !customerArgs.isEmpty()) {
+                log.debug("Flushed {} taxi and {} customer positions", taxiArgs.size(), customerArgs.size());
+            }
+        } catch (Exception e) {
+            log.error("Error flushing positions: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the number of positions waiting to be written.
+     *
+     * @return the number of pending taxi and customer positions
+     */
+    public int pendingCount() {
+        return pendingTaxis.size() + pendingCustomers.size();
+    }
+
+    /**
+     * Runs an action once the current transaction commits, or straight away if there is no transaction.
+     * If the transaction rolls back, the state is not recorded and the next update writes it again.
+     *
+     * @param action the action to run
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void flushIfFull() {
+        if (pendingCount() >= maxPending && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(this::flush);
+        }
+    }
+
+    /**
+     * A buffered position.
+     */
+    private record Position(int x, int y) {
+    }
+}
@@ -0,0 +1,158 @@
+package org.example.ec_central.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ec_central.model.CityMap;
+import org.example.ec_central.model.GridGeometry;
+import org.example.ec_central.model.GridRouter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Service class for the cost of driving between two cells, read by dispatch to rank the taxis by how long they
+ * really take to reach a customer.
+ * Costs follow the same blocked and costly cells EC_DE routes around. Dispatch asks for the cost of many taxis to the
+ * same customer, so instead of one A* search per taxi, one backward search from the customer's cell gives the cost
+ * from every cell, and the last fields computed are kept in an LRU keyed by that cell. The grid is read once from the
+ * configuration, so cached fields never go stale.
+ * Maps bigger than city.map.routing.max-size are not routed, and the cost is the straight-line distance.
+ */
+@Service
+@Slf4j
+public class RoutePlanner {
+
+    /**
+     * Cost of a target that cannot be reached.
+     */
+    public static final int UNREACHABLE = GridRouter.UNREACHABLE;
+
+    /**
+     * The size of the city map grid, injected from application properties.
+     */
+    @Value("${city.map.size:" + CityMap.DEFAULT_SIZE + "}")
+    private int mapSize;
+
+    /**
+     * Whether the city map wraps around at the edges, injected from application properties.
+     */
+    @Value("${city.map.wrap-around:false}")
+    private boolean wrapAround;
+
+    /**
+     * The blocked cells, as "x,y;x,y", injected from application properties.
+     */
+    @Value("${city.map.blocked-cells:}")
+    private String blockedCells;
+
+    /**
+     * The cells that cost more than 1 to cross, as "x,y=cost;x,y=cost", injected from application properties.
+     */
+    @Value("${city.map.cell-costs:}")
+    private String cellCosts;
+
+    /**
+     * Number of target cells whose cost field is cached, injected from application properties.
+     */
+    @Value("${city.map.route-cache.targets:32}")
+    private int routeCacheTargets;
+
+    /**
+     * Largest city map routed with A*, injected from application properties.
+     */
+    @Value("${city.map.routing.max-size:1000}")
+    private int routingMaxSize;
+
+    private GridGeometry geometry;
+    private GridRouter router;
+    private Map<Integer, int[]> costFields;
+    private long hits;
+    private long misses;
+
+    /**
+     * Builds the router from the city map configuration.
+     */
+    @PostConstruct
+    public void configureRouter() {
+        geometry = new GridGeometry(mapSize, wrapAround);
+        if (mapSize > routingMaxSize) {
+            log.warn("City map of size {} is bigger than city.map.routing.max-size {}, dispatch ranks taxis by "
+                    + "straight-line distance", mapSize, routingMaxSize);
+            return;
+        }
+        router = GridRouter.fromSpec(geometry, blockedCells, cellCosts);
+        costFields = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+                return size() > routeCacheTargets;
+            }
+        };
+    }
+
+    /**
+     * Returns the cost of the cheapest route between two cells.
+     *
+     * @param fromX the x-coordinate of the start
+     * @param fromY the y-coordinate of the start
+     * @param toX   the x-coordinate of the target
+     * @param toY   the y-coordinate of the target
+     * @return the cost of the route, or {@link #UNREACHABLE} if the target cannot be reached
+     */
+    public int cost(int fromX, int fromY, int toX, int toY) {
+        if (router == null) {
+            return geometry.distance(fromX, fromY, toX, toY);
+        }
+        if (!geometry.contains(fromX, fromY) || !router.isPassable(toX, toY)) {
+            return UNREACHABLE;
+        }
+        int[] costTo = costsTo(geometry.normalize(toY) * mapSize + geometry.normalize(toX));
+        return costTo[geometry.normalize(fromY) * mapSize + geometry.normalize(fromX)];
+    }
+
+    /**
+     * Returns a lower bound of the cost of a route, given the number of steps between both ends.
+     *
+     * @param distance the number of steps between both ends
+     * @return the least cost a route of that many steps can have
+     */
+    public long lowerBound(int distance) {
+        return (long) distance * (router == null ? 1 : router.getMinCost());
+    }
+
+    /**
+     * Returns the number of cost queries answered from a cached field.
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of cost queries that needed a search.
+     *
+     * @return the number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private int[] costsTo(int target) {
+        synchronized (this) {
+            int[] cached = costFields.get(target);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+        // La búsqueda se hace fuera del cerrojo para no bloquear al resto de consultas
+        int[] costTo = router.costsTo(target % mapSize, target / mapSize);
+        synchronized (this) {
+            costFields.put(target, costTo);
+        }
+        return costTo;
+    }
+}
@@ -0,0 +1,94 @@
+package org.example.ec_central.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ec_central.model.entity.Taxi;
+import org.example.ec_central.repository.TaxiRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-memory record of which taxis can take a new service.
+ * A taxi is claimed with a compare-and-set on its own flag, so several dispatch threads can
+ * race for the same taxi and exactly one of them wins without any lock or database round trip.
+ * The database is only updated by the winner, after the claim succeeded.
+ */
+@Service
+@Slf4j
+public class TaxiAvailabilityRegistry {
+
+    private final TaxiRepository taxiRepository;
+    private final Map<String, AtomicBoolean> availability = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new TaxiAvailabilityRegistry with the specified repository.
+     *
+     * @param taxiRepository the repository used to load the available taxis on startup
+     */
+    public TaxiAvailabilityRegistry(TaxiRepository taxiRepository) {
+        this.taxiRepository = taxiRepository;
+    }
+
+    /**
+     * Loads the available taxis from the database on startup.
+     */
+    @PostConstruct
+    public void loadAvailableTaxis() {
+        for (Taxi taxi : taxiRepository.findAllByAvailable(true)) {
+            markAvailable(taxi.getIdentifier());
+        }
+        log.info("Availability registry loaded with {} available taxis", availability.size());
+    }
+
+    /**
+     * Tries to claim a taxi for a service.
+     *
+     * @param identifier the identifier of the taxi
+     * @return true if the taxi was available and now belongs to the caller, false if someone else has it
+     */
+    public boolean tryClaim(String identifier) {
+        AtomicBoolean available = availability.get(identifier);
+        return available != null && available.compareAndSet(true, false);
+    }
+
+    /**
+     * Gives back a claimed taxi, for example when the assignment could not be stored.
+     *
+     * @param identifier the identifier of the taxi
+     */
+    public void release(String identifier) {
+        markAvailable(identifier);
+    }
+
+    /**
+     * Marks a taxi as available for new services.
+     *
+     * @param identifier the identifier of the taxi
+     */
+    public void markAvailable(String identifier) {
+        availability.computeIfAbsent(identifier, id -> new AtomicBoolean()).set(true);
+    }
+
+    /**
+     * Forgets a taxi that no longer exists.
+     *
+     * @param identifier the identifier of the taxi
+     */
+    public void remove(String identifier) {
+        availability.remove(identifier);
+    }
+
+    /**
+     * Checks whether a taxi can currently be claimed.
+     *
+     * @param identifier the identifier of the taxi
+     * @return true if the taxi is available
+     */
+    public boolean isAvailable(String identifier) {
+        AtomicBoolean available = availability.get(identifier);
+        return available != null && available.get();
+    }
+}
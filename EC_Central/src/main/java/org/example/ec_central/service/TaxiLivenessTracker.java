@@ -0,0 +1,186 @@
+package org.example.ec_central.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ec_central.utils.SimulationClock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Service class for tracking when each taxi was last heard from.
+ * Taxis that advertise heartbeats are scheduled on a timing wheel: each slot holds the taxis whose
+ * deadline falls in that tick, so a sweep only looks at the taxis that may have expired instead of the whole fleet.
+ * A taxi that is touched again simply moves to a later slot; when its old slot comes up it is skipped.
+ */
+@Service
+@Slf4j
+public class TaxiLivenessTracker {
+
+    /**
+     * Time without news after which a taxi is considered dead, injected from application properties.
+     */
+    @Value("${taxi.liveness.timeout-ms:15000}")
+    private long timeoutMs;
+
+    /**
+     * Resolution of the timing wheel, injected from application properties.
+     */
+    @Value("${taxi.liveness.tick-ms:1000}")
+    private long tickMs;
+
+    private final SimulationClock clock;
+    private final Map<String, Long> lastSeen = new ConcurrentHashMap<>();
+    private final Map<String, Long> scheduledTick = new ConcurrentHashMap<>();
+    private Set<String>[] wheel;
+    private long currentTick;
+    private volatile Consumer<String> evictionListener = taxiId -> { };
+    private ScheduledExecutorService sweeper;
+
+    /**
+     * Constructs a new TaxiLivenessTracker.
+     *
+     * @param clock the clock that measures the time without news, so that heartbeats and timeouts scale together
+     */
+    public TaxiLivenessTracker(SimulationClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Builds the wheel and starts the periodic sweep.
+     */
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    public void start() {
+        int slots = (int) (timeoutMs / tickMs) + 2;
+        wheel = new Set[slots];
+        for (int i = 0; i < slots; i++) {
+            wheel[i] = ConcurrentHashMap.newKeySet();
+        }
+        currentTick = tickOf(clock.nanoTime());
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "taxi-liveness-sweeper"));
+        clock.scheduleAtFixedRate(sweeper, this::sweep, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the sweep.
+     */
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Sets the callback run for every taxi that is evicted for not sending heartbeats.
+     *
+     * @param evictionListener the callback, receiving the identifier of the dead taxi
+     */
+    public void setEvictionListener(Consumer<String> evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Records that a taxi has just been heard from and pushes back its deadline.
+     *
+     * @param taxiId the identifier of the taxi
+     */
+    public void touch(String taxiId) {
+        long now = clock.nanoTime();
+        lastSeen.put(taxiId, now);
+        long deadlineTick = tickOf(now + TimeUnit.MILLISECONDS.toNanos(timeoutMs)) + 1;
+        Long previous = scheduledTick.put(taxiId, deadlineTick);
+        if (previous == null || previous != deadlineTick) {
+            wheel[slotOf(deadlineTick)].add(taxiId);
+        }
+    }
+
+    /**
+     * Checks whether a taxi is tracked, that is, whether it sends heartbeats.
+     *
+     * @param taxiId the identifier of the taxi
+     * @return true if the taxi has a last-seen timestamp
+     */
+    public boolean isTracked(String taxiId) {
+        return lastSeen.containsKey(taxiId);
+    }
+
+    /**
+     * Checks whether a taxi has been heard from within the timeout.
+     *
+     * @param taxiId the identifier of the taxi
+     * @return true if the taxi is fresh
+     */
+    public boolean isAlive(String taxiId) {
+        Long seen = lastSeen.get(taxiId);
+        return seen != null && clock.nanoTime() - seen < TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    }
+
+    /**
+     * Returns how long ago a taxi was last heard from.
+     *
+     * @param taxiId the identifier of the taxi
+     * @return the age in milliseconds, or -1 if the taxi is not tracked
+     */
+    public long getLastSeenAgeMs(String taxiId) {
+        Long seen = lastSeen.get(taxiId);
+        return seen == null ? -1 : TimeUnit.NANOSECONDS.toMillis(clock.nanoTime() - seen);
+    }
+
+    /**
+     * Stops tracking a taxi, for example when its connection is closed.
+     *
+     * @param taxiId the identifier of the taxi
+     */
+    public void remove(String taxiId) {
+        lastSeen.remove(taxiId);
+        scheduledTick.remove(taxiId);
+    }
+
+    /**
+     * Advances the wheel up to the current tick and evicts the taxis whose deadline has passed.
+     */
+    private void sweep() {
+        try {
+            long nowTick = tickOf(clock.nanoTime());
+            while (currentTick <= nowTick) {
+                Set<String> slot = wheel[slotOf(currentTick)];
+                for (String taxiId : slot) {
+                    Long deadlineTick = scheduledTick.get(taxiId);
+                    if (deadlineTick == null) {
+                        // Ya no se sigue (desconectado)
+                        slot.remove(taxiId);
+                    } else if (deadlineTick <= currentTick) {
+                        slot.remove(taxiId);
+                        if (scheduledTick.remove(taxiId, deadlineTick)) {
+                            lastSeen.remove(taxiId);
+                            log.warn("Taxi {} missed its heartbeats, evicting it", taxiId);
+                            evictionListener.accept(taxiId);
+                        }
+                    } else if (slotOf(deadlineTick) != slotOf(currentTick)) {
+                        // Se renovó y ya está en una ranura posterior
+                        slot.remove(taxiId);
+                    }
+                }
+                currentTick++;
+            }
+        } catch (Exception e) {
+            log.error("Error sweeping taxi liveness: {}", e.getMessage(), e);
+        }
+    }
+
+    private long tickOf(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos) / tickMs;
+    }
+
+    private int slotOf(long tick) {
+        return (int) Math.floorMod(tick, (long) wheel.length);
+    }
+}
@@ -0,0 +1,143 @@
+package org.example.ec_central.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.ec_central.model.TaxiState;
+import org.example.ec_central.model.entity.Customer;
+import org.example.ec_central.model.entity.CustomerTaxiAssignment;
+import org.example.ec_central.model.entity.Taxi;
+import org.example.ec_central.repository.CustomerRepository;
+import org.example.ec_central.repository.CustomerTaxiAssignmentRepository;
+import org.example.ec_central.repository.TaxiRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of what the status updates of a taxi need from the database: its id, the last state Central
+ * recorded for it and the customer it is carrying, if any.
+ * A taxi is read from the database the first time one of its updates arrives; afterwards the cache is kept in
+ * step by the assignments and state transitions made by Central, so position updates need no query at all.
+ */
+@Service
+@Slf4j
+public class TaxiRideCache {
+
+    private final TaxiRepository taxiRepository;
+    private final CustomerRepository customerRepository;
+    private final CustomerTaxiAssignmentRepository customerTaxiAssignmentRepository;
+    private final Map<String, CachedTaxi> taxis = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new TaxiRideCache with the specified repositories.
+     *
+     * @param taxiRepository                   the repository used to load a taxi on its first update
+     * @param customerRepository               the repository used to load the customer of a ride in progress
+     * @param customerTaxiAssignmentRepository the repository used to load the assignment of a ride in progress
+     */
+    public TaxiRideCache(TaxiRepository taxiRepository, CustomerRepository customerRepository,
+                         CustomerTaxiAssignmentRepository customerTaxiAssignmentRepository) {
+        this.taxiRepository = taxiRepository;
+        this.customerRepository = customerRepository;
+        this.customerTaxiAssignmentRepository = customerTaxiAssignmentRepository;
+    }
+
+    /**
+     * Returns the cached data of a taxi, loading it from the database if it is not cached yet.
+     *
+     * @param identifier the identifier of the taxi
+     * @return the cached taxi, or null if the taxi does not exist
+     */
+    public CachedTaxi get(String identifier) {
+        CachedTaxi cached = taxis.get(identifier);
+        if (cached != null) {
+            return cached;
+        }
+        CachedTaxi loaded = load(identifier);
+        if (loaded == null) {
+            return null;
+        }
+        // Si otro hilo lo cargó o lo asignó mientras tanto, prevalece su versión
+        CachedTaxi previous = taxis.putIfAbsent(identifier, loaded);
+        return previous != null ? previous : loaded;
+    }
+
+    /**
+     * Records that a taxi has been assigned to a customer.
+     *
+     * @param identifier  the identifier of the taxi
+     * @param taxiId      the database id of the taxi
+     * @param customer    the customer the taxi will carry
+     * @param destination the identifier of the customer's destination
+     */
+    public void assign(String identifier, Long taxiId, Customer customer, String destination) {
+        taxis.put(identifier, new CachedTaxi(taxiId, TaxiState.ASSIGNED,
+                new Ride(customer.getId(), customer.getIdentifier(), destination)));
+    }
+
+    /**
+     * Records a state transition made by Central, keeping the ride in progress.
+     *
+     * @param identifier the identifier of the taxi
+     * @param state      the new state of the taxi
+     */
+    public void setState(String identifier, TaxiState state) {
+        taxis.computeIfPresent(identifier, (id, cached) -> new CachedTaxi(cached.id(), state, cached.ride()));
+    }
+
+    /**
+     * Records that a taxi finished its service and is free again.
+     *
+     * @param identifier the identifier of the taxi
+     */
+    public void release(String identifier) {
+        taxis.computeIfPresent(identifier, (id, cached) -> new CachedTaxi(cached.id(), TaxiState.IDLE, null));
+    }
+
+    /**
+     * Forgets a taxi, so its next update reads it from the database again.
+     *
+     * @param identifier the identifier of the taxi
+     */
+    public void remove(String identifier) {
+        taxis.remove(identifier);
+    }
+
+    private CachedTaxi load(String identifier) {
+        Taxi taxi = taxiRepository.findTaxiByIdentifier(identifier);
+        if (taxi == null) {
+            return null;
+        }
+        Ride ride = null;
+        Optional<CustomerTaxiAssignment> assignment = customerTaxiAssignmentRepository.findByIdTaxiId(taxi.getId());
+        if (assignment.isPresent()) {
+            Optional<Customer> customer = customerRepository.findById(assignment.get().getId().getCustomerId());
+            if (customer.isPresent()) {
+                ride = new Ride(customer.get().getId(), customer.get().getIdentifier(), customer.get().getDestIdentifier());
+            }
+        }
+        log.debug("Taxi {} loaded into the ride cache", identifier);
+        return new CachedTaxi(taxi.getId(), taxi.getState(), ride);
+    }
+
+    /**
+     * What Central knows about a taxi without querying the database.
+     *
+     * @param id    the database id of the taxi
+     * @param state the last state recorded by Central
+     * @param ride  the ride in progress, or null if the taxi is not carrying anybody
+     */
+    public record CachedTaxi(Long id, TaxiState state, Ride ride) {
+    }
+
+    /**
+     * The customer a taxi has been assigned to.
+     *
+     * @param customerId         the database id of the customer
+     * @param customerIdentifier the identifier of the customer
+     * @param destination        the identifier of the customer's destination
+     */
+    public record Ride(Long customerId, String customerIdentifier, String destination) {
+    }
+}
@@ -15,14 +15,17 @@ import java.util.Optional;
 public class TaxiService {
 
     private final TaxiRepository taxiRepository;
+    private final PositionWriteBehind positionWriteBehind;
 
     /**
      * Constructs a new TaxiService with the specified repository.
      *
      * @param taxiRepository the repository for managing taxi entities
+     * @param positionWriteBehind the buffer that batches position writes
      */
-    public TaxiService(TaxiRepository taxiRepository) {
+    public TaxiService(TaxiRepository taxiRepository, PositionWriteBehind positionWriteBehind) {
         this.taxiRepository = taxiRepository;
+        this.positionWriteBehind = positionWriteBehind;
     }
 
     /**
@@ -82,14 +85,11 @@ public class TaxiService {
 
     /**
      * Updates the location and status of a taxi based on the provided TaxiStatusDto.
+     * Positions are written behind in batches; a change of status is written immediately.
      *
      * @param taxiStatusDto the data transfer object containing the taxi status and location information
      */
     public void updateTaxiLocationByIdentifier(TaxiStatusDto taxiStatusDto) {
-        Taxi taxi = taxiRepository.findTaxiByIdentifier(taxiStatusDto.getTaxiId());
-        taxi.setX(taxiStatusDto.getX());
-        taxi.setY(taxiStatusDto.getY());
-        taxi.setState(taxiStatusDto.getStatus());
-        taxiRepository.save(taxi);
+        positionWriteBehind.updateTaxi(taxiStatusDto.getTaxiId(), taxiStatusDto.getX(), taxiStatusDto.getY(), taxiStatusDto.getStatus());
     }
 }
\ No newline at end of file
@@ -0,0 +1,325 @@
+package org.example.ec_central.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.example.ec_central.model.CityMap;
+import org.example.ec_central.model.GridGeometry;
+import org.example.ec_central.model.entity.Taxi;
+import org.example.ec_central.repository.TaxiRepository;
+import org.example.ec_central.utils.LongObjectHashMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * Spatial index of the idle taxis, used to find the taxis closest to a customer.
+ * Taxis are kept in square grid buckets; a query scans rings of buckets around the customer
+ * and stops as soon as no unscanned bucket can hold a closer taxi.
+ * Distances are measured in taxi steps: a taxi moves one cell on each axis per step.
+ * On a wrap-around map the rings of buckets also wrap around, so taxis across an edge are found as close as they are.
+ */
+@Service
+@Slf4j
+public class TaxiSpatialIndex {
+
+    private final TaxiRepository taxiRepository;
+
+    /**
+     * The side of a bucket, in cells.
+     */
+    @Value("${dispatch.spatial-index.bucket-size:4}")
+    private int bucketSize;
+
+    /**
+     * The size of the city map grid, injected from application properties.
+     */
+    @Value("${city.map.size:" + CityMap.DEFAULT_SIZE + "}")
+    private int mapSize;
+
+    /**
+     * Whether the city map wraps around at the edges, injected from application properties.
+     */
+    @Value("${city.map.wrap-around:false}")
+    private boolean wrapAround;
+
+    private GridGeometry geometry;
+    private int bucketCount;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final LongObjectHashMap<Set<String>> buckets = new LongObjectHashMap<>();
+
+    /**
+     * Constructs a new TaxiSpatialIndex with the specified repository.
+     *
+     * @param taxiRepository the repository used to load the idle taxis on startup
+     */
+    public TaxiSpatialIndex(TaxiRepository taxiRepository) {
+        this.taxiRepository = taxiRepository;
+    }
+
+    /**
+     * Loads the available taxis from the database on startup.
+     */
+    @PostConstruct
+    public void loadAvailableTaxis() {
+        geometry = new GridGeometry(mapSize, wrapAround);
+        bucketCount = Math.max(1, Math.ceilDiv(mapSize, bucketSize));
+        for (Taxi taxi : taxiRepository.findAllByAvailable(true)) {
+            add(taxi.getIdentifier(), taxi.getX(), taxi.getY());
+        }
+        log.info("Spatial index loaded with {} available taxis", size());
+    }
+
+    /**
+     * Adds an idle taxi to the index, or moves it if it is already there.
+     *
+     * @param identifier the identifier of the taxi
+     * @param x          the x-coordinate of the taxi
+     * @param y          the y-coordinate of the taxi
+     */
+    public void add(String identifier, int x, int y) {
+        lock.writeLock().lock();
+        try {
+            Entry previous = entries.get(identifier);
+            if (previous != null) {
+                removeFromBucket(previous);
+            }
+            Entry entry = new Entry(identifier, x, y);
+            entries.put(identifier, entry);
+            Set<String> bucket = buckets.get(entry.bucket);
+            if (bucket == null) {
+                bucket = new HashSet<>();
+                buckets.put(entry.bucket, bucket);
+            }
+            bucket.add(identifier);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves a taxi if it is in the index. Taxis that are not idle are ignored.
+     *
+     * @param identifier the identifier of the taxi
+     * @param x          the new x-coordinate of the taxi
+     * @param y          the new y-coordinate of the taxi
+     */
+    public void updatePosition(String identifier, int x, int y) {
+        lock.readLock().lock();
+        try {
+            Entry entry = entries.get(identifier);
+            if (entry == null || (entry.x == x && entry.y == y)) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            if (entries.containsKey(identifier)) {
+                add(identifier, x, y);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a taxi from the index, for example once it has been assigned.
+     *
+     * @param identifier the identifier of the taxi
+     */
+    public void remove(String identifier) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.remove(identifier);
+            if (entry != null) {
+                removeFromBucket(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether a taxi is in the index.
+     *
+     * @param identifier the identifier of the taxi
+     * @return true if the taxi is indexed as idle
+     */
+    public boolean contains(String identifier) {
+        lock.readLock().lock();
+        try {
+            return entries.containsKey(identifier);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of indexed taxis.
+     *
+     * @return the number of idle taxis in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the k idle taxis closest to a position.
+     *
+     * @param x      the x-coordinate of the position
+     * @param y      the y-coordinate of the position
+     * @param k      the maximum number of taxis to return
+     * @param filter only taxis accepted by this filter are returned, for example connected ones
+     * @return the identifiers of the closest taxis, nearest first
+     * @throws IllegalArgumentException if k is less than 1
+     */
+    public List<String> nearest(int x, int y, int k, Predicate<String> filter) {
+        return nearestCandidates(x, y, k, filter).stream().map(Candidate::identifier).toList();
+    }
+
+    /**
+     * Finds the k idle taxis closest to a position, together with their distance to it.
+     *
+     * @param x      the x-coordinate of the position
+     * @param y      the y-coordinate of the position
+     * @param k      the maximum number of taxis to return
+     * @param filter only taxis accepted by this filter are returned, for example connected ones
+     * @return the closest taxis, nearest first
+     * @throws IllegalArgumentException if k is less than 1
+     */
+    public List<Candidate> nearestCandidates(int x, int y, int k, Predicate<String> filter) {
+        if (k < 1) {
+            throw new IllegalArgumentException("The number of taxis to find must be at least 1: " + k);
+        }
+        List<Entry> found = new ArrayList<>();
+        Comparator<Entry> byDistance = Comparator.<Entry>comparingInt(entry -> distance(x, y, entry.x, entry.y))
+                                                 .thenComparing(entry -> entry.identifier);
+        lock.readLock().lock();
+        try {
+            int centerX = Math.floorDiv(x, bucketSize);
+            int centerY = Math.floorDiv(y, bucketSize);
+            int maxRing = bucketCount + 1;
+            // En un toro los anillos dan la vuelta: los cubos ya visitados desde el otro lado se saltan
+            Set<Long> scanned = geometry.isWrapAround() ? new HashSet<>() : null;
+            // El último cubo puede ser más estrecho, y en un toro se cruza al dar la vuelta
+            int padding = geometry.isWrapAround() ? bucketCount * bucketSize - mapSize : 0;
+            for (int ring = 0; ring <= maxRing && !entries.isEmpty(); ring++) {
+                scanRing(centerX, centerY, ring, filter, found, scanned);
+                if (found.size() >= k) {
+                    found.sort(byDistance);
+                    // Any taxi in a bucket outside the scanned rings is at least ring * bucketSize + 1 - padding steps away
+                    if (distance(x, y, found.get(k - 1).x, found.get(k - 1).y) <= ring * bucketSize - padding) {
+                        break;
+                    }
+                }
+                if (scanned != null && 2 * ring + 1 >= bucketCount) {
+                    break; // Todos los cubos visitados
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        found.sort(byDistance);
+        List<Candidate> result = new ArrayList<>(Math.min(k, found.size()));
+        for (int i = 0; i < found.size() && i < k; i++) {
+            Entry entry = found.get(i);
+            result.add(new Candidate(entry.identifier, distance(x, y, entry.x, entry.y), entry.x, entry.y));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of steps a taxi needs to go from one cell to another.
+     *
+     * @param x1 the x-coordinate of the origin
+     * @param y1 the y-coordinate of the origin
+     * @param x2 the x-coordinate of the target
+     * @param y2 the y-coordinate of the target
+     * @return the number of steps between both cells, going around the edges on a wrap-around map
+     */
+    public int distance(int x1, int y1, int x2, int y2) {
+        return geometry.distance(x1, y1, x2, y2);
+    }
+
+    private void scanRing(int centerX, int centerY, int ring, Predicate<String> filter, List<Entry> found,
+                          Set<Long> scanned) {
+        for (int bx = centerX - ring; bx <= centerX + ring; bx++) {
+            for (int by = centerY - ring; by <= centerY + ring; by++) {
+                // Solo el borde del anillo: el interior ya se visitó en las vueltas anteriores
+                if (Math.max(Math.abs(bx - centerX), Math.abs(by - centerY)) != ring) {
+                    continue;
+                }
+                long key = scanned == null ? CityMap.key(bx, by)
+                        : CityMap.key(Math.floorMod(bx, bucketCount), Math.floorMod(by, bucketCount));
+                if (scanned != null && !scanned.add(key)) {
+                    continue;
+                }
+                Set<String> bucket = buckets.get(key);
+                if (bucket == null) {
+                    continue;
+                }
+                for (String identifier : bucket) {
+                    if (filter.test(identifier)) {
+                        found.add(entries.get(identifier));
+                    }
+                }
+            }
+        }
+    }
+
+    private void removeFromBucket(Entry entry) {
+        Set<String> bucket = buckets.get(entry.bucket);
+        if (bucket != null) {
+            bucket.remove(entry.identifier);
+            if (bucket.isEmpty()) {
+                buckets.remove(entry.bucket);
+            }
+        }
+    }
+
+    /**
+     * An idle taxi returned by a nearest query.
+     *
+     * @param identifier the identifier of the taxi
+     * @param distance   the number of steps from the taxi to the queried position
+     * @param x          the x-coordinate of the taxi
+     * @param y          the y-coordinate of the taxi
+     */
+    public record Candidate(String identifier, int distance, int x, int y) {
+    }
+
+    /**
+     * Indexed position of an idle taxi.
+     */
+    private final class Entry {
+        private final String identifier;
+        private final int x;
+        private final int y;
+        private final long bucket;
+
+        private Entry(String identifier, int x, int y) {
+            this.identifier = identifier;
+            this.x = geometry.normalize(x);
+            this.y = geometry.normalize(y);
+            this.bucket = CityMap.key(Math.floorDiv(this.x, bucketSize), Math.floorDiv(this.y, bucketSize));
+        }
+    }
+}
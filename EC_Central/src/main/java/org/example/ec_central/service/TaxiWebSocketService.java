@@ -1,21 +1,47 @@
 package org.example.ec_central.service;
 
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.example.ec_central.model.CityMap;
-import org.example.ec_central.model.TaxiStatusDto;
+import org.example.ec_central.model.MapUpdateDto;
 import org.example.ec_central.utils.MappingUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Service class for handling WebSocket communications related to taxi status updates.
+ * The map is sent as a versioned stream: a full keyframe every few ticks and only the changed cells in between.
+ * A client that subscribes or misses a delta gets a keyframe of the current version on its own session queue,
+ * so the other clients keep receiving deltas.
  */
 @Service
 @Slf4j
 public class TaxiWebSocketService {
 
+    public static final String MAP_TOPIC = "/topic/taxi-coordinates";
+    public static final String KEYFRAME_QUEUE = "/queue/map-keyframe";
+
     private final SimpMessagingTemplate messagingTemplate;
 
+    /**
+     * Number of broadcast ticks between two keyframes.
+     */
+    @Setter
+    @Value("${map.broadcast.keyframe-interval:10}")
+    private int keyframeInterval;
+
+    private CityMap lastMap;
+    private long version;
+    private int ticksSinceKeyframe;
+
     /**
      * Constructs a new TaxiWebSocketService with the specified messaging template.
      *
@@ -26,17 +52,100 @@ public class TaxiWebSocketService {
     }
 
     /**
-     * Broadcasts a taxi status update to all connected clients.
+     * Broadcasts the city map to all connected clients, as a keyframe or as a delta against the last map sent.
+     * Maps passed here are treated as immutable snapshots.
      *
-     * @param message the taxi status update message to be broadcasted
+     * @param message the city map to be broadcasted
      */
-    public void broadcastToClients(CityMap message) {
+    public synchronized void broadcastToClients(CityMap message) {
+        ticksSinceKeyframe++;
+        boolean keyframe = lastMap == null
+                || lastMap.getSize() != message.getSize()
+                || ticksSinceKeyframe >= keyframeInterval;
+
+        MapUpdateDto update;
+        if (keyframe) {
+            update = buildKeyframe(message, version + 1);
+            ticksSinceKeyframe = 0;
+        } else if (message == lastMap) {
+            return;
+        } else {
+            update = buildDelta(lastMap, message);
+            if (update.getCells().isEmpty()) {
+                lastMap = message;
+                return;
+            }
+        }
+
+        version = update.getVersion();
+        lastMap = message;
+        messagingTemplate.convertAndSend(MAP_TOPIC, MappingUtils.map(update));
+        //log.info("Message sent to clients: {}", message);
+    }
 
+    /**
+     * Sends a keyframe of the last map broadcast, at its version, to one session only.
+     * Before the first broadcast there is nothing to send: the first broadcast is already a keyframe.
+     *
+     * @param sessionId the STOMP session that asked for the keyframe
+     */
+    public synchronized void sendKeyframe(String sessionId) {
+        if (lastMap == null || sessionId == null) {
+            return;
+        }
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setLeaveMutable(true);
+        // Sin usuario autenticado, el destino /user se resuelve por el id de sesión
+        messagingTemplate.convertAndSendToUser(sessionId, KEYFRAME_QUEUE,
+                MappingUtils.map(buildKeyframe(lastMap, version)), headers.getMessageHeaders());
+    }
 
-        String jsonMap = MappingUtils.map(message);
+    /**
+     * Sends a keyframe to new subscribers of the map topic.
+     *
+     * @param event the STOMP subscribe event
+     */
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        if (MAP_TOPIC.equals(accessor.getDestination())) {
+            sendKeyframe(accessor.getSessionId());
+        }
+    }
 
+    private MapUpdateDto buildKeyframe(CityMap map, long keyframeVersion) {
+        List<MapUpdateDto.CellUpdate> cells = new ArrayList<>(map.getOccupiedCount());
+        map.forEachOccupied((x, y, cell) -> cells.add(new MapUpdateDto.CellUpdate(x, y, cell.color(), cell.data())));
+        return MapUpdateDto.builder()
+                       .type(MapUpdateDto.Type.KEYFRAME)
+                       .version(keyframeVersion)
+                       .baseVersion(version)
+                       .size(map.getSize())
+                       .cells(cells)
+                       .build();
+    }
 
-        messagingTemplate.convertAndSend("/topic/taxi-coordinates", jsonMap);
-        //log.info("Message sent to clients: {}", message);
+    private MapUpdateDto buildDelta(CityMap previous, CityMap current) {
+        List<MapUpdateDto.CellUpdate> cells = new ArrayList<>();
+        // Celdas nuevas o modificadas
+        current.forEachOccupied((x, y, cell) -> {
+            if (!cell.equals(previous.getPosition(x, y))) {
+                cells.add(new MapUpdateDto.CellUpdate(x, y, cell.color(), cell.data()));
+            }
+        });
+        // Celdas que han quedado vacías
+        previous.forEachOccupied((x, y, cell) -> {
+            if (!current.isOccupied(x, y)) {
+                cells.add(new MapUpdateDto.CellUpdate(x, y, CityMap.EMPTY.color(), CityMap.EMPTY.data()));
+            }
+        });
+        return MapUpdateDto.builder()
+                       .type(MapUpdateDto.Type.DELTA)
+                       .version(version + 1)
+                       .baseVersion(version)
+                       .size(current.getSize())
+                       .cells(cells)
+                       .build();
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,13 @@
 package org.example.ec_central.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.example.ec_central.utils.SimulationClock;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
@@ -13,9 +15,14 @@ public class TrafficService {
 
     private String selectedCity = "London"; // Ciudad inicial predeterminada
     private final RestTemplate restTemplate = new RestTemplate();
+    private final SimulationClock clock;
     @Value("${CTC_URL}") // Obtiene la URL desde la variable de entorno
     private String trafficApiUrl;
 
+    public TrafficService(SimulationClock clock) {
+        this.clock = clock;
+    }
+
     public void startMonitoring() {
         Thread monitoringThread = new Thread(() -> {
             while (true) {
@@ -25,7 +32,7 @@ public class TrafficService {
                     System.out.println("Traffic status for " + selectedCity + ": " + trafficStatus);
                     log.info("Traffic status for " + selectedCity + ": " + trafficStatus);
                     // Esperar 10 segundos antes de la próxima consulta
-                    Thread.sleep(10000);
+                    clock.sleep(10, TimeUnit.SECONDS);
                 } catch (Exception e) {
                     System.err.println("Error consuming /traffic API: " + e.getMessage());
                 }
@@ -0,0 +1,222 @@
+package org.example.ec_central.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Binary framing for the socket protocol between EC_Central and EC_DE, used once both sides advertise the BIN capability.
+ * A frame is {@code length (int32) | type (byte) | fields | crc32 (int32)}, where the length and the CRC cover the type
+ * and the fields, and each field is a tag byte followed by its value:
+ * {@code FIELD_INT} and a big-endian int32, or {@code FIELD_BYTES}, an int32 length and the bytes.
+ * <p>
+ * One codec serves one connection and is not thread-safe. Its read and write buffers are allocated once and reused,
+ * so receiving a heartbeat or an ACK creates no objects; strings are only built when a field is asked for as one.
+ */
+public class BinaryFrameCodec {
+
+    public static final byte INVALID = 0;
+    public static final byte HEARTBEAT = 1;
+    public static final byte ACK = 2;
+    public static final byte NACK = 3;
+    public static final byte REKEY = 4;
+    public static final byte KEY = 5;
+    public static final byte EOT = 6;
+    public static final byte REQUEST = 7;
+    public static final byte KEY_ACK = 8;
+
+    public static final byte FIELD_INT = 1;
+    public static final byte FIELD_BYTES = 2;
+
+    private static final int LENGTH_SIZE = Integer.BYTES;
+    private static final int CRC_SIZE = Integer.BYTES;
+
+    private final int maxFrameSize;
+    private final ByteBuffer readBuffer;
+    private final ByteBuffer writeBuffer;
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Constructs a new BinaryFrameCodec.
+     *
+     * @param maxFrameSize the largest type and fields section accepted or produced, in bytes
+     */
+    public BinaryFrameCodec(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+        this.readBuffer = ByteBuffer.allocate(maxFrameSize + CRC_SIZE);
+        this.writeBuffer = ByteBuffer.allocate(LENGTH_SIZE + maxFrameSize + CRC_SIZE);
+    }
+
+    /**
+     * Starts a new outgoing frame, discarding any frame not yet written.
+     *
+     * @param type the frame type
+     * @return this codec, to append fields
+     */
+    public BinaryFrameCodec begin(byte type) {
+        writeBuffer.clear();
+        writeBuffer.position(LENGTH_SIZE);
+        writeBuffer.put(type);
+        return this;
+    }
+
+    /**
+     * Appends an int field to the outgoing frame.
+     *
+     * @param value the value
+     * @return this codec
+     */
+    public BinaryFrameCodec putInt(int value) {
+        ensureWritable(1 + Integer.BYTES);
+        writeBuffer.put(FIELD_INT).putInt(value);
+        return this;
+    }
+
+    /**
+     * Appends a bytes field to the outgoing frame.
+     *
+     * @param value the value
+     * @return this codec
+     */
+    public BinaryFrameCodec putBytes(byte[] value) {
+        ensureWritable(1 + Integer.BYTES + value.length);
+        writeBuffer.put(FIELD_BYTES).putInt(value.length).put(value);
+        return this;
+    }
+
+    /**
+     * Appends a string field to the outgoing frame, encoded as UTF-8 bytes.
+     *
+     * @param value the value
+     * @return this codec
+     */
+    public BinaryFrameCodec putString(String value) {
+        return putBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Completes the outgoing frame with its length and CRC and writes it to the stream.
+     *
+     * @param out the stream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        int bodyLength = writeBuffer.position() - LENGTH_SIZE;
+        crc.reset();
+        crc.update(writeBuffer.array(), LENGTH_SIZE, bodyLength);
+        writeBuffer.putInt((int) crc.getValue());
+        writeBuffer.putInt(0, bodyLength);
+        out.write(writeBuffer.array(), 0, writeBuffer.position());
+        out.flush();
+    }
+
+    /**
+     * Reads the next frame into the read buffer and checks its CRC.
+     * After a valid frame, its fields can be read in order with {@link #getInt()}, {@link #getBytes()} and {@link #getString()}.
+     *
+     * @param in the stream to read from
+     * @return the frame type, or {@link #INVALID} if the CRC does not match
+     * @throws IOException if an I/O error occurs or the frame is larger than allowed, in which case the stream cannot be resynchronised
+     */
+    public byte readFrom(DataInputStream in) throws IOException {
+        int bodyLength = in.readInt();
+        if (bodyLength < 1 || bodyLength > maxFrameSize) {
+            throw new IOException("Invalid binary frame length: " + bodyLength);
+        }
+        byte[] array = readBuffer.array();
+        in.readFully(array, 0, bodyLength + CRC_SIZE);
+        readBuffer.clear().limit(bodyLength + CRC_SIZE);
+
+        crc.reset();
+        crc.update(array, 0, bodyLength);
+        if ((int) crc.getValue() != readBuffer.getInt(bodyLength)) {
+            readBuffer.limit(0);
+            return INVALID;
+        }
+        readBuffer.limit(bodyLength);
+        return readBuffer.get();
+    }
+
+    /**
+     * Reads the next field of the current frame as an int.
+     *
+     * @return the value
+     * @throws IOException if the next field is missing or not an int
+     */
+    public int getInt() throws IOException {
+        try {
+            expectField(FIELD_INT);
+            return readBuffer.getInt();
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated int field", e);
+        }
+    }
+
+    /**
+     * Reads the next field of the current frame as bytes.
+     *
+     * @return a copy of the value
+     * @throws IOException if the next field is missing or not a bytes field
+     */
+    public byte[] getBytes() throws IOException {
+        byte[] value = new byte[bytesFieldLength()];
+        readBuffer.get(value);
+        return value;
+    }
+
+    /**
+     * Reads the next field of the current frame as a UTF-8 string.
+     *
+     * @return the value
+     * @throws IOException if the next field is missing or not a bytes field
+     */
+    public String getString() throws IOException {
+        int length = bytesFieldLength();
+        String value = new String(readBuffer.array(), readBuffer.position(), length, StandardCharsets.UTF_8);
+        readBuffer.position(readBuffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Checks whether the current frame has more fields.
+     *
+     * @return true if there are fields left to read
+     */
+    public boolean hasMoreFields() {
+        return readBuffer.hasRemaining();
+    }
+
+    private int bytesFieldLength() throws IOException {
+        try {
+            expectField(FIELD_BYTES);
+            int length = readBuffer.getInt();
+            if (length < 0 || length > readBuffer.remaining()) {
+                throw new IOException("Invalid bytes field length: " + length);
+            }
+            return length;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated bytes field", e);
+        }
+    }
+
+    private void expectField(byte tag) throws IOException {
+        if (!readBuffer.hasRemaining()) {
+            throw new IOException("Missing field in binary frame");
+        }
+        byte actual = readBuffer.get();
+        if (actual != tag) {
+            throw new IOException("Unexpected field tag " + actual + ", expected " + tag);
+        }
+    }
+
+    private void ensureWritable(int bytes) {
+        if (writeBuffer.position() + bytes > LENGTH_SIZE + maxFrameSize) {
+            throw new BufferOverflowException();
+        }
+    }
+}
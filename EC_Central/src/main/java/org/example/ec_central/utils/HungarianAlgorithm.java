@@ -0,0 +1,103 @@
+package org.example.ec_central.utils;
+
+import java.util.Arrays;
+
+/**
+ * Minimum-cost bipartite assignment (Hungarian algorithm with potentials), O(n² · m).
+ */
+public final class HungarianAlgorithm {
+
+    private HungarianAlgorithm() {
+    }
+
+    /**
+     * Finds the assignment of rows to columns with the lowest total cost.
+     * When there are more rows than columns, some rows stay unassigned.
+     *
+     * @param cost the cost matrix, one row per agent and one column per task; all rows must have the same length
+     * @return for each row, the assigned column, or -1 if the row could not be assigned
+     */
+    public static int[] assign(long[][] cost) {
+        int rows = cost.length;
+        int cols = rows == 0 ? 0 : cost[0].length;
+        int[] result = new int[rows];
+        Arrays.fill(result, -1);
+        if (rows == 0 || cols == 0) {
+            return result;
+        }
+        if (rows <= cols) {
+            int[] rowToCol = solve(cost, rows, cols, false);
+            System.arraycopy(rowToCol, 0, result, 0, rows);
+        } else {
+            // Más filas que columnas: se resuelve la traspuesta y se invierte el resultado
+            int[] colToRow = solve(cost, cols, rows, true);
+            for (int col = 0; col < cols; col++) {
+                result[colToRow[col]] = col;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Solves an n x m problem with n <= m, reading the matrix transposed if asked.
+     *
+     * @return for each of the n rows, the assigned column
+     */
+    private static int[] solve(long[][] cost, int n, int m, boolean transposed) {
+        long[] u = new long[n + 1];
+        long[] v = new long[m + 1];
+        int[] match = new int[m + 1];
+        int[] way = new int[m + 1];
+        long[] minSlack = new long[m + 1];
+        boolean[] used = new boolean[m + 1];
+
+        for (int row = 1; row <= n; row++) {
+            match[0] = row;
+            int col0 = 0;
+            Arrays.fill(minSlack, Long.MAX_VALUE);
+            Arrays.fill(used, false);
+            do {
+                used[col0] = true;
+                int row0 = match[col0];
+                long delta = Long.MAX_VALUE;
+                int col1 = 0;
+                for (int col = 1; col <= m; col++) {
+                    if (!used[col]) {
+                        long c = transposed ? cost[col - 1][row0 - 1] : cost[row0 - 1][col - 1];
+                        long slack = c - u[row0] - v[col];
+                        if (slack < minSlack[col]) {
+                            minSlack[col] = slack;
+                            way[col] = col0;
+                        }
+                        if (minSlack[col] < delta) {
+                            delta = minSlack[col];
+                            col1 = col;
+                        }
+                    }
+                }
+                for (int col = 0; col <= m; col++) {
+                    if (used[col]) {
+                        u[match[col]] += delta;
+                        v[col] -= delta;
+                    } else {
+                        minSlack[col] -= delta;
+                    }
+                }
+                col0 = col1;
+            } while (match[col0] != 0);
+            do {
+                int col1 = way[col0];
+                match[col0] = match[col1];
+                col0 = col1;
+            } while (col0 != 0);
+        }
+
+        int[] rowToCol = new int[n];
+        for (int col = 1; col <= m; col++) {
+            if (match[col] != 0) {
+                rowToCol[match[col] - 1] = col - 1;
+            }
+        }
+        return rowToCol;
+    }
+}
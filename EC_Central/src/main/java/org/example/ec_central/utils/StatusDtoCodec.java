@@ -0,0 +1,186 @@
+package org.example.ec_central.utils;
+
+import org.example.ec_central.model.CustomerStatusDto;
+import org.example.ec_central.model.TaxiState;
+import org.example.ec_central.model.TaxiStatusDto;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact binary encoding of {@link TaxiStatusDto} and {@link CustomerStatusDto}, the alternative to the JSON of {@link MappingUtils}
+ * used with taxis that negotiate it.
+ * <p>
+ * Schema, version 1:
+ * {@code version (byte) | type (byte) | taxiId (string) | x (int) | y (int) | status (byte) | token (string)},
+ * followed for a CustomerStatusDto by {@code customerX | customerY | destX | destY (int)}.
+ * Ints are zigzag varints, so small coordinates and the -1 used for "no customer" take one byte.
+ * Strings are a varint holding the length plus one (0 for null) and the UTF-8 bytes.
+ * The status is the enum ordinal, or -1 for null, so {@link TaxiState} must keep the same order in EC_Central and EC_DE.
+ * New fields go at the end with a new version number; decoders reject versions they do not know.
+ */
+public final class StatusDtoCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final byte TYPE_TAXI_STATUS = 1;
+    private static final byte TYPE_CUSTOMER_STATUS = 2;
+    private static final TaxiState[] STATES = TaxiState.values();
+
+    private StatusDtoCodec() {
+    }
+
+    /**
+     * Encodes a status update. A CustomerStatusDto is encoded with its customer and destination fields.
+     *
+     * @param dto the status update
+     * @return the encoded bytes
+     */
+    public static byte[] encode(TaxiStatusDto dto) {
+        byte[] taxiId = bytesOf(dto.getTaxiId());
+        byte[] token = bytesOf(dto.getToken());
+        ByteBuffer out = ByteBuffer.allocate(2 + stringSize(taxiId) + stringSize(token) + 1 + 6 * 5);
+        boolean customer = dto instanceof CustomerStatusDto;
+        out.put(VERSION).put(customer ? TYPE_CUSTOMER_STATUS : TYPE_TAXI_STATUS);
+        putString(out, taxiId);
+        putInt(out, dto.getX());
+        putInt(out, dto.getY());
+        out.put(dto.getStatus() == null ? -1 : (byte) dto.getStatus().ordinal());
+        putString(out, token);
+        if (customer) {
+            CustomerStatusDto customerStatus = (CustomerStatusDto) dto;
+            putInt(out, customerStatus.getCustomerX());
+            putInt(out, customerStatus.getCustomerY());
+            putInt(out, customerStatus.getDestX());
+            putInt(out, customerStatus.getDestY());
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Decodes a TaxiStatusDto. A CustomerStatusDto is also accepted and returned with its extra fields.
+     *
+     * @param data the encoded bytes
+     * @return the status update
+     * @throws IllegalArgumentException if the data is malformed or of an unknown version
+     */
+    public static TaxiStatusDto decodeTaxiStatus(byte[] data) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(data);
+            byte type = readHeader(in);
+            String taxiId = getString(in);
+            int x = getInt(in);
+            int y = getInt(in);
+            TaxiState status = getState(in);
+            String token = getString(in);
+            if (type == TYPE_TAXI_STATUS) {
+                return new TaxiStatusDto(taxiId, x, y, status, token);
+            }
+            return CustomerStatusDto.builder()
+                                    .taxiId(taxiId).x(x).y(y).status(status).token(token)
+                                    .customerX(getInt(in)).customerY(getInt(in))
+                                    .destX(getInt(in)).destY(getInt(in))
+                                    .build();
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated status update", e);
+        }
+    }
+
+    /**
+     * Decodes a CustomerStatusDto.
+     *
+     * @param data the encoded bytes
+     * @return the status update
+     * @throws IllegalArgumentException if the data is malformed, of an unknown version or not a CustomerStatusDto
+     */
+    public static CustomerStatusDto decodeCustomerStatus(byte[] data) {
+        if (decodeTaxiStatus(data) instanceof CustomerStatusDto customerStatus) {
+            return customerStatus;
+        }
+        throw new IllegalArgumentException("Not a customer status update");
+    }
+
+    private static byte readHeader(ByteBuffer in) {
+        byte version = in.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported status update version: " + version);
+        }
+        byte type = in.get();
+        if (type != TYPE_TAXI_STATUS && type != TYPE_CUSTOMER_STATUS) {
+            throw new IllegalArgumentException("Unknown status update type: " + type);
+        }
+        return type;
+    }
+
+    private static TaxiState getState(ByteBuffer in) {
+        int ordinal = in.get();
+        if (ordinal == -1) {
+            return null;
+        }
+        if (ordinal < 0 || ordinal >= STATES.length) {
+            throw new IllegalArgumentException("Unknown taxi state: " + ordinal);
+        }
+        return STATES[ordinal];
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(byte[] value) {
+        return 5 + (value == null ? 0 : value.length);
+    }
+
+    private static void putString(ByteBuffer out, byte[] value) {
+        if (value == null) {
+            putVarint(out, 0);
+            return;
+        }
+        putVarint(out, value.length + 1);
+        out.put(value);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = getVarint(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void putInt(ByteBuffer out, int value) {
+        putVarint(out, (value << 1) ^ (value >> 31));
+    }
+
+    private static int getInt(ByteBuffer in) {
+        int zigzag = getVarint(in);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
@@ -0,0 +1,6 @@
+-- Taxis del simulador de flota de EC_DE (fleet.enabled).
+-- Solo se aplica si se añade classpath:db/loadtest a spring.flyway.locations.
+INSERT INTO Taxi (identifier, available, x, y)
+SELECT 'sim-' || n, true, 1, 1
+FROM generate_series(1, 20000) AS n
+ON CONFLICT (identifier) DO NOTHING;
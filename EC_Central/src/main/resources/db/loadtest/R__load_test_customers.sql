@@ -0,0 +1,6 @@
+-- Clientes del generador de carga de EC_Customer (load.enabled).
+-- Solo se aplica si se añade classpath:db/loadtest a spring.flyway.locations.
+INSERT INTO Customer (identifier, x, y)
+SELECT 'load-' || n, 1 + (n * 7) % 20, 1 + (n * 13) % 20
+FROM generate_series(1, 5000) AS n
+ON CONFLICT (identifier) DO NOTHING;
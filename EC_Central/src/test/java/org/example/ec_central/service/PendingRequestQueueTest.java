@@ -0,0 +1,88 @@
+package org.example.ec_central.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.ec_central.model.entity.Customer;
+import org.example.ec_central.service.PendingRequestQueue.PendingRequest;
+import org.example.ec_central.utils.SimulationClock;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PendingRequestQueueTest {
+
+    private final SimulationClock clock = new SimulationClock(1.0, true);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PendingRequestQueue queue = new PendingRequestQueue(registry, 3, 10_000, "vip", 20_000, clock);
+
+    @Test
+    void servesPriorityCustomersFirstAndThenByDeadline() {
+        queue.offer(customer("a"), "X", "a");
+        clock.advance(1, TimeUnit.SECONDS);
+        queue.offer(customer("b"), "X", "b");
+        queue.offer(customer("vip-c"), "X", "vip-c");
+
+        List<PendingRequest> served = queue.serve(request -> true);
+
+        assertEquals(List.of("vip-c", "a", "b"), identifiers(served));
+        assertEquals(PendingRequestQueue.PRIORITY, served.get(0).priority());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void aRequestThatGetsNoTaxiKeepsItsPlace() {
+        queue.offer(customer("a"), "X", "a");
+        clock.advance(1, TimeUnit.SECONDS);
+        queue.offer(customer("b"), "X", "b");
+
+        // Si la cabeza no consigue taxi, las siguientes no se adelantan
+        assertTrue(queue.serve(request -> false).isEmpty());
+        assertEquals(2, queue.size());
+
+        List<PendingRequest> served = queue.serve(request -> !request.message().equals("b"));
+
+        assertEquals(List.of("a"), identifiers(served));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    void expiresEachClassAtItsOwnDeadline() {
+        queue.offer(customer("a"), "X", "a");
+        queue.offer(customer("vip-b"), "X", "vip-b");
+
+        clock.advance(9_999, TimeUnit.MILLISECONDS);
+        assertTrue(queue.pollExpired().isEmpty());
+
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        assertEquals(List.of("a"), identifiers(queue.pollExpired()));
+
+        clock.advance(10, TimeUnit.SECONDS);
+        assertEquals(List.of("vip-b"), identifiers(queue.pollExpired()));
+        assertEquals(0, queue.size());
+        assertEquals(2, registry.get("dispatch.pending.wait").tag("outcome", "expired").timer().count());
+    }
+
+    @Test
+    void rejectsRequestsOnceFull() {
+        for (String identifier : List.of("a", "b", "c")) {
+            assertTrue(queue.offer(customer(identifier), "X", identifier));
+        }
+
+        assertFalse(queue.offer(customer("vip-d"), "X", "vip-d"));
+        assertEquals(3, queue.size());
+    }
+
+    private static Customer customer(String identifier) {
+        Customer customer = new Customer();
+        customer.setIdentifier(identifier);
+        return customer;
+    }
+
+    private static List<String> identifiers(List<PendingRequest> requests) {
+        return requests.stream().map(request -> request.customer().getIdentifier()).toList();
+    }
+}
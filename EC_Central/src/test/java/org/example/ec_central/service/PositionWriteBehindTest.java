@@ -0,0 +1,126 @@
+package org.example.ec_central.service;
+
+import org.example.ec_central.model.TaxiState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class PositionWriteBehindTest {
+
+    private static final String UPDATE_TAXI_STATE = "UPDATE taxi SET x = ?, y = ?, state = ? WHERE identifier = ?";
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final PositionWriteBehind writeBehind = new PositionWriteBehind(jdbcTemplate);
+
+    PositionWriteBehindTest() {
+        // Sin start(): el flush se lanza a mano y el umbral no se alcanza
+        ReflectionTestUtils.setField(writeBehind, "maxPending", 1000);
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void writesAStateChangeImmediatelyAndBuffersThePositionsThatFollow() {
+        writeBehind.updateTaxi("1", 1, 1, TaxiState.EN_ROUTE_TO_PICKUP);
+        writeBehind.updateTaxi("1", 2, 1, TaxiState.EN_ROUTE_TO_PICKUP);
+        writeBehind.updateTaxi("1", 3, 1, TaxiState.EN_ROUTE_TO_PICKUP);
+
+        verify(jdbcTemplate, times(1)).update(UPDATE_TAXI_STATE, 1, 1, "EN_ROUTE_TO_PICKUP", "1");
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+        assertEquals(1, writeBehind.pendingCount());
+    }
+
+    @Test
+    void flushesOnlyTheLastPositionOfEachTaxiAndCustomer() {
+        writeBehind.updateTaxi("1", 1, 1, TaxiState.RETURNING_TO_BASE);
+        writeBehind.updateTaxi("1", 2, 2, TaxiState.RETURNING_TO_BASE);
+        writeBehind.updateTaxi("2", 5, 5, TaxiState.EN_ROUTE_TO_DESTINATION);
+        writeBehind.updateCustomer(7L, 4, 4);
+        writeBehind.updateCustomer(7L, 5, 5);
+
+        writeBehind.flush();
+
+        assertEquals(List.of("1:2,2", "2:5,5"), taxiBatch());
+        ArgumentCaptor<List<Object[]>> customers = batchCaptor();
+        verify(jdbcTemplate).batchUpdate(eq("UPDATE customer SET x = ?, y = ? WHERE id = ?"), customers.capture());
+        assertEquals(1, customers.getValue().size());
+        assertArrayEquals(new Object[]{5, 5, 7L}, customers.getValue().get(0));
+        assertEquals(0, writeBehind.pendingCount());
+    }
+
+    @Test
+    void writesAStateAgainIfItsTransactionRolledBack() {
+        TransactionSynchronizationManager.initSynchronization();
+        writeBehind.updateTaxi("1", 3, 3, TaxiState.PICKUP);
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        writeBehind.updateTaxi("1", 3, 3, TaxiState.PICKUP);
+
+        verify(jdbcTemplate, times(2)).update(UPDATE_TAXI_STATE, 3, 3, "PICKUP", "1");
+    }
+
+    @Test
+    void recordsAStateOnceItsTransactionCommits() {
+        TransactionSynchronizationManager.initSynchronization();
+        writeBehind.updateTaxi("1", 3, 3, TaxiState.PICKUP);
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        writeBehind.updateTaxi("1", 4, 3, TaxiState.PICKUP);
+
+        verify(jdbcTemplate, times(1)).update(eq(UPDATE_TAXI_STATE), eq(3), eq(3), eq("PICKUP"), eq("1"));
+        verify(jdbcTemplate, never()).update(eq(UPDATE_TAXI_STATE), eq(4), eq(3), eq("PICKUP"), eq("1"));
+    }
+
+    @Test
+    void keepsTheImmediatelyWrittenPositionPendingSoAStaleFlushIsCorrected() {
+        writeBehind.updateTaxi("1", 1, 1, TaxiState.ASSIGNED);
+        writeBehind.updateTaxi("1", 2, 2, TaxiState.EN_ROUTE_TO_PICKUP);
+
+        writeBehind.flush();
+
+        assertEquals(List.of("1:2,2"), taxiBatch());
+    }
+
+    private void completeTransaction(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                synchronization.afterCommit();
+            }
+            synchronization.afterCompletion(status);
+        }
+    }
+
+    private List<String> taxiBatch() {
+        ArgumentCaptor<List<Object[]>> taxis = batchCaptor();
+        verify(jdbcTemplate).batchUpdate(eq("UPDATE taxi SET x = ?, y = ? WHERE identifier = ?"), taxis.capture());
+        return taxis.getValue().stream().map(args -> args[2] + ":" + args[0] + "," + args[1]).sorted().toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<Object[]>> batchCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+}
@@ -0,0 +1,89 @@
+package org.example.ec_central.service;
+
+import org.example.ec_central.model.GridGeometry;
+import org.example.ec_central.model.GridRouter;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RoutePlannerTest {
+
+    private static final String BLOCKED = "4,0;4,1;4,2;4,3;4,4;4,5;6,3;6,4;6,5;6,6;6,7;6,8;6,9";
+    private static final String COSTS = "2,2=5;2,3=5;7,1=3;8,8=9";
+
+    private RoutePlanner planner(int size, boolean wrapAround, String blockedCells, String cellCosts, int maxSize) {
+        RoutePlanner planner = new RoutePlanner();
+        ReflectionTestUtils.setField(planner, "mapSize", size);
+        ReflectionTestUtils.setField(planner, "wrapAround", wrapAround);
+        ReflectionTestUtils.setField(planner, "blockedCells", blockedCells);
+        ReflectionTestUtils.setField(planner, "cellCosts", cellCosts);
+        ReflectionTestUtils.setField(planner, "routeCacheTargets", 2);
+        ReflectionTestUtils.setField(planner, "routingMaxSize", maxSize);
+        planner.configureRouter();
+        return planner;
+    }
+
+    @Test
+    void costFromEveryCellMatchesTheAStarRoute() {
+        for (boolean wrapAround : new boolean[]{false, true}) {
+            RoutePlanner planner = planner(10, wrapAround, BLOCKED, COSTS, 1000);
+            GridRouter router = GridRouter.fromSpec(new GridGeometry(10, wrapAround), BLOCKED, COSTS);
+
+            for (int[] target : new int[][]{{9, 9}, {0, 0}, {5, 5}, {8, 8}}) {
+                for (int y = 0; y < 10; y++) {
+                    for (int x = 0; x < 10; x++) {
+                        // También desde celdas bloqueadas: un taxi puede salir de ellas
+                        int[] route = router.route(x, y, target[0], target[1]);
+                        int expected = route == null ? RoutePlanner.UNREACHABLE : router.costOf(route);
+                        assertEquals(expected, planner.cost(x, y, target[0], target[1]),
+                                "from " + x + "," + y + " to " + target[0] + "," + target[1] + " wrap " + wrapAround);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void rankingManyTaxisForOneCustomerSearchesOnce() {
+        RoutePlanner planner = planner(10, false, BLOCKED, COSTS, 1000);
+
+        for (int x = 0; x < 10; x++) {
+            planner.cost(x, 9 - x, 9, 9);
+        }
+
+        assertEquals(1, planner.getMisses());
+        assertEquals(9, planner.getHits());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedCustomerCell() {
+        RoutePlanner planner = planner(10, false, BLOCKED, COSTS, 1000);
+
+        planner.cost(0, 0, 9, 9);
+        planner.cost(0, 0, 8, 9);
+        planner.cost(0, 0, 9, 9);
+        planner.cost(0, 0, 7, 9); // Expulsa (8,9), la usada hace más tiempo
+        planner.cost(0, 0, 8, 9);
+
+        assertEquals(4, planner.getMisses());
+        assertEquals(1, planner.getHits());
+    }
+
+    @Test
+    void blockedOrOutsideCellsAreUnreachable() {
+        RoutePlanner planner = planner(10, false, BLOCKED, COSTS, 1000);
+
+        assertEquals(RoutePlanner.UNREACHABLE, planner.cost(0, 0, 4, 0));
+        assertEquals(RoutePlanner.UNREACHABLE, planner.cost(0, 0, 10, 0));
+        assertEquals(RoutePlanner.UNREACHABLE, planner.cost(-1, 0, 9, 9));
+    }
+
+    @Test
+    void usesTheStraightLineDistanceOnMapsTooBigToRoute() {
+        RoutePlanner planner = planner(10, false, BLOCKED, COSTS, 5);
+
+        assertEquals(9, planner.cost(0, 0, 9, 9));
+        assertEquals(1, planner.lowerBound(1));
+    }
+}
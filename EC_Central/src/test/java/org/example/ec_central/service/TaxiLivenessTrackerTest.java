@@ -0,0 +1,98 @@
+package org.example.ec_central.service;
+
+import org.example.ec_central.utils.SimulationClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TaxiLivenessTrackerTest {
+
+    private final SimulationClock clock = new SimulationClock(1.0, true);
+    private final List<String> evicted = new ArrayList<>();
+    private TaxiLivenessTracker tracker;
+
+    @BeforeEach
+    void startTracker() {
+        tracker = new TaxiLivenessTracker(clock);
+        ReflectionTestUtils.setField(tracker, "timeoutMs", 3000L);
+        ReflectionTestUtils.setField(tracker, "tickMs", 1000L);
+        tracker.start();
+        tracker.setEvictionListener(evicted::add);
+    }
+
+    @AfterEach
+    void stopTracker() {
+        tracker.stop();
+    }
+
+    @Test
+    void evictsATaxiOnceItsTimeoutHasPassed() {
+        tracker.touch("1");
+
+        advanceMs(3000);
+        assertFalse(tracker.isAlive("1"));
+        assertTrue(evicted.isEmpty());
+
+        // La expulsión llega como mucho un tick después de vencer el plazo
+        advanceMs(1000);
+        assertEquals(List.of("1"), evicted);
+        assertFalse(tracker.isTracked("1"));
+        assertEquals(-1, tracker.getLastSeenAgeMs("1"));
+    }
+
+    @Test
+    void aTouchPushesBackTheDeadline() {
+        tracker.touch("1");
+        advanceMs(2000);
+        tracker.touch("1");
+
+        advanceMs(3000);
+        assertTrue(evicted.isEmpty());
+        assertTrue(tracker.isTracked("1"));
+        assertEquals(3000, tracker.getLastSeenAgeMs("1"));
+
+        advanceMs(1000);
+        assertEquals(List.of("1"), evicted);
+    }
+
+    @Test
+    void keepsATaxiThatKeepsSendingHeartbeatsAcrossManyTurnsOfTheWheel() {
+        tracker.touch("1");
+        tracker.touch("2");
+        for (int i = 0; i < 20; i++) {
+            advanceMs(2000);
+            tracker.touch("1");
+            assertTrue(tracker.isAlive("1"));
+        }
+
+        // Solo el taxi que dejó de dar señales se expulsa, y una única vez
+        assertEquals(List.of("2"), evicted);
+
+        advanceMs(4000);
+        assertEquals(List.of("2", "1"), evicted);
+    }
+
+    @Test
+    void doesNotEvictARemovedTaxi() {
+        tracker.touch("1");
+        tracker.remove("1");
+
+        advanceMs(10_000);
+
+        assertTrue(evicted.isEmpty());
+        assertFalse(tracker.isTracked("1"));
+    }
+
+    private void advanceMs(long ms) {
+        clock.advance(ms, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,101 @@
+package org.example.ec_central.service;
+
+import org.example.ec_central.repository.TaxiRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TaxiSpatialIndexTest {
+
+    @Test
+    void returnsTheNearestTaxisFirst() {
+        TaxiSpatialIndex index = index(20, 4, false);
+        index.add("far", 15, 15);
+        index.add("near", 2, 3);
+        index.add("middle", 6, 1);
+
+        assertEquals(List.of("near", "middle"), index.nearest(1, 1, 2, identifier -> true));
+    }
+
+    @Test
+    void skipsTaxisRejectedByTheFilter() {
+        TaxiSpatialIndex index = index(20, 4, false);
+        index.add("busy", 1, 2);
+        index.add("free", 10, 10);
+
+        assertEquals(List.of("free"), index.nearest(1, 1, 1, identifier -> !identifier.equals("busy")));
+    }
+
+    @Test
+    void findsTaxisAcrossTheEdgeOfAWrapAroundMap() {
+        TaxiSpatialIndex index = index(20, 4, true);
+        index.add("across", 19, 19);
+        index.add("inside", 5, 5);
+
+        List<TaxiSpatialIndex.Candidate> nearest = index.nearestCandidates(0, 0, 1, identifier -> true);
+
+        assertEquals("across", nearest.get(0).identifier());
+        assertEquals(1, nearest.get(0).distance());
+    }
+
+    @Test
+    void accountsForTheNarrowLastBucketWhenWrapping() {
+        // 10 celdas en cubos de 4: el último cubo solo tiene 2 columnas y se cruza al dar la vuelta
+        TaxiSpatialIndex index = index(10, 4, true);
+        index.add("beyond-edge", 9, 0);
+        index.add("same-row", 4, 0);
+
+        List<TaxiSpatialIndex.Candidate> nearest = index.nearestCandidates(1, 0, 1, identifier -> true);
+
+        assertEquals("beyond-edge", nearest.get(0).identifier());
+        assertEquals(2, nearest.get(0).distance());
+    }
+
+    @Test
+    void stopsOnceEveryBucketOfAWrapAroundMapHasBeenScanned() {
+        TaxiSpatialIndex index = index(20, 4, true);
+        index.add("only", 10, 10);
+
+        List<TaxiSpatialIndex.Candidate> nearest = assertTimeoutPreemptively(Duration.ofSeconds(1),
+                () -> index.nearestCandidates(0, 0, 5, identifier -> true));
+
+        assertEquals(1, nearest.size());
+        assertEquals(10, nearest.get(0).distance());
+    }
+
+    @Test
+    void stopsWhenNoTaxiPassesTheFilter() {
+        TaxiSpatialIndex index = index(20, 4, true);
+        index.add("busy", 3, 3);
+
+        assertEquals(List.of(), assertTimeoutPreemptively(Duration.ofSeconds(1),
+                () -> index.nearest(0, 0, 1, identifier -> false)));
+    }
+
+    @Test
+    void rejectsAskingForNoTaxis() {
+        TaxiSpatialIndex index = index(20, 4, false);
+        index.add("taxi", 1, 1);
+
+        assertThrows(IllegalArgumentException.class, () -> index.nearest(0, 0, 0, identifier -> true));
+    }
+
+    private static TaxiSpatialIndex index(int mapSize, int bucketSize, boolean wrapAround) {
+        TaxiRepository taxiRepository = mock(TaxiRepository.class);
+        when(taxiRepository.findAllByAvailable(true)).thenReturn(List.of());
+        TaxiSpatialIndex index = new TaxiSpatialIndex(taxiRepository);
+        ReflectionTestUtils.setField(index, "mapSize", mapSize);
+        ReflectionTestUtils.setField(index, "bucketSize", bucketSize);
+        ReflectionTestUtils.setField(index, "wrapAround", wrapAround);
+        index.loadAvailableTaxis();
+        return index;
+    }
+}
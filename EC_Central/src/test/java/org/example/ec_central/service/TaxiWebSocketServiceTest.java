@@ -0,0 +1,130 @@
+package org.example.ec_central.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.ec_central.model.CityMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TaxiWebSocketServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Message<?>> sent = new ArrayList<>();
+    private TaxiWebSocketService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new TaxiWebSocketService(new SimpMessagingTemplate((message, timeout) -> sent.add(message)));
+        service.setKeyframeInterval(10);
+    }
+
+    private CityMap map(Object... cells) {
+        CityMap map = new CityMap(5);
+        for (int i = 0; i < cells.length; i += 4) {
+            map.updatePosition((int) cells[i], (int) cells[i + 1], (String) cells[i + 2], (CityMap.Color) cells[i + 3]);
+        }
+        return map;
+    }
+
+    private JsonNode payload(Message<?> message) throws Exception {
+        return objectMapper.readTree((String) message.getPayload());
+    }
+
+    private String destination(Message<?> message) {
+        return SimpMessageHeaderAccessor.wrap(message).getDestination();
+    }
+
+    private Map<String, String> cells(JsonNode update) {
+        Map<String, String> cells = new HashMap<>();
+        update.get("cells").forEach(cell -> cells.put(cell.get("x").asInt() + "," + cell.get("y").asInt(),
+                cell.get("color").asText() + ":" + cell.get("data").asText()));
+        return cells;
+    }
+
+    @Test
+    void startsWithAKeyframeOfEveryOccupiedCell() throws Exception {
+        service.broadcastToClients(map(0, 0, "1", CityMap.Color.GREEN, 3, 4, "a", CityMap.Color.YELLOW));
+
+        JsonNode update = payload(sent.get(0));
+        assertEquals(TaxiWebSocketService.MAP_TOPIC, destination(sent.get(0)));
+        assertEquals("KEYFRAME", update.get("type").asText());
+        assertEquals(1, update.get("version").asLong());
+        assertEquals(Map.of("0,0", "GREEN:1", "3,4", "YELLOW:a"), cells(update));
+    }
+
+    @Test
+    void sendsOnlyTheChangedAndClearedCellsInADelta() throws Exception {
+        service.broadcastToClients(map(0, 0, "1", CityMap.Color.GREEN, 3, 4, "a", CityMap.Color.YELLOW, 2, 2, "A", CityMap.Color.BLUE));
+        service.broadcastToClients(map(0, 1, "1", CityMap.Color.GREEN, 3, 4, "a", CityMap.Color.YELLOW, 2, 2, "A", CityMap.Color.BLUE));
+
+        JsonNode update = payload(sent.get(1));
+        assertEquals("DELTA", update.get("type").asText());
+        assertEquals(1, update.get("baseVersion").asLong());
+        assertEquals(2, update.get("version").asLong());
+        // El taxi se ha movido de (0,0) a (0,1); el cliente y el destino no cambian
+        assertEquals(Map.of("0,1", "GREEN:1", "0,0", "WHITE:" + CityMap.EMPTY.data()), cells(update));
+    }
+
+    @Test
+    void sendsNothingWhenTheMapDidNotChange() {
+        service.broadcastToClients(map(0, 0, "1", CityMap.Color.GREEN));
+        service.broadcastToClients(map(0, 0, "1", CityMap.Color.GREEN));
+
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    void sendsAKeyframeEveryInterval() throws Exception {
+        service.setKeyframeInterval(3);
+        for (int tick = 0; tick < 7; tick++) {
+            service.broadcastToClients(map(tick % 5, 0, "1", CityMap.Color.GREEN));
+        }
+
+        List<String> types = new ArrayList<>();
+        for (Message<?> message : sent) {
+            types.add(payload(message).get("type").asText());
+        }
+        assertEquals(List.of("KEYFRAME", "DELTA", "DELTA", "KEYFRAME", "DELTA", "DELTA", "KEYFRAME"), types);
+    }
+
+    @Test
+    void sendsARequestedKeyframeOnlyToTheRequestingSession() throws Exception {
+        service.broadcastToClients(map(0, 0, "1", CityMap.Color.GREEN));
+        service.broadcastToClients(map(1, 0, "1", CityMap.Color.GREEN));
+
+        service.sendKeyframe("session-1");
+
+        Message<?> keyframe = sent.get(2);
+        assertEquals("/user/session-1" + TaxiWebSocketService.KEYFRAME_QUEUE, destination(keyframe));
+        assertEquals("session-1", SimpMessageHeaderAccessor.wrap(keyframe).getSessionId());
+        JsonNode update = payload(keyframe);
+        assertEquals("KEYFRAME", update.get("type").asText());
+        // El keyframe lleva la versión actual para que el siguiente delta se aplique sobre él
+        assertEquals(2, update.get("version").asLong());
+        assertEquals(Map.of("1,0", "GREEN:1"), cells(update));
+
+        service.broadcastToClients(map(2, 0, "1", CityMap.Color.GREEN));
+        JsonNode next = payload(sent.get(3));
+        assertEquals(TaxiWebSocketService.MAP_TOPIC, destination(sent.get(3)));
+        assertEquals("DELTA", next.get("type").asText());
+        assertEquals(2, next.get("baseVersion").asLong());
+    }
+
+    @Test
+    void hasNoKeyframeToSendBeforeTheFirstBroadcast() {
+        service.sendKeyframe("session-1");
+
+        assertTrue(sent.isEmpty());
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.ec_central.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryFrameCodecTest {
+
+    private final BinaryFrameCodec codec = new BinaryFrameCodec(64);
+
+    @Test
+    void readsBackTheFieldsItWrote() throws IOException {
+        byte[] frame = write(codec.begin(BinaryFrameCodec.REQUEST).putInt(42).putString("taxi-1").putBytes(new byte[]{1, 2, 3}));
+
+        BinaryFrameCodec reader = new BinaryFrameCodec(64);
+        assertEquals(BinaryFrameCodec.REQUEST, reader.readFrom(input(frame)));
+        assertEquals(42, reader.getInt());
+        assertEquals("taxi-1", reader.getString());
+        assertArrayEquals(new byte[]{1, 2, 3}, reader.getBytes());
+        assertFalse(reader.hasMoreFields());
+    }
+
+    @Test
+    void readsConsecutiveFramesFromTheSameStream() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        codec.begin(BinaryFrameCodec.HEARTBEAT).writeTo(out);
+        codec.begin(BinaryFrameCodec.ACK).putInt(7).writeTo(out);
+
+        DataInputStream in = input(bytes.toByteArray());
+        assertEquals(BinaryFrameCodec.HEARTBEAT, codec.readFrom(in));
+        assertFalse(codec.hasMoreFields());
+        assertEquals(BinaryFrameCodec.ACK, codec.readFrom(in));
+        assertEquals(7, codec.getInt());
+    }
+
+    @Test
+    void reportsACorruptedFrameAsInvalid() throws IOException {
+        byte[] frame = write(codec.begin(BinaryFrameCodec.KEY).putString("secret"));
+        frame[frame.length - 6] ^= 0x01;
+
+        assertEquals(BinaryFrameCodec.INVALID, codec.readFrom(input(frame)));
+        assertFalse(codec.hasMoreFields());
+    }
+
+    @Test
+    void rejectsFramesLongerThanTheMaximum() {
+        byte[] frame = {0, 0, 1, 0, BinaryFrameCodec.HEARTBEAT};
+
+        assertThrows(IOException.class, () -> codec.readFrom(input(frame)));
+    }
+
+    @Test
+    void refusesToWriteMoreThanTheMaximum() {
+        codec.begin(BinaryFrameCodec.KEY);
+
+        assertThrows(BufferOverflowException.class, () -> codec.putBytes(new byte[64]));
+    }
+
+    @Test
+    void rejectsFieldsOfTheWrongType() throws IOException {
+        byte[] frame = write(codec.begin(BinaryFrameCodec.REQUEST).putInt(1));
+        codec.readFrom(input(frame));
+
+        assertTrue(codec.hasMoreFields());
+        assertThrows(IOException.class, codec::getString);
+    }
+
+    @Test
+    void rejectsMissingFields() throws IOException {
+        codec.readFrom(input(write(codec.begin(BinaryFrameCodec.EOT))));
+
+        assertThrows(IOException.class, codec::getInt);
+    }
+
+    private static byte[] write(BinaryFrameCodec frame) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        frame.writeTo(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.ec_central.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class HungarianAlgorithmTest {
+
+    // Mismo valor que usa KafkaService para los taxis que no son candidatos de un cliente
+    private static final long NOT_A_CANDIDATE = Integer.MAX_VALUE;
+
+    @Test
+    void findsTheCheapestAssignmentOfASquareMatrix() {
+        long[][] cost = {
+                {4, 1, 3},
+                {2, 0, 5},
+                {3, 2, 2}
+        };
+
+        assertArrayEquals(new int[]{1, 0, 2}, HungarianAlgorithm.assign(cost));
+    }
+
+    @Test
+    void leavesColumnsFreeWhenThereAreMoreColumnsThanRows() {
+        long[][] cost = {
+                {9, 1, 8, 7},
+                {6, 5, 2, 9}
+        };
+
+        assertArrayEquals(new int[]{1, 2}, HungarianAlgorithm.assign(cost));
+    }
+
+    @Test
+    void leavesRowsUnassignedWhenThereAreMoreRowsThanColumns() {
+        long[][] cost = {
+                {5, 9},
+                {1, 7},
+                {8, 2}
+        };
+
+        assertArrayEquals(new int[]{-1, 0, 1}, HungarianAlgorithm.assign(cost));
+    }
+
+    @Test
+    void avoidsPairsThatAreNotCandidates() {
+        long[][] cost = {
+                {1, NOT_A_CANDIDATE},
+                {2, 100}
+        };
+
+        assertArrayEquals(new int[]{0, 1}, HungarianAlgorithm.assign(cost));
+    }
+
+    @Test
+    void reportsNotACandidateWhenNoOtherPairingExists() {
+        long[][] cost = {
+                {1, NOT_A_CANDIDATE},
+                {3, NOT_A_CANDIDATE}
+        };
+
+        // Uno de los dos clientes acaba en una columna sin candidato, que KafkaService descarta
+        assertArrayEquals(new int[]{0, 1}, HungarianAlgorithm.assign(cost));
+    }
+
+    @Test
+    void handlesEmptyMatrices() {
+        assertArrayEquals(new int[0], HungarianAlgorithm.assign(new long[0][0]));
+        assertArrayEquals(new int[]{-1, -1}, HungarianAlgorithm.assign(new long[2][0]));
+    }
+}
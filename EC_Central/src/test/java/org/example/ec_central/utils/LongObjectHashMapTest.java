@@ -0,0 +1,121 @@
+package org.example.ec_central.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongObjectHashMapTest {
+
+    @Test
+    void putsGetsAndRemovesEntries() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+
+        assertNull(map.put(7, "a"));
+        assertEquals("a", map.put(7, "b"));
+        map.put(-3, "c");
+
+        assertEquals("b", map.get(7));
+        assertEquals("c", map.get(-3));
+        assertEquals(2, map.size());
+        assertEquals("b", map.remove(7));
+        assertNull(map.remove(7));
+        assertFalse(map.containsKey(7));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void keepsAClusterThatWrapsAroundTheTableReachableAfterARemoval() {
+        // Claves cuyo hueco ideal es el último de la tabla, y una cuyo hueco ideal es el primero
+        List<Long> last = keysWithIdealSlot(15, 3);
+        long first = keysWithIdealSlot(0, 1).get(0);
+        LongObjectHashMap<String> map = new LongObjectHashMap<>(4);
+        for (long key : last) {
+            map.put(key, "last " + key);
+        }
+        map.put(first, "first");
+
+        // Quitar la cabeza del grupo obliga a desplazar hacia atrás las demás, cruzando el final de la tabla
+        map.remove(last.get(0));
+
+        assertEquals("last " + last.get(1), map.get(last.get(1)));
+        assertEquals("last " + last.get(2), map.get(last.get(2)));
+        assertEquals("first", map.get(first));
+        assertEquals(3, map.size());
+        assertEquals(15, slotOf(map, last.get(1)));
+    }
+
+    @Test
+    void behavesLikeAHashMapUnderRandomPutsAndRemoves() {
+        Random random = new Random(42);
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        for (int operation = 0; operation < 100_000; operation++) {
+            // Pocas claves distintas para que se formen y se deshagan grupos continuamente
+            long key = random.nextInt(96) * 1_000_003L;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                long value = random.nextLong();
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        for (long key = 0; key < 96; key++) {
+            assertEquals(expected.get(key * 1_000_003L), map.get(key * 1_000_003L));
+        }
+        Map<Long, Long> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    void clearKeepsTheMapUsable() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        for (long key = 0; key < 100; key++) {
+            map.put(key, "v");
+        }
+
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get(5));
+        map.put(5, "again");
+        assertEquals("again", map.get(5));
+    }
+
+    private static List<Long> keysWithIdealSlot(int slot, int count) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = 1; keys.size() < count; key++) {
+            // En un mapa vacío la clave ocupa su hueco ideal
+            LongObjectHashMap<String> probe = new LongObjectHashMap<>(4);
+            probe.put(key, "probe");
+            if (slotOf(probe, key) == slot) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static int slotOf(LongObjectHashMap<?> map, long key) {
+        long[] keys = (long[]) ReflectionTestUtils.getField(map, "keys");
+        Object[] values = (Object[]) ReflectionTestUtils.getField(map, "values");
+        assertEquals(16, values.length);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null && keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,76 @@
+package org.example.ec_central.utils;
+
+import org.example.ec_central.model.CustomerStatusDto;
+import org.example.ec_central.model.TaxiState;
+import org.example.ec_central.model.TaxiStatusDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StatusDtoCodecTest {
+
+    @Test
+    void roundTripsATaxiStatus() {
+        TaxiStatusDto decoded = StatusDtoCodec.decodeTaxiStatus(
+                StatusDtoCodec.encode(new TaxiStatusDto("taxi-ñ", 19, 0, TaxiState.EN_ROUTE_TO_DESTINATION, "token")));
+
+        assertEquals("taxi-ñ", decoded.getTaxiId());
+        assertEquals(19, decoded.getX());
+        assertEquals(0, decoded.getY());
+        assertEquals(TaxiState.EN_ROUTE_TO_DESTINATION, decoded.getStatus());
+        assertEquals("token", decoded.getToken());
+    }
+
+    @Test
+    void roundTripsNullsAndNegativeCoordinates() {
+        TaxiStatusDto decoded = StatusDtoCodec.decodeTaxiStatus(
+                StatusDtoCodec.encode(new TaxiStatusDto(null, -1, Integer.MIN_VALUE, null, null)));
+
+        assertNull(decoded.getTaxiId());
+        assertEquals(-1, decoded.getX());
+        assertEquals(Integer.MIN_VALUE, decoded.getY());
+        assertNull(decoded.getStatus());
+        assertNull(decoded.getToken());
+    }
+
+    @Test
+    void roundTripsACustomerStatus() {
+        CustomerStatusDto command = CustomerStatusDto.builder()
+                                                     .taxiId("3").x(1).y(1).status(TaxiState.ASSIGNED)
+                                                     .customerX(5).customerY(6).destX(-1).destY(Integer.MAX_VALUE)
+                                                     .build();
+
+        CustomerStatusDto decoded = StatusDtoCodec.decodeCustomerStatus(StatusDtoCodec.encode(command));
+
+        assertEquals("3", decoded.getTaxiId());
+        assertEquals(TaxiState.ASSIGNED, decoded.getStatus());
+        assertEquals(5, decoded.getCustomerX());
+        assertEquals(6, decoded.getCustomerY());
+        assertEquals(-1, decoded.getDestX());
+        assertEquals(Integer.MAX_VALUE, decoded.getDestY());
+        assertInstanceOf(CustomerStatusDto.class, StatusDtoCodec.decodeTaxiStatus(StatusDtoCodec.encode(command)));
+    }
+
+    @Test
+    void rejectsATaxiStatusWhereACustomerStatusIsExpected() {
+        byte[] data = StatusDtoCodec.encode(new TaxiStatusDto("1", 0, 0, TaxiState.IDLE, "t"));
+
+        assertThrows(IllegalArgumentException.class, () -> StatusDtoCodec.decodeCustomerStatus(data));
+    }
+
+    @Test
+    void rejectsUnknownVersionsAndTruncatedData() {
+        byte[] data = StatusDtoCodec.encode(new TaxiStatusDto("1", 2, 3, TaxiState.IDLE, "t"));
+        byte[] unknownVersion = data.clone();
+        unknownVersion[0] = StatusDtoCodec.VERSION + 1;
+
+        assertThrows(IllegalArgumentException.class, () -> StatusDtoCodec.decodeTaxiStatus(unknownVersion));
+        assertThrows(IllegalArgumentException.class,
+                () -> StatusDtoCodec.decodeTaxiStatus(Arrays.copyOf(data, data.length - 2)));
+    }
+}
@@ -4,6 +4,8 @@ import ch.qos.logback.core.net.server.Client;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.example.ec_customer.service.ClientKafkaListener;
+import org.example.ec_customer.service.LoadGenerator;
+import org.example.ec_customer.utils.SimulationClock;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
@@ -22,6 +24,8 @@ import java.util.concurrent.TimeUnit;
 public class ECCustomerApplication implements CommandLineRunner {
 
     private final KafkaTemplate<String, String> kafkaTemplate;
+    private final LoadGenerator loadGenerator;
+    private final SimulationClock clock;
 
     @Value("${client.id}")
     private String clientId;
@@ -29,11 +33,14 @@ public class ECCustomerApplication implements CommandLineRunner {
     @Value("${spring.kafka.bootstrap-servers}")
     private String brokerAddress;
 
-    @Value("${file}")
+    @Value("${file:}")
     private String serviceRequestsFile;
 
-    public ECCustomerApplication(KafkaTemplate<String, String> kafkaTemplate) {
+    public ECCustomerApplication(KafkaTemplate<String, String> kafkaTemplate, LoadGenerator loadGenerator,
+                                 SimulationClock clock) {
         this.kafkaTemplate = kafkaTemplate;
+        this.loadGenerator = loadGenerator;
+        this.clock = clock;
     }
 
     public static void main(String[] args) {
@@ -42,6 +49,10 @@ public class ECCustomerApplication implements CommandLineRunner {
 
     @Override
     public void run(String... args) throws Exception {
+        if (loadGenerator.isEnabled()) {
+            loadGenerator.run();
+            return;
+        }
         processServiceRequests();
     }
 
@@ -56,7 +67,7 @@ public class ECCustomerApplication implements CommandLineRunner {
                 sendServiceRequest(line.trim());
 
                 // Espera 4 segundos entre solicitudes
-                TimeUnit.SECONDS.sleep(4);
+                clock.sleep(4, TimeUnit.SECONDS);
 
             }
         } catch (IOException | InterruptedException e) {
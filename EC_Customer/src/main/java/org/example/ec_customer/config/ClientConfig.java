@@ -1,10 +1,13 @@
 package org.example.ec_customer.config;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.utils.Utils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Configuration class for client-specific settings.
  */
@@ -15,6 +18,12 @@ public class ClientConfig {
     @Value("${client.id}")
     private String clientId;
 
+    /**
+     * Number of partitions of the shared "customer-responses" topic, must match EC_Central's.
+     */
+    @Value("${messaging.shared-topics.partitions:16}")
+    private int sharedTopicPartitions;
+
     /**
      * Creates a dynamic Kafka topic name based on the client ID.
      *
@@ -25,4 +34,17 @@ public class ClientConfig {
         log.info("Client ID: {}", clientId);
         return "taxi-requests-" + clientId;  // Dynamic topic based on the client ID
     }
-}
\ No newline at end of file
+
+    /**
+     * Computes the partition of the shared "customer-responses" topic that holds this client's messages.
+     * EC_Central keys them by client ID, so the default partitioner's murmur2 hash of the key gives the partition.
+     *
+     * @return the partition number
+     */
+    @Bean
+    public String customerResponsesPartition() {
+        int partition = Utils.toPositive(Utils.murmur2(clientId.getBytes(StandardCharsets.UTF_8))) % sharedTopicPartitions;
+        log.info("Client {} reads partition {} of customer-responses", clientId, partition);
+        return String.valueOf(partition);
+    }
+}
@@ -2,7 +2,10 @@ package org.example.ec_customer.service;
 
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.TopicPartition;
 import org.springframework.stereotype.Service;
 
 import java.util.concurrent.Semaphore;
@@ -13,13 +16,33 @@ public class ClientKafkaListener {
 
     public static Semaphore semaphore = new Semaphore(1);
 
-    @KafkaListener(topics = "#{@clientIdTopic}", groupId = "group")
+    @Value("${client.id}")
+    private String clientId;
+
+    @KafkaListener(id = "clientResponses", topics = "#{@clientIdTopic}", groupId = "group",
+            autoStartup = "#{!${messaging.shared-topics.enabled:false}}")
     public void listenToClientResponses(String message) {
         log.info("Received message from server: {}", message);
 
         processMessage(message);
     }
 
+    /**
+     * Listens to this client's partition of the shared "customer-responses" topic, used when messaging.shared-topics.enabled is set.
+     * The partition is assigned directly instead of through the consumer group, and messages for other clients are skipped.
+     *
+     * @param record the record received
+     */
+    @KafkaListener(id = "sharedClientResponses", groupId = "customer-${client.id}",
+            topicPartitions = @TopicPartition(topic = "customer-responses", partitions = "#{@customerResponsesPartition}"),
+            autoStartup = "${messaging.shared-topics.enabled:false}")
+    public void listenToSharedClientResponses(ConsumerRecord<String, String> record) {
+        if (!clientId.equals(record.key())) {
+            return; // Mensaje para otro cliente de la misma partición
+        }
+        listenToClientResponses(record.value());
+    }
+
     private void processMessage(String message) {
         if (message.startsWith("OK")) {
             log.info("Taxi assigned successfully: {}", message);
@@ -0,0 +1,449 @@
+package org.example.ec_customer.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.example.ec_customer.utils.SimulationClock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service class for generating customer load against EC_Central, used instead of the file-driven single customer
+ * when load.enabled is set.
+ * <p>
+ * Requests arrive following a Poisson process of the configured rate, or in bursts of a fixed size, and each one is
+ * made by an idle simulated customer on its own virtual thread, to a destination drawn from the locations file.
+ * A customer has at most one request in flight, so the replies of EC_Central, keyed by customer, are correlated with
+ * the request by the customer identifier alone. The customers (prefix followed by 1..n) must exist in EC_Central's database.
+ * <p>
+ * At the end it reports the percentiles of the time to assignment (request to OK) and the time to completion (request to END).
+ * Arrivals, duration and times are measured with the {@link SimulationClock}, so with a speed-up they are in simulated time.
+ */
+@Service
+@Slf4j
+public class LoadGenerator {
+
+    private static final String SERVICE_REQUESTS_TOPIC = "service_requests";
+    private static final String SHARED_LISTENER_ID = "loadSharedResponses";
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ResourceLoader resourceLoader;
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    private final SimulationClock clock;
+
+    @Value("${load.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * Number of simulated customers, injected from application properties.
+     */
+    @Value("${load.customers:1000}")
+    private int customers;
+
+    /**
+     * Prefix of the simulated customers' identifiers, injected from application properties.
+     */
+    @Value("${load.customer-prefix:load-}")
+    private String customerPrefix;
+
+    /**
+     * Arrival process, "poisson" or "burst", injected from application properties.
+     */
+    @Value("${load.arrival:poisson}")
+    private String arrival;
+
+    /**
+     * Mean number of requests per second of the Poisson process, injected from application properties.
+     */
+    @Value("${load.rate-per-second:50}")
+    private double ratePerSecond;
+
+    @Value("${load.burst.size:100}")
+    private int burstSize;
+
+    @Value("${load.burst.interval-ms:10000}")
+    private long burstIntervalMs;
+
+    /**
+     * Time during which new requests are generated, injected from application properties.
+     */
+    @Value("${load.duration-s:60}")
+    private long durationSeconds;
+
+    /**
+     * File with the locations used as destinations, in the format of EC_Central's initial_map.txt.
+     */
+    @Value("${load.locations-file:classpath:initial_map.txt}")
+    private String locationsFile;
+
+    /**
+     * Optional weights of the destinations, as "A=3,B=1"; locations not listed weigh 1.
+     */
+    @Value("${load.destination-weights:}")
+    private String destinationWeights;
+
+    @Value("${load.assignment-timeout-ms:60000}")
+    private long assignmentTimeoutMs;
+
+    @Value("${load.completion-timeout-ms:300000}")
+    private long completionTimeoutMs;
+
+    @Value("${load.report-interval-s:10}")
+    private long reportIntervalSeconds;
+
+    @Value("${messaging.shared-topics.enabled:false}")
+    private boolean sharedTopics;
+
+    private final Map<String, Trip> inFlight = new ConcurrentHashMap<>();
+    private final BlockingQueue<String> idleCustomers = new LinkedBlockingQueue<>();
+    private final Samples assignmentTimes = new Samples();
+    private final Samples completionTimes = new Samples();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private volatile long startedAtMillis;
+
+    /**
+     * Constructs a new LoadGenerator.
+     *
+     * @param kafkaTemplate    the template used to send the service requests
+     * @param resourceLoader   the loader of the locations file
+     * @param listenerRegistry the registry of the reply listeners
+     * @param clock            the clock that paces the arrivals and measures the replies
+     */
+    public LoadGenerator(KafkaTemplate<String, String> kafkaTemplate, ResourceLoader resourceLoader,
+                         KafkaListenerEndpointRegistry listenerRegistry, SimulationClock clock) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.resourceLoader = resourceLoader;
+        this.listenerRegistry = listenerRegistry;
+        this.clock = clock;
+    }
+
+    /**
+     * Checks whether the application runs as a load generator.
+     *
+     * @return true if load.enabled is set
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Generates the load for the configured duration, waits for the requests in flight and logs the report.
+     *
+     * @throws IOException          if the locations file cannot be read
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public void run() throws IOException, InterruptedException {
+        Destinations destinations = loadDestinations();
+        for (int i = 1; i <= customers; i++) {
+            idleCustomers.add(customerPrefix + i);
+        }
+        awaitSharedAssignment();
+        startedAtMillis = System.currentTimeMillis();
+        log.info("Generating {} load for {}s with {} customers over {} destinations",
+                arrival, durationSeconds, customers, destinations.identifiers.length);
+
+        ScheduledReporter reporter = new ScheduledReporter();
+        reporter.start();
+        try (ExecutorService rides = Executors.newVirtualThreadPerTaskExecutor()) {
+            long start = clock.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+            long next = start;
+            while (true) {
+                next += nextGapNanos();
+                if (next >= end) {
+                    break;
+                }
+                clock.sleep(next - clock.nanoTime(), TimeUnit.NANOSECONDS);
+                int arrivals = "burst".equalsIgnoreCase(arrival) ? burstSize : 1;
+                for (int i = 0; i < arrivals; i++) {
+                    String customerId = idleCustomers.poll();
+                    if (customerId == null) {
+                        skipped.incrementAndGet(); // Todos los clientes tienen ya una petición en curso
+                        continue;
+                    }
+                    String destination = destinations.next();
+                    rides.submit(() -> ride(customerId, destination));
+                }
+            }
+            log.info("Arrivals finished, waiting for {} requests in flight", inFlight.size());
+        } finally {
+            reporter.interrupt();
+        }
+        report();
+    }
+
+    /**
+     * Listens to the shared "customer-responses" topic when messaging.shared-topics.enabled is set.
+     * Only new replies are read, earlier ones belong to other runs.
+     *
+     * @param record the reply, keyed by customer identifier
+     */
+    @KafkaListener(id = SHARED_LISTENER_ID, topics = "customer-responses", groupId = "load-generator-${client.id}",
+            autoStartup = "#{${load.enabled:false} && ${messaging.shared-topics.enabled:false}}",
+            properties = "auto.offset.reset=latest")
+    public void listenToSharedResponses(ConsumerRecord<String, String> record) {
+        onReply(record.key(), record.value(), record.timestamp());
+    }
+
+    /**
+     * Listens to the per-customer "taxi-requests-" topics of the simulated customers.
+     * EC_Central creates them on the first request, so the pattern is matched again every second to pick them up.
+     *
+     * @param record the reply, keyed by customer identifier
+     */
+    @KafkaListener(id = "loadClientResponses", topicPattern = "taxi-requests-${load.customer-prefix:load-}.*",
+            groupId = "load-generator-${client.id}",
+            autoStartup = "#{${load.enabled:false} && !${messaging.shared-topics.enabled:false}}",
+            properties = "metadata.max.age.ms=1000")
+    public void listenToClientResponses(ConsumerRecord<String, String> record) {
+        String customerId = record.key() != null ? record.key() : record.topic().substring("taxi-requests-".length());
+        onReply(customerId, record.value(), record.timestamp());
+    }
+
+    /**
+     * Makes one request for a customer and waits for its replies.
+     *
+     * @param customerId  the identifier of the customer
+     * @param destination the identifier of the destination
+     */
+    private void ride(String customerId, String destination) {
+        Trip trip = new Trip(clock.nanoTime());
+        inFlight.put(customerId, trip);
+        try {
+            kafkaTemplate.send(SERVICE_REQUESTS_TOPIC, customerId, customerId + "#" + destination);
+            sent.incrementAndGet();
+            if (!trip.assigned.get(realNanos(assignmentTimeoutMs), TimeUnit.NANOSECONDS)) {
+                rejected.incrementAndGet();
+                return;
+            }
+            assignmentTimes.add(trip.assignedAtNanos - trip.sentAtNanos);
+            trip.completed.get(realNanos(completionTimeoutMs), TimeUnit.NANOSECONDS);
+            completionTimes.add(trip.completedAtNanos - trip.sentAtNanos);
+        } catch (TimeoutException e) {
+            timedOut.incrementAndGet();
+            log.warn("Customer {} got no reply in time", customerId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Error in request of customer {}: {}", customerId, e.getMessage());
+        } finally {
+            inFlight.remove(customerId, trip);
+            idleCustomers.offer(customerId);
+        }
+    }
+
+    /**
+     * Correlates a reply of EC_Central with the request in flight of its customer.
+     *
+     * @param customerId  the identifier of the customer
+     * @param message     the reply, "OK...", "KO..." or "END"
+     * @param timestampMs the time the reply was produced
+     */
+    private void onReply(String customerId, String message, long timestampMs) {
+        Trip trip = customerId == null ? null : inFlight.get(customerId);
+        if (trip == null || timestampMs < startedAtMillis) {
+            return; // Respuesta de otra ejecución o de una petición ya abandonada
+        }
+        long now = clock.nanoTime();
+        if (message.startsWith("OK")) {
+            trip.assignedAtNanos = now;
+            trip.assigned.complete(true);
+        } else if (message.equals("END")) {
+            trip.completedAtNanos = now;
+            trip.completed.complete(null);
+        } else {
+            trip.assigned.complete(false);
+        }
+    }
+
+    private long realNanos(long simulatedMs) {
+        return clock.toRealNanos(TimeUnit.MILLISECONDS.toNanos(simulatedMs));
+    }
+
+    private long nextGapNanos() {
+        if ("burst".equalsIgnoreCase(arrival)) {
+            return TimeUnit.MILLISECONDS.toNanos(burstIntervalMs);
+        }
+        // Tiempo entre llegadas exponencial: proceso de Poisson de tasa ratePerSecond
+        double seconds = -Math.log(1 - ThreadLocalRandom.current().nextDouble()) / ratePerSecond;
+        return (long) (seconds * 1_000_000_000L);
+    }
+
+    /**
+     * Waits until the shared listener has its partitions, so that no reply sent before it is lost.
+     */
+    private void awaitSharedAssignment() throws InterruptedException {
+        if (!sharedTopics) {
+            return;
+        }
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(SHARED_LISTENER_ID);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (container != null && (container.getAssignedPartitions() == null || container.getAssignedPartitions().isEmpty())) {
+            if (System.nanoTime() > deadline) {
+                log.warn("Listener of customer-responses has no partitions yet, starting anyway");
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+    }
+
+    private Destinations loadDestinations() throws IOException {
+        Map<String, Integer> weights = new HashMap<>();
+        for (String entry : destinationWeights.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length == 2) {
+                weights.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+            }
+        }
+        List<String> identifiers = new ArrayList<>();
+        List<Integer> cumulative = new ArrayList<>();
+        int total = 0;
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                resourceLoader.getResource(locationsFile).getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] parts = line.trim().split("\\s+");
+                if (parts.length < 3) {
+                    continue;
+                }
+                int weight = weights.getOrDefault(parts[0], 1);
+                if (weight > 0) {
+                    total += weight;
+                    identifiers.add(parts[0]);
+                    cumulative.add(total);
+                }
+            }
+        }
+        if (identifiers.isEmpty()) {
+            throw new IllegalStateException("No destinations in " + locationsFile);
+        }
+        return new Destinations(identifiers.toArray(String[]::new), cumulative.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private void report() {
+        log.info("Load finished: {} sent, {} rejected, {} timed out, {} skipped (no idle customer)",
+                sent.get(), rejected.get(), timedOut.get(), skipped.get());
+        log.info("Time to assignment: {}", assignmentTimes.summary());
+        log.info("Time to completion: {}", completionTimes.summary());
+    }
+
+    /**
+     * Destinations with their cumulative weights, drawn by binary search.
+     */
+    private record Destinations(String[] identifiers, int[] cumulativeWeights) {
+
+        String next() {
+            int total = cumulativeWeights[cumulativeWeights.length - 1];
+            int index = Arrays.binarySearch(cumulativeWeights, ThreadLocalRandom.current().nextInt(total) + 1);
+            return identifiers[index >= 0 ? index : -index - 1];
+        }
+    }
+
+    /**
+     * A request in flight and the times of its replies.
+     */
+    private static final class Trip {
+        private final long sentAtNanos;
+        private final CompletableFuture<Boolean> assigned = new CompletableFuture<>();
+        private final CompletableFuture<Void> completed = new CompletableFuture<>();
+        private volatile long assignedAtNanos;
+        private volatile long completedAtNanos;
+
+        private Trip(long sentAtNanos) {
+            this.sentAtNanos = sentAtNanos;
+        }
+    }
+
+    /**
+     * Latency samples, in nanoseconds.
+     */
+    private static final class Samples {
+        private long[] values = new long[1024];
+        private int size;
+
+        synchronized void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        synchronized int count() {
+            return size;
+        }
+
+        synchronized String summary() {
+            if (size == 0) {
+                return "no samples";
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return String.format("n=%d p50=%dms p90=%dms p99=%dms max=%dms", size,
+                    millis(percentile(sorted, 50)), millis(percentile(sorted, 90)),
+                    millis(percentile(sorted, 99)), millis(sorted[size - 1]));
+        }
+
+        private static long percentile(long[] sorted, int percent) {
+            // Rango más cercano
+            int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+            return sorted[Math.max(rank, 1) - 1];
+        }
+
+        private static long millis(long nanos) {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+    }
+
+    /**
+     * Logs the progress of the run periodically.
+     */
+    private final class ScheduledReporter extends Thread {
+
+        private ScheduledReporter() {
+            super("load-reporter");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isInterrupted()) {
+                    TimeUnit.SECONDS.sleep(reportIntervalSeconds);
+                    log.info("Load progress: {} sent, {} in flight, {} assigned, {} completed, {} rejected, {} timed out",
+                            sent.get(), inFlight.size(), assignmentTimes.count(), completionTimes.count(),
+                            rejected.get(), timedOut.get());
+                }
+            } catch (InterruptedException e) {
+                // Fin de la ejecución
+            }
+        }
+    }
+}
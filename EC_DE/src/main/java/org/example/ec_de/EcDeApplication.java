@@ -26,6 +26,8 @@ public class EcDeApplication implements CommandLineRunner {
     private KafkaService kafkaService;
     @Autowired
     private SocketService socketService;
+    @Autowired
+    private FleetSimulator fleetSimulator;
 
     private ShortestPathFinder shortestPathFinder = new ShortestPathFinder();
 
@@ -35,6 +37,10 @@ public class EcDeApplication implements CommandLineRunner {
 
     @Override
     public void run(String... args) throws Exception {
+        if (fleetSimulator.isEnabled()) {
+            fleetSimulator.run();
+            return;
+        }
         log.info("DE started with id {}", kafkaService.getTaxiId());
         socketService.initialize();
 
@@ -1,9 +1,12 @@
 package org.example.ec_de.config;
 
+import org.apache.kafka.common.utils.Utils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Configuration class for taxi-specific settings.
  */
@@ -13,6 +16,12 @@ public class ClientConfig {
     @Value("${taxi.id}")
     private String taxiId;
 
+    /**
+     * Number of partitions of the shared "taxi-commands" topic, must match EC_Central's.
+     */
+    @Value("${messaging.shared-topics.partitions:16}")
+    private int sharedTopicPartitions;
+
     /**
      * Creates a dynamic Kafka topic name based on the taxi ID.
      *
@@ -22,4 +31,26 @@ public class ClientConfig {
     public String taxiIdTopic() {
         return "taxi-start-service-" + taxiId;  // Dynamic topic based on the taxi ID
     }
-}
\ No newline at end of file
+
+    /**
+     * Computes the partition of the shared "taxi-commands" topic that holds this taxi's commands.
+     * EC_Central keys them by taxi ID, so the default partitioner's murmur2 hash of the key gives the partition.
+     *
+     * @return the partition number
+     */
+    @Bean
+    public String taxiCommandsPartition() {
+        return String.valueOf(partitionFor(taxiId, sharedTopicPartitions));
+    }
+
+    /**
+     * Returns the partition the default Kafka partitioner chooses for a key.
+     *
+     * @param key        the record key
+     * @param partitions the number of partitions of the topic
+     * @return the partition number
+     */
+    public static int partitionFor(String key, int partitions) {
+        return Utils.toPositive(Utils.murmur2(key.getBytes(StandardCharsets.UTF_8))) % partitions;
+    }
+}
@@ -2,6 +2,7 @@ package org.example.ec_de.config;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -48,4 +49,28 @@ public class KafkaConfig {
     public KafkaTemplate<String, String> kafkaTemplate() {
         return new KafkaTemplate<>(producerFactoryString());
     }
-}
\ No newline at end of file
+
+    /**
+     * Creates a ProducerFactory for producing String keys and byte array values.
+     *
+     * @return a ProducerFactory configured with a String key serializer and a byte array value serializer
+     */
+    @Bean
+    public ProducerFactory<String, byte[]> producerFactoryByteArray() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        return new DefaultKafkaProducerFactory<>(configProps);
+    }
+
+    /**
+     * Creates a KafkaTemplate for sending the status updates in the compact binary encoding.
+     *
+     * @return a KafkaTemplate configured with a byte array value serializer
+     */
+    @Bean
+    public KafkaTemplate<String, byte[]> byteArrayKafkaTemplate() {
+        return new KafkaTemplate<>(producerFactoryByteArray());
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.ec_de.model;
+
+import lombok.Getter;
+
+/**
+ * Geometry of the square city grid: either bounded, where the edges are walls, or a torus, where leaving the last
+ * column or row brings a taxi back to the first one.
+ * <p>
+ * Taxis move one cell on each axis per step, so the distance between two cells is the largest of the two axis
+ * offsets; on a torus each offset is the shorter way around. Routing, dispatch distances and the map bounds must
+ * all use the same geometry, configured with city.map.size and city.map.wrap-around.
+ */
+@Getter
+public final class GridGeometry {
+
+    /**
+     * The number of rows and columns of the grid.
+     */
+    private final int size;
+
+    /**
+     * Whether the grid wraps around at the edges.
+     */
+    private final boolean wrapAround;
+
+    /**
+     * Constructs a new GridGeometry.
+     *
+     * @param size       the number of rows and columns of the grid
+     * @param wrapAround whether the grid wraps around at the edges
+     */
+    public GridGeometry(int size, boolean wrapAround) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("City map size must be positive: " + size);
+        }
+        this.size = size;
+        this.wrapAround = wrapAround;
+    }
+
+    /**
+     * Checks whether a position is on the grid. On a torus every position is, once normalized.
+     *
+     * @param x the x-coordinate of the position
+     * @param y the y-coordinate of the position
+     * @return true if the position is on the grid
+     */
+    public boolean contains(int x, int y) {
+        return wrapAround || (x >= 0 && x < size && y >= 0 && y < size);
+    }
+
+    /**
+     * Brings a coordinate onto the grid: wrapped around on a torus, limited to the edges otherwise.
+     *
+     * @param value the coordinate
+     * @return the coordinate inside [0, size)
+     */
+    public int normalize(int value) {
+        return wrapAround ? Math.floorMod(value, size) : Math.max(0, Math.min(size - 1, value));
+    }
+
+    /**
+     * Returns the shortest signed offset along one axis, the way a taxi would move.
+     *
+     * @param from the coordinate of the origin
+     * @param to   the coordinate of the target
+     * @return the offset from the origin to the target, going around the edge on a torus if shorter
+     */
+    public int offset(int from, int to) {
+        if (!wrapAround) {
+            return to - from;
+        }
+        int offset = Math.floorMod(to - from, size);
+        return offset > size / 2 ? offset - size : offset;
+    }
+
+    /**
+     * Returns the number of steps a taxi needs to go from one cell to another.
+     *
+     * @param x1 the x-coordinate of the origin
+     * @param y1 the y-coordinate of the origin
+     * @param x2 the x-coordinate of the target
+     * @param y2 the y-coordinate of the target
+     * @return the number of steps between both cells
+     */
+    public int distance(int x1, int y1, int x2, int y2) {
+        return Math.max(Math.abs(offset(x1, x2)), Math.abs(offset(y1, y2)));
+    }
+}
@@ -0,0 +1,146 @@
+package org.example.ec_de.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the routes planned by a {@link GridRouter}, shared by all the taxis of the process.
+ * <p>
+ * Most legs go between the same few cells: the locations customers travel to and the base the taxis return to.
+ * The routes between every pair of these landmarks are computed up front and kept for good; routes between any
+ * other cells are kept in an LRU of bounded capacity. The grid of the router is fixed for the life of the cache, so
+ * cached routes stay valid; only changing the landmarks recomputes the pinned routes.
+ * <p>
+ * The routes returned are shared and must not be modified.
+ */
+public class RouteCache {
+
+    /**
+     * Cached result of a search that found no route.
+     */
+    private static final int[] NO_ROUTE = new int[0];
+
+    private final int capacity;
+    private final GridRouter router;
+    private List<int[]> landmarks = List.of();
+    private final Map<Long, int[]> pinned = new HashMap<>();
+    private final LinkedHashMap<Long, int[]> recent;
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructs a new RouteCache.
+     *
+     * @param router   the router that plans the routes missing from the cache
+     * @param capacity the maximum number of routes kept besides those between landmarks
+     */
+    public RouteCache(GridRouter router, int capacity) {
+        this.router = router;
+        this.capacity = capacity;
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+                return size() > RouteCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the geometry of the grid the routes follow.
+     *
+     * @return the geometry of the router
+     */
+    public GridGeometry getGeometry() {
+        return router.getGeometry();
+    }
+
+    /**
+     * Replaces the landmarks and computes the routes between every pair of them.
+     *
+     * @param cells the landmark cells, as {x, y} pairs
+     */
+    public synchronized void setLandmarks(Collection<int[]> cells) {
+        List<int[]> copy = new ArrayList<>(cells.size());
+        for (int[] cell : cells) {
+            copy.add(new int[]{cell[0], cell[1]});
+        }
+        this.landmarks = copy;
+        precompute();
+    }
+
+    /**
+     * Returns the cheapest route between two cells, from the cache if possible.
+     *
+     * @param fromX the X coordinate of the start
+     * @param fromY the Y coordinate of the start
+     * @param toX   the X coordinate of the target
+     * @param toY   the Y coordinate of the target
+     * @return the cells of the route after the start, as in {@link GridRouter#route}, or null if the target cannot be reached
+     */
+    public int[] route(int fromX, int fromY, int toX, int toY) {
+        GridGeometry geometry = router.getGeometry();
+        if (!geometry.contains(fromX, fromY) || !geometry.contains(toX, toY)) {
+            return null;
+        }
+        long key = key(geometry, fromX, fromY, toX, toY);
+        synchronized (this) {
+            int[] cached = pinned.get(key);
+            if (cached == null) {
+                cached = recent.get(key);
+            }
+            if (cached != null) {
+                hits++;
+                return cached == NO_ROUTE ? null : cached;
+            }
+            misses++;
+        }
+        // La búsqueda se hace fuera del cerrojo para no bloquear al resto de taxis
+        int[] route = router.route(fromX, fromY, toX, toY);
+        synchronized (this) {
+            recent.put(key, route == null ? NO_ROUTE : route);
+        }
+        return route;
+    }
+
+    /**
+     * Returns the number of queries answered from the cache.
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of queries that needed a search.
+     *
+     * @return the number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private void precompute() {
+        pinned.clear();
+        GridGeometry geometry = router.getGeometry();
+        for (int[] from : landmarks) {
+            for (int[] to : landmarks) {
+                if (geometry.contains(from[0], from[1]) && geometry.contains(to[0], to[1])) {
+                    int[] route = router.route(from[0], from[1], to[0], to[1]);
+                    pinned.put(key(geometry, from[0], from[1], to[0], to[1]), route == null ? NO_ROUTE : route);
+                }
+            }
+        }
+    }
+
+    private static long key(GridGeometry geometry, int fromX, int fromY, int toX, int toY) {
+        long size = geometry.getSize();
+        long from = geometry.normalize(fromY) * size + geometry.normalize(fromX);
+        long to = geometry.normalize(toY) * size + geometry.normalize(toX);
+        return from * size * size + to;
+    }
+}
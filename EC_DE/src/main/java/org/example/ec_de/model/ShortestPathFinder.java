@@ -1,15 +1,29 @@
 package org.example.ec_de.model;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
 /**
  * Class for finding the shortest path for a taxi.
+ * With a {@link RouteCache}, the route of each leg is planned once, around blocked and costly cells, and then followed
+ * step by step; without one, or if the target cannot be reached, the taxi moves straight towards the target.
+ * On a wrap-around map the taxi takes the shorter way around the edges.
  */
 @Getter
 @Setter
 public class ShortestPathFinder {
 
+    /**
+     * The default size of the city map grid.
+     */
+    public static final int DEFAULT_SIZE = 20;
+
+    /**
+     * The geometry of the city map grid. Positions are kept inside [0, size).
+     */
+    private GridGeometry geometry = new GridGeometry(DEFAULT_SIZE, false);
+
     /**
      * The current X coordinate of the taxi.
      */
@@ -30,6 +44,56 @@ public class ShortestPathFinder {
      */
     private TaxiState taxiState = TaxiState.ASSIGNED;
 
+    /**
+     * Cached router over the city grid, or null to move straight towards the target.
+     */
+    private RouteCache routeCache;
+
+    /**
+     * Cells of the planned route, its next step, and the cells it starts from and leads to.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int[] route;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int routeIndex;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int routeStart;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int routeTarget = -1;
+
+    /**
+     * Returns the size of the city map grid.
+     *
+     * @return the number of rows and columns of the grid
+     */
+    public int getSize() {
+        return geometry.getSize();
+    }
+
+    /**
+     * Plans the route from the current position to a target.
+     *
+     * @param endX the X coordinate of the target
+     * @param endY the Y coordinate of the target
+     * @return true if a route was found, false if there is no route cache or the target cannot be reached
+     */
+    public boolean planRoute(int endX, int endY) {
+        endX = clamp(endX);
+        endY = clamp(endY);
+        this.currentX = clamp(currentX);
+        this.currentY = clamp(currentY);
+        int size = geometry.getSize();
+        routeStart = currentY * size + currentX;
+        routeTarget = endY * size + endX;
+        routeIndex = 0;
+        route = routeCache == null ? null : routeCache.route(currentX, currentY, endX, endY);
+        return route != null;
+    }
+
     /**
      * Calculates the next position of the taxi based on the end coordinates.
      *
@@ -38,22 +102,57 @@ public class ShortestPathFinder {
      * @return an array containing the next X and Y coordinates of the taxi
      */
     public int[] getNextPosition(int endX, int endY) {
+        endX = clamp(endX);
+        endY = clamp(endY);
+        this.currentX = clamp(currentX);
+        this.currentY = clamp(currentY);
 
-        if (endX < currentX) {
-            this.currentX = currentX - 1;
-        } else if (endX > currentX) {
-            this.currentX = currentX + 1;
+        int size = geometry.getSize();
+        if (routeCache != null) {
+            // Sin ruta posible hacia el mismo destino no se vuelve a buscar: se avanza en línea recta
+            if (routeTarget != endY * size + endX || (route != null && !isOnRoute())) {
+                planRoute(endX, endY);
+            }
+            if (route != null) {
+                if (routeIndex < route.length) {
+                    int cell = route[routeIndex++];
+                    this.currentX = cell % size;
+                    this.currentY = cell / size;
+                }
+                if (currentY == endY && currentX == endX) {
+                    this.stop = true;
+                }
+                return new int[]{currentX, currentY};
+            }
         }
 
-        if (endY < currentY) {
-            this.currentY = currentY - 1;
-        } else if (endY > currentY) {
-            this.currentY = currentY + 1;
-        }
+        // En un mapa toroidal el desplazamiento puede ir por el otro lado del borde
+        this.currentX = geometry.normalize(currentX + Integer.signum(geometry.offset(currentX, endX)));
+        this.currentY = geometry.normalize(currentY + Integer.signum(geometry.offset(currentY, endY)));
 
         if (currentY == endY && currentX == endX) {
             this.stop = true;
         }
         return new int[]{currentX, currentY};
     }
-}
\ No newline at end of file
+
+    /**
+     * Checks whether the taxi is where the planned route left it; a new command may have moved it.
+     *
+     * @return true if the route can be followed from the current position
+     */
+    private boolean isOnRoute() {
+        int expected = routeIndex == 0 ? routeStart : route[routeIndex - 1];
+        return expected == currentY * geometry.getSize() + currentX;
+    }
+
+    /**
+     * Brings a coordinate onto the city map, limited to its bounds or wrapped around them.
+     *
+     * @param value the coordinate
+     * @return the coordinate inside [0, size)
+     */
+    private int clamp(int value) {
+        return geometry.normalize(value);
+    }
+}
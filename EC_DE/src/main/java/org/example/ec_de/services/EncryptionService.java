@@ -1,12 +1,14 @@
 package org.example.ec_de.services;
 
-import javax.crypto.Cipher;
-import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.*;
+import java.util.Arrays;
 import java.util.Base64;
 
+import org.example.ec_de.utils.CryptoEngine;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -14,6 +16,14 @@ public class EncryptionService {
 
     private final KeyPair rsaKeyPair;
     private PublicKey centralPublicKey; // Clave pública de Central
+    // Clave de sesión negociada con Central y la anterior, que se sigue aceptando durante la rotación
+    private volatile SessionKeys sessionKeys;
+    // Cifradores reutilizados por hilo en lugar de crearlos en cada mensaje
+    private final CryptoEngine cryptoEngine = new CryptoEngine();
+
+    public static final String SESSION_PAYLOAD_PREFIX = "S";
+    // Primer byte de los payloads binarios; los de texto empiezan por un carácter imprimible
+    public static final byte BINARY_PAYLOAD_VERSION = 1;
 
     public EncryptionService() throws Exception {
         // Genera claves RSA (asimétricas) para EC_DE
@@ -22,6 +32,11 @@ public class EncryptionService {
         this.rsaKeyPair = keyPairGenerator.generateKeyPair();
     }
 
+    // Taxis simulados: comparten un par de claves RSA, generar uno por taxi es demasiado lento para miles de ellos
+    public EncryptionService(KeyPair rsaKeyPair) {
+        this.rsaKeyPair = rsaKeyPair;
+    }
+
     // Registrar clave pública de Central
     public void setCentralPublicKey(PublicKey centralPublicKey) {
         this.centralPublicKey = centralPublicKey;
@@ -44,38 +59,38 @@ public class EncryptionService {
 
     // RSA Encryption
     public String encryptWithRSA(String plainText, PublicKey publicKey) throws Exception {
-        Cipher cipher = Cipher.getInstance("RSA");
-        cipher.init(Cipher.ENCRYPT_MODE, publicKey);
-        byte[] encryptedBytes = cipher.doFinal(plainText.getBytes());
+        byte[] encryptedBytes = cryptoEngine.rsaEncrypt(publicKey, plainText.getBytes(StandardCharsets.UTF_8));
         return Base64.getEncoder().encodeToString(encryptedBytes);
     }
 
     public String decryptWithRSA(String encryptedText) throws Exception {
-        Cipher cipher = Cipher.getInstance("RSA");
-        cipher.init(Cipher.DECRYPT_MODE, rsaKeyPair.getPrivate());
-        byte[] decryptedBytes = cipher.doFinal(Base64.getDecoder().decode(encryptedText));
-        return new String(decryptedBytes);
+        byte[] decryptedBytes = cryptoEngine.rsaDecrypt(rsaKeyPair.getPrivate(), Base64.getDecoder().decode(encryptedText));
+        return new String(decryptedBytes, StandardCharsets.UTF_8);
     }
 
     // AES Encryption
     public String encryptWithAES(String plainText, SecretKey secretKey) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-        byte[] encryptedBytes = cipher.doFinal(plainText.getBytes());
+        byte[] encryptedBytes = cryptoEngine.aesEncrypt(secretKey, plainText.getBytes(StandardCharsets.UTF_8));
         return Base64.getEncoder().encodeToString(encryptedBytes);
     }
 
     public String decryptWithAES(String encryptedText, SecretKey secretKey) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.DECRYPT_MODE, secretKey);
-        byte[] decryptedBytes = cipher.doFinal(Base64.getDecoder().decode(encryptedText));
-        return new String(decryptedBytes);
+        byte[] decryptedBytes = cryptoEngine.aesDecrypt(secretKey, Base64.getDecoder().decode(encryptedText));
+        return new String(decryptedBytes, StandardCharsets.UTF_8);
+    }
+
+    public SecretKey generateAESKey() {
+        return cryptoEngine.generateAesKey();
+    }
+
+    // Decodificar una clave pública RSA recibida en Base64
+    public PublicKey decodePublicKey(String encodedKey) throws Exception {
+        return cryptoEngine.decodeRsaPublicKey(Base64.getDecoder().decode(encodedKey));
     }
 
-    public SecretKey generateAESKey() throws Exception {
-        KeyGenerator keyGen = KeyGenerator.getInstance("AES");
-        keyGen.init(256);
-        return keyGen.generateKey();
+    // Acceso directo a las operaciones sobre bytes/ByteBuffer, sin conversiones a String
+    public CryptoEngine getCryptoEngine() {
+        return cryptoEngine;
     }
 
     public String encodeKey(SecretKey secretKey) {
@@ -86,4 +101,84 @@ public class EncryptionService {
         byte[] decodedKey = Base64.getDecoder().decode(encodedKey);
         return new SecretKeySpec(decodedKey, 0, decodedKey.length, "AES");
     }
+
+    ///sesiones
+
+    // Instalar la clave de sesión recibida de Central (cifrada con la clave pública del taxi);
+    // createdAt es el instante del reloj de simulación, en nanosegundos
+    public void installSessionKey(int keyId, String wrappedKey, long createdAt) throws Exception {
+        SessionKey sessionKey = new SessionKey(keyId, decodeKey(decryptWithRSA(wrappedKey)), createdAt);
+        SessionKeys current = sessionKeys;
+        sessionKeys = new SessionKeys(sessionKey, current == null ? null : current.current());
+    }
+
+    // Clave de sesión actual, o null si Central no la ha enviado
+    public SessionKey getSessionKey() {
+        SessionKeys current = sessionKeys;
+        return current == null ? null : current.current();
+    }
+
+    // Clave de sesión con el identificador dado, o null si ya no es válida
+    public SessionKey getSessionKey(int keyId) {
+        SessionKeys current = sessionKeys;
+        if (current == null) {
+            return null;
+        }
+        if (current.current().id() == keyId) {
+            return current.current();
+        }
+        return current.previous() != null && current.previous().id() == keyId ? current.previous() : null;
+    }
+
+    // Olvidar las claves de sesión al cerrar la conexión
+    public void clearSessionKeys() {
+        sessionKeys = null;
+    }
+
+    // AES-GCM: IV aleatorio de 12 bytes delante del texto cifrado; el taxiId va como dato autenticado
+    public String encryptWithAESGCM(String plainText, SecretKey secretKey, String associatedData) throws Exception {
+        byte[] encryptedBytes = cryptoEngine.gcmEncrypt(secretKey, associatedData.getBytes(StandardCharsets.UTF_8),
+                plainText.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(encryptedBytes);
+    }
+
+    public String decryptWithAESGCM(String encryptedText, SecretKey secretKey, String associatedData) throws Exception {
+        byte[] decryptedBytes = cryptoEngine.gcmDecrypt(secretKey, associatedData.getBytes(StandardCharsets.UTF_8),
+                Base64.getDecoder().decode(encryptedText));
+        return new String(decryptedBytes, StandardCharsets.UTF_8);
+    }
+
+    // Payload binario: versión | keyId | longitud y bytes del taxiId | iv||cifrado||tag (el taxiId va como dato autenticado)
+    public byte[] encryptBinaryPayload(byte[] plain, SessionKey sessionKey, String taxiId) throws Exception {
+        byte[] id = taxiId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer out = ByteBuffer.allocate(1 + Integer.BYTES + Short.BYTES + id.length + CryptoEngine.gcmOutputSize(plain.length));
+        out.put(BINARY_PAYLOAD_VERSION).putInt(sessionKey.id()).putShort((short) id.length).put(id);
+        cryptoEngine.gcmEncrypt(sessionKey.key(), id, ByteBuffer.wrap(plain), out);
+        return out.array();
+    }
+
+    // Descifra un payload binario de Central dirigido a este taxi
+    public byte[] decryptBinaryPayload(byte[] payload, String taxiId) throws Exception {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        if (in.get() != BINARY_PAYLOAD_VERSION) {
+            throw new IllegalArgumentException("Versión de payload binario no soportada: " + payload[0]);
+        }
+        int keyId = in.getInt();
+        byte[] id = new byte[in.getShort()];
+        in.get(id);
+        if (!taxiId.equals(new String(id, StandardCharsets.UTF_8))) {
+            throw new IllegalArgumentException("Payload dirigido a otro taxi");
+        }
+        SessionKey sessionKey = getSessionKey(keyId);
+        if (sessionKey == null) {
+            throw new IllegalArgumentException("Clave de sesión desconocida: " + keyId);
+        }
+        return cryptoEngine.gcmDecrypt(sessionKey.key(), id, Arrays.copyOfRange(payload, in.position(), payload.length));
+    }
+
+    public record SessionKey(int id, SecretKey key, long createdAt) {
+    }
+
+    private record SessionKeys(SessionKey current, SessionKey previous) {
+    }
 }
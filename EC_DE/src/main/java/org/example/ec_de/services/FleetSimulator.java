@@ -0,0 +1,206 @@
+package org.example.ec_de.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.example.ec_de.model.RouteCache;
+import org.example.ec_de.model.SensorStatus;
+import org.example.ec_de.utils.SimulationClock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class for hosting a fleet of simulated taxis in one EC_DE process, used instead of the single taxi
+ * when fleet.enabled is set.
+ * <p>
+ * Each simulated taxi has its own {@link SocketService} connection (authentication, session key, heartbeats)
+ * and synthetic sensor stream, each running on a virtual thread, and its own {@link KafkaService} ride logic,
+ * whose {@link RideStateMachine} is advanced by the shared ride scheduler.
+ * The Kafka producers are shared, and the commands of all the taxis are read by one listener and handed to
+ * the taxi they are keyed by. The taxis (prefix followed by 1..n) must exist in EC_Central's database.
+ */
+@Service
+@Slf4j
+public class FleetSimulator {
+
+    private final SocketService socketService;
+    private final KafkaService kafkaService;
+    private final SimulationClock clock;
+
+    @Value("${fleet.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * Number of simulated taxis, injected from application properties.
+     */
+    @Value("${fleet.taxis:100}")
+    private int taxis;
+
+    /**
+     * Prefix of the simulated taxis' identifiers, injected from application properties.
+     */
+    @Value("${fleet.taxi-prefix:sim-}")
+    private String taxiPrefix;
+
+    /**
+     * Number of taxis connected to EC_Central per second during start-up, injected from application properties.
+     */
+    @Value("${fleet.ramp-up-per-second:200}")
+    private int rampUpPerSecond;
+
+    /**
+     * Interval between the readings of each simulated sensor, injected from application properties.
+     */
+    @Value("${fleet.sensor.interval-ms:1000}")
+    private long sensorIntervalMs;
+
+    /**
+     * Probability of a reading being KO, which stops the taxi, injected from application properties.
+     */
+    @Value("${fleet.sensor.ko-probability:0.0}")
+    private double sensorKoProbability;
+
+    @Value("${fleet.report-interval-s:10}")
+    private long reportIntervalSeconds;
+
+    private final Map<String, SimulatedTaxi> fleet = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new FleetSimulator.
+     *
+     * @param socketService the socket service whose configuration the simulated taxis copy
+     * @param kafkaService  the Kafka service whose producers the simulated taxis share
+     * @param clock         the clock that paces the simulated sensors
+     */
+    public FleetSimulator(SocketService socketService, KafkaService kafkaService, SimulationClock clock) {
+        this.socketService = socketService;
+        this.kafkaService = kafkaService;
+        this.clock = clock;
+    }
+
+    /**
+     * Checks whether the process hosts a simulated fleet.
+     *
+     * @return true if fleet.enabled is set
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts the simulated taxis, at most rampUpPerSecond per second, and then logs the state of the fleet periodically.
+     *
+     * @throws Exception if the RSA key pair cannot be generated or the thread is interrupted
+     */
+    public void run() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        KeyPair sharedKeyPair = keyPairGenerator.generateKeyPair();
+
+        log.info("Starting {} simulated taxis {}1..{}{}", taxis, taxiPrefix, taxiPrefix, taxis);
+        long pauseNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rampUpPerSecond);
+        for (int i = 1; i <= taxis; i++) {
+            String taxiId = taxiPrefix + i;
+            SimulatedTaxi taxi = new SimulatedTaxi(taxiId, new EncryptionService(sharedKeyPair));
+            fleet.put(taxiId, taxi);
+            taxi.start();
+            TimeUnit.NANOSECONDS.sleep(pauseNanos);
+        }
+
+        while (true) {
+            TimeUnit.SECONDS.sleep(reportIntervalSeconds);
+            long connected = fleet.values().stream().filter(SimulatedTaxi::isConnected).count();
+            long busy = fleet.values().stream().filter(SimulatedTaxi::isBusy).count();
+            log.info("Fleet: {} taxis, {} connected, {} on a service", fleet.size(), connected, busy);
+            RouteCache routes = kafkaService.getRouteCache();
+            if (routes != null) {
+                log.info("Route cache: {} hits, {} misses", routes.getHits(), routes.getMisses());
+            }
+        }
+    }
+
+    /**
+     * Listens to the per-taxi "taxi-start-service-" topics of the simulated taxis.
+     * EC_Central creates them on the first command, so the pattern is matched again every second to pick them up.
+     *
+     * @param record the command, keyed by taxi identifier
+     */
+    @KafkaListener(id = "fleetTaxiCommands", topicPattern = "taxi-start-service-${fleet.taxi-prefix:sim-}.*",
+            groupId = "fleet-${fleet.taxi-prefix:sim-}",
+            autoStartup = "#{${fleet.enabled:false} && !${messaging.shared-topics.enabled:false}}",
+            properties = "metadata.max.age.ms=1000")
+    public void listenToTaxiCommands(ConsumerRecord<String, byte[]> record) {
+        String taxiId = record.key() != null ? record.key() : record.topic().substring("taxi-start-service-".length());
+        dispatch(taxiId, record.value());
+    }
+
+    /**
+     * Listens to the whole shared "taxi-commands" topic when messaging.shared-topics.enabled is set.
+     *
+     * @param record the command, keyed by taxi identifier
+     */
+    @KafkaListener(id = "fleetSharedTaxiCommands", topics = "taxi-commands", groupId = "fleet-${fleet.taxi-prefix:sim-}",
+            autoStartup = "#{${fleet.enabled:false} && ${messaging.shared-topics.enabled:false}}")
+    public void listenToSharedTaxiCommands(ConsumerRecord<String, byte[]> record) {
+        dispatch(record.key(), record.value());
+    }
+
+    private void dispatch(String taxiId, byte[] payload) {
+        SimulatedTaxi taxi = taxiId == null ? null : fleet.get(taxiId);
+        if (taxi == null) {
+            return; // Orden para un taxi que no es de esta flota
+        }
+        taxi.rides.listenToClientResponses(payload);
+    }
+
+    /**
+     * A simulated taxi: its connection, its ride logic and its sensor.
+     */
+    private final class SimulatedTaxi {
+        private final String taxiId;
+        private final SocketService socket;
+        private final KafkaService rides;
+
+        private SimulatedTaxi(String taxiId, EncryptionService encryptionService) {
+            this.taxiId = taxiId;
+            this.socket = socketService.forTaxi(taxiId, encryptionService);
+            this.rides = kafkaService.forTaxi(taxiId, socket, encryptionService);
+        }
+
+        private void start() {
+            socket.initialize(Thread.ofVirtual().name("taxi-socket-" + taxiId));
+            Thread.ofVirtual().name("taxi-sensor-" + taxiId).start(this::streamSensor);
+        }
+
+        /**
+         * Produces the readings EC_S would send, OK or, with the configured probability, KO.
+         */
+        private void streamSensor() {
+            try {
+                while (true) {
+                    clock.sleep(sensorIntervalMs, TimeUnit.MILLISECONDS);
+                    SensorStatus reading = ThreadLocalRandom.current().nextDouble() < sensorKoProbability
+                            ? SensorStatus.KO : SensorStatus.OK;
+                    SensorService.applyReading(rides.getRideStateMachine(), reading.name());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private boolean isConnected() {
+            return socket.getAuthToken() != null;
+        }
+
+        private boolean isBusy() {
+            return rides.getRideStateMachine().isRiding();
+        }
+    }
+}
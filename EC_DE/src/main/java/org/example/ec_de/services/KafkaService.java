@@ -1,21 +1,39 @@
 package org.example.ec_de.services;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.example.ec_de.utils.MappingUtils;
+import org.example.ec_de.utils.SimulationClock;
+import org.example.ec_de.utils.StatusDtoCodec;
 import org.example.ec_de.model.CustomerStatusDto;
+import org.example.ec_de.model.GridGeometry;
+import org.example.ec_de.model.GridRouter;
+import org.example.ec_de.model.RouteCache;
 import org.example.ec_de.model.ShortestPathFinder;
 import org.example.ec_de.model.TaxiState;
 import org.example.ec_de.model.TaxiStatusDto;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.TopicPartition;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Service class for handling Kafka operations related to taxi directions and
@@ -31,9 +49,19 @@ public class KafkaService {
      * KafkaTemplate for sending messages to Kafka topics.
      */
     private final KafkaTemplate<String, String> kafkaTemplate;
+
+    /**
+     * KafkaTemplate for sending the status updates in the compact binary encoding.
+     */
+    private final KafkaTemplate<String, byte[]> byteArrayKafkaTemplate;
     private final SocketService socketService;
     private final EncryptionService encryptionService;
 
+    /**
+     * Clock that paces the rides.
+     */
+    private final SimulationClock clock;
+
     /**
      * ShortestPathFinder instance for calculating the taxi's path.
      */
@@ -45,6 +73,165 @@ public class KafkaService {
     @Value("${taxi.id}")
     private String taxiId;
 
+    /**
+     * The size of the city map grid, injected from application properties.
+     */
+    @Value("${city.map.size:" + ShortestPathFinder.DEFAULT_SIZE + "}")
+    private int citySize;
+
+    /**
+     * Whether the city map wraps around at the edges, injected from application properties.
+     */
+    @Value("${city.map.wrap-around:false}")
+    private boolean wrapAround;
+
+    /**
+     * Cells the taxis cannot cross, as "x,y;x,y", injected from application properties.
+     */
+    @Value("${city.map.blocked-cells:}")
+    private String blockedCells;
+
+    /**
+     * Cells that cost more than one step to cross, as "x,y=cost;x,y=cost", injected from application properties.
+     */
+    @Value("${city.map.cell-costs:}")
+    private String cellCosts;
+
+    /**
+     * File with the locations customers travel to, in the format of EC_Central's, injected from application properties.
+     */
+    @Value("${locations.file.path:initial_map.txt}")
+    private String locationsFile;
+
+    /**
+     * Number of routes cached besides those between the locations and the base, injected from application properties.
+     */
+    @Value("${city.map.route-cache.capacity:4096}")
+    private int routeCacheCapacity;
+
+    /**
+     * Largest city map routed with A*, injected from application properties. Bigger maps are crossed in a straight
+     * line, since every concurrent search keeps three ints per cell.
+     */
+    @Value("${city.map.routing.max-size:1000}")
+    private int routingMaxSize;
+
+    /**
+     * Geometry of the city map, shared by the simulated taxis of a fleet.
+     */
+    private GridGeometry geometry;
+
+    /**
+     * Routes over the city map, shared by the simulated taxis of a fleet, or null if the map is too big to route.
+     */
+    private RouteCache routeCache;
+
+    /**
+     * Time between two moves of the taxi, injected from application properties.
+     */
+    @Value("${ride.tick-ms:1000}")
+    private long rideTickMs;
+
+    /**
+     * Number of threads timing the ride ticks, injected from application properties.
+     * They only hand each tick to the virtual thread of its taxi, so one is enough even for a whole fleet.
+     */
+    @Value("${ride.scheduler-threads:1}")
+    private int rideSchedulerThreads;
+
+    /**
+     * Scheduler that times the rides, shared by the simulated taxis of a fleet.
+     */
+    private ScheduledExecutorService rideScheduler;
+
+    /**
+     * State machine of the ride in progress.
+     */
+    private RideStateMachine rideStateMachine;
+
+    /**
+     * Applies the configured city geometry to the path finder and creates the ride state machine after the bean is constructed.
+     */
+    @PostConstruct
+    public void configurePathFinder() {
+        if (geometry == null) {
+            geometry = new GridGeometry(citySize, wrapAround);
+            if (citySize <= routingMaxSize) {
+                GridRouter router = GridRouter.fromSpec(geometry, blockedCells, cellCosts);
+                routeCache = new RouteCache(router, routeCacheCapacity);
+                routeCache.setLandmarks(loadLandmarks());
+            } else {
+                log.warn("City map of size {} is bigger than city.map.routing.max-size {}, taxis move in a straight line "
+                        + "and blocked cells are ignored", citySize, routingMaxSize);
+            }
+        }
+        shortestPathFinder.setGeometry(geometry);
+        shortestPathFinder.setRouteCache(routeCache);
+        if (rideScheduler == null) {
+            rideScheduler = Executors.newScheduledThreadPool(rideSchedulerThreads, runnable -> {
+                Thread thread = new Thread(runnable, "ride-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        rideStateMachine = new RideStateMachine(taxiId, shortestPathFinder, clock, rideScheduler, this::publishDirection, rideTickMs);
+    }
+
+    /**
+     * Reads the cells whose routes are computed up front: the base and the locations customers travel to.
+     *
+     * @return the landmark cells, as {x, y} pairs
+     */
+    private List<int[]> loadLandmarks() {
+        List<int[]> landmarks = new ArrayList<>();
+        landmarks.add(new int[]{RideStateMachine.BASE_X, RideStateMachine.BASE_Y});
+        InputStream input = getClass().getClassLoader().getResourceAsStream(locationsFile);
+        if (input == null) {
+            log.warn("Locations file {} not found, only the routes from the base are precomputed", locationsFile);
+            return landmarks;
+        }
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (parts.length == 3) {
+                    landmarks.add(new int[]{Integer.parseInt(parts[1]), Integer.parseInt(parts[2])});
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error reading locations file: {}", e.getMessage());
+        }
+        return landmarks;
+    }
+
+    /**
+     * Stops advancing the rides.
+     */
+    @PreDestroy
+    public void shutdownRideScheduler() {
+        rideScheduler.shutdownNow();
+    }
+
+    /**
+     * Creates the ride logic of a simulated taxi, sharing this service's Kafka producers.
+     *
+     * @param taxiId            the identifier of the simulated taxi
+     * @param socketService     the socket connection of the simulated taxi
+     * @param encryptionService the keys of the simulated taxi
+     * @return a new KafkaService for the simulated taxi
+     */
+    public KafkaService forTaxi(String taxiId, SocketService socketService, EncryptionService encryptionService) {
+        KafkaService taxi = new KafkaService(kafkaTemplate, byteArrayKafkaTemplate, socketService, encryptionService, clock);
+        taxi.setTaxiId(taxiId);
+        taxi.setCitySize(citySize);
+        taxi.setGeometry(geometry);
+        taxi.setRouteCache(routeCache);
+        taxi.setRideTickMs(rideTickMs);
+        taxi.setRideScheduler(rideScheduler);
+        taxi.configurePathFinder();
+        return taxi;
+    }
+
     /**
      * Publishes the direction of the taxi to the Kafka topic "taxi-directions".
      *
@@ -62,8 +249,27 @@ public class KafkaService {
             direction.setToken(socketService.getAuthToken());
             log.info("TOKEN BEFORE SENDING : {}", socketService.getAuthToken());
 
+            // Se usa el id del taxi como clave: sus actualizaciones van a la misma partición y llegan en orden
+            // Con clave de sesión solo se usa cifrado simétrico: S#taxiId#keyId#iv||cifrado
+            EncryptionService.SessionKey sessionKey = encryptionService.getSessionKey();
+            if (sessionKey != null && socketService.isBinaryDtoAccepted()) {
+                // Formato binario compacto en lugar de JSON y Base64
+                byte[] payload = encryptionService.encryptBinaryPayload(StatusDtoCodec.encode(direction), sessionKey, taxiId);
+                byteArrayKafkaTemplate.send("taxi-directions", taxiId, payload);
+                log.info("Published binary session-encrypted Kafka event to taxi-directions");
+                return;
+            }
+
             String message = MappingUtils.map(direction);
 
+            if (sessionKey != null) {
+                String payload = String.join("#", EncryptionService.SESSION_PAYLOAD_PREFIX, taxiId,
+                        String.valueOf(sessionKey.id()), encryptionService.encryptWithAESGCM(message, sessionKey.key(), taxiId));
+                kafkaTemplate.send("taxi-directions", taxiId, payload);
+                log.info("Published session-encrypted Kafka event to taxi-directions");
+                return;
+            }
+
             // Generar clave AES
             SecretKey aesKey = encryptionService.generateAESKey();
 
@@ -78,7 +284,7 @@ public class KafkaService {
             String payload = encryptedAESKey + "#" + encryptedMessage;
 
             // Publicar el payload cifrado en Kafka
-            kafkaTemplate.send("taxi-directions", payload);
+            kafkaTemplate.send("taxi-directions", taxiId, payload);
             log.info("Published encrypted Kafka event to taxi-directions: {}", payload);
 
         } catch (Exception e) {
@@ -87,142 +293,88 @@ public class KafkaService {
     }
 
     /**
-     * Listens for client responses from a dynamically resolved Kafka topic.
+     * Decrypts a message published by EC_Central, either with the session key (S#taxiId#keyId#message)
+     * or, for the legacy format, with the AES key wrapped in the message.
      *
-     * @param encryptedPayload the message received from the Kafka topic
+     * @param encryptedPayload the payload received from Kafka
+     * @return the decrypted message
+     * @throws Exception if the payload is malformed or cannot be decrypted
      */
-    @KafkaListener(topics = "#{@taxiIdTopic}", groupId = "group")
-    public void listenToClientResponses(String encryptedPayload) {
-        log.debug("Recibido mensaje cifrado: {}", encryptedPayload);
-
-        try {
-
-            // Dividir el payload en clave AES cifrada y mensaje cifrado
-            String[] parts = encryptedPayload.split("#", 2);
-            if (parts.length != 2) {
-                throw new IllegalArgumentException(
-                        "Payload inválido. Se esperaba clave AES y mensaje cifrados separados por '#'.");
+    private String decryptCentralPayload(String encryptedPayload) throws Exception {
+        if (encryptedPayload.startsWith(EncryptionService.SESSION_PAYLOAD_PREFIX + "#")) {
+            String[] parts = encryptedPayload.split("#", 4);
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Payload de sesión inválido. Se esperaba S#taxiId#keyId#mensaje.");
             }
-            String encryptedAESKey = parts[0];
-            String encryptedMessage = parts[1];
-
-            // Descifrar la clave AES con la clave privada del taxi
-            String aesKeyEncoded = encryptionService.decryptWithRSA(encryptedAESKey);
-            SecretKey aesKey = encryptionService.decodeKey(aesKeyEncoded);
-
-            // Descifrar el mensaje con AES
-            String decryptedMessage = encryptionService.decryptWithAES(encryptedMessage, aesKey);
-
-            // Mapear el mensaje descifrado a un objeto DTO
-            CustomerStatusDto customerStatusDto = MappingUtils.mapFromString(decryptedMessage, CustomerStatusDto.class);
-
-            shortestPathFinder.setCurrentX(customerStatusDto.getX());
-            shortestPathFinder.setCurrentY(customerStatusDto.getY());
-
-            // If taxi has to return to base, use this logic
-            if (customerStatusDto.getStatus() == TaxiState.RETURNING_TO_BASE) {
-                shortestPathFinder.setTaxiState(TaxiState.RETURNING_TO_BASE);
-                while (shortestPathFinder.getTaxiState() == TaxiState.RETURNING_TO_BASE
-                        || shortestPathFinder.getTaxiState() == TaxiState.STOPPED) {
-                    int[] xy = shortestPathFinder.getNextPosition(1, 1);
-
-                    if (shortestPathFinder.isStop()) {
-                        shortestPathFinder.setStop(false);
-                        break;
-                    }
-
-                    TaxiStatusDto taxiStatusDto;
-                    if (shortestPathFinder.getTaxiState() == TaxiState.RETURNING_TO_BASE) {
-                        taxiStatusDto = new TaxiStatusDto(taxiId, xy[0], xy[1], TaxiState.RETURNING_TO_BASE, null);
-                    } else {
-                        taxiStatusDto = new TaxiStatusDto(taxiId, xy[0], xy[1], TaxiState.STOPPED, null);
-                    }
-                    log.info("Enviando posición: " + xy[0] + "," + xy[1]);
-                    publishDirection(taxiStatusDto);
-                    Thread.sleep(1000);
-                }
-
-                TaxiStatusDto taxiStatusDto = new TaxiStatusDto(taxiId, shortestPathFinder.getCurrentX(),
-                        shortestPathFinder.getCurrentY(), TaxiState.RETURNING_TO_BASE, null);
-                log.info("Enviando posición: " + shortestPathFinder.getCurrentX() + ","
-                        + shortestPathFinder.getCurrentY());
-                publishDirection(taxiStatusDto);
-                return;
+            EncryptionService.SessionKey sessionKey = encryptionService.getSessionKey(Integer.parseInt(parts[2]));
+            if (sessionKey == null) {
+                throw new IllegalArgumentException("Clave de sesión desconocida: " + parts[2]);
             }
+            return encryptionService.decryptWithAESGCM(parts[3], sessionKey.key(), taxiId);
+        }
 
-            shortestPathFinder.setTaxiState(TaxiState.EN_ROUTE_TO_PICKUP);
-
-            while (shortestPathFinder.getTaxiState() == TaxiState.EN_ROUTE_TO_PICKUP
-                    || shortestPathFinder.getTaxiState() == TaxiState.STOPPED) {
-                int[] xy = shortestPathFinder.getNextPosition(customerStatusDto.getCustomerX(),
-                        customerStatusDto.getCustomerY());
-
-                if (shortestPathFinder.isStop()) {
-                    shortestPathFinder.setStop(false);
-                    break;
-                }
-
-                TaxiStatusDto taxiStatusDto;
-                if (shortestPathFinder.getTaxiState() == TaxiState.EN_ROUTE_TO_PICKUP) {
-                    taxiStatusDto = new TaxiStatusDto(taxiId, xy[0], xy[1], TaxiState.EN_ROUTE_TO_PICKUP, null);
-                } else {
-                    taxiStatusDto = new TaxiStatusDto(taxiId, xy[0], xy[1], TaxiState.STOPPED, null);
-                }
-                log.info("Enviando posición: " + xy[0] + "," + xy[1]);
-                publishDirection(taxiStatusDto);
+        // Dividir el payload en clave AES cifrada y mensaje cifrado
+        String[] parts = encryptedPayload.split("#", 2);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException(
+                    "Payload inválido. Se esperaba clave AES y mensaje cifrados separados por '#'.");
+        }
+        String encryptedAESKey = parts[0];
+        String encryptedMessage = parts[1];
 
-                log.info("Enviando posición: " + xy[0] + "," + xy[1]);
-                Thread.sleep(1000);
-            }
+        // Descifrar la clave AES con la clave privada del taxi
+        String aesKeyEncoded = encryptionService.decryptWithRSA(encryptedAESKey);
+        SecretKey aesKey = encryptionService.decodeKey(aesKeyEncoded);
 
-            {
-                TaxiStatusDto taxiStatusDto = new TaxiStatusDto(taxiId,
-                        shortestPathFinder.getCurrentX(),
-                        shortestPathFinder.getCurrentY(),
-                        TaxiState.PICKUP,
-                        null);
-                log.info("Enviando posición: " + shortestPathFinder.getCurrentX() + ","
-                        + shortestPathFinder.getCurrentY());
-                publishDirection(taxiStatusDto);
-                shortestPathFinder.setTaxiState(TaxiState.EN_ROUTE_TO_DESTINATION);
-            }
+        // Descifrar el mensaje con AES
+        return encryptionService.decryptWithAES(encryptedMessage, aesKey);
+    }
 
-            while (shortestPathFinder.getTaxiState() == TaxiState.EN_ROUTE_TO_DESTINATION
-                    || shortestPathFinder.getTaxiState() == TaxiState.STOPPED) {
-                int[] xy = shortestPathFinder.getNextPosition(customerStatusDto.getDestX(),
-                        customerStatusDto.getDestY());
+    /**
+     * Listens to this taxi's partition of the shared "taxi-commands" topic, used when messaging.shared-topics.enabled is set.
+     * The partition is assigned directly instead of through the consumer group, and commands for other taxis are skipped.
+     *
+     * @param record the record received
+     */
+    @KafkaListener(id = "sharedTaxiCommands", groupId = "taxi-${taxi.id}",
+            topicPartitions = @TopicPartition(topic = "taxi-commands", partitions = "#{@taxiCommandsPartition}"),
+            autoStartup = "#{${messaging.shared-topics.enabled:false} && !${fleet.enabled:false}}")
+    public void listenToSharedTaxiCommands(ConsumerRecord<String, byte[]> record) {
+        if (!taxiId.equals(record.key())) {
+            return; // Orden para otro taxi de la misma partición
+        }
+        listenToClientResponses(record.value());
+    }
 
-                TaxiStatusDto taxiStatusDto;
-                if (shortestPathFinder.getTaxiState() == TaxiState.EN_ROUTE_TO_DESTINATION) {
-                    taxiStatusDto = new TaxiStatusDto(taxiId, xy[0], xy[1], TaxiState.EN_ROUTE_TO_DESTINATION, null);
-                } else {
-                    taxiStatusDto = new TaxiStatusDto(taxiId, xy[0], xy[1], TaxiState.STOPPED, null);
-                }
+    /**
+     * Listens for client responses from a dynamically resolved Kafka topic.
+     *
+     * @param encryptedPayload the message received from the Kafka topic, binary or a JSON-carrying string
+     */
+    @KafkaListener(id = "taxiCommands", topics = "#{@taxiIdTopic}", groupId = "group",
+            autoStartup = "#{!${messaging.shared-topics.enabled:false} && !${fleet.enabled:false}}")
+    public void listenToClientResponses(byte[] encryptedPayload) {
+        log.debug("Recibido mensaje cifrado ({} bytes)", encryptedPayload.length);
 
-                publishDirection(taxiStatusDto);
+        try {
 
-                if (shortestPathFinder.isStop()) {
-                    shortestPathFinder.setStop(false);
-                    break;
-                }
+            CustomerStatusDto customerStatusDto;
+            if (encryptedPayload.length > 0 && encryptedPayload[0] == EncryptionService.BINARY_PAYLOAD_VERSION) {
+                customerStatusDto = StatusDtoCodec.decodeCustomerStatus(encryptionService.decryptBinaryPayload(encryptedPayload, taxiId));
+            } else {
+                String decryptedMessage = decryptCentralPayload(new String(encryptedPayload, StandardCharsets.UTF_8));
 
-                log.info("Enviando posición: " + xy[0] + "," + xy[1]);
-                Thread.sleep(1000);
+                // Mapear el mensaje descifrado a un objeto DTO
+                customerStatusDto = MappingUtils.mapFromString(decryptedMessage, CustomerStatusDto.class);
             }
 
-            shortestPathFinder.setTaxiState(TaxiState.DESTINATION_REACHED);
-
-            TaxiStatusDto taxiStatusDto = new TaxiStatusDto(taxiId, shortestPathFinder.getCurrentX(),
-                    shortestPathFinder.getCurrentY(), TaxiState.DESTINATION_REACHED, null);
-            publishDirection(taxiStatusDto);
+            // El recorrido avanza en el planificador: el listener queda libre para la siguiente orden
+            rideStateMachine.start(customerStatusDto);
 
         } catch (NumberFormatException e) {
             log.error("Error al parsear las coordenadas: {}", e.getMessage());
         } catch (IllegalArgumentException e) {
             log.error("Formato de mensaje incorrecto: {}", e.getMessage());
-        } catch (InterruptedException e) {
-            log.error("Error al dormir el hilo: {}", e.getMessage());
-            Thread.currentThread().interrupt(); // Restaurar el estado interrumpido
         } catch (Exception e) {
             log.error("Error inesperado: {}", e.getMessage());
         }
@@ -4,7 +4,9 @@ import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.example.ec_de.config.ClientConfig;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -26,6 +28,12 @@ public class KafkaWaitForStart {
 
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
+
+    @Value("${messaging.shared-topics.enabled:false}")
+    private boolean sharedTopics;
+
+    @Value("${messaging.shared-topics.partitions:16}")
+    private int sharedTopicPartitions;
     /**
      * KafkaConsumer for consuming messages from Kafka topics.
      */
@@ -46,6 +54,13 @@ public class KafkaWaitForStart {
 
         consumer = new KafkaConsumer<>(props);
         log.info("Consumer created with bootstrap servers: {}", bootstrapServers);
+        if (sharedTopics) {
+            // Tópico compartido: se asigna directamente la partición de este taxi
+            TopicPartition partition = new TopicPartition("taxi-commands", ClientConfig.partitionFor(taxiId, sharedTopicPartitions));
+            consumer.assign(Collections.singletonList(partition));
+            log.info("Assigned to partition: {}", partition);
+            return;
+        }
         log.info("Subscribed to topic: taxi-start-service-{}", taxiId);
         consumer.subscribe(Collections.singletonList("taxi-start-service-" + taxiId));
     }
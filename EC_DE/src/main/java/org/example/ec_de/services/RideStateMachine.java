@@ -0,0 +1,285 @@
+package org.example.ec_de.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.ec_de.model.CustomerStatusDto;
+import org.example.ec_de.model.ShortestPathFinder;
+import org.example.ec_de.model.TaxiState;
+import org.example.ec_de.model.TaxiStatusDto;
+import org.example.ec_de.utils.SimulationClock;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * State machine that drives the ride of a taxi on timer ticks instead of blocking the thread that received the command:
+ * {@code ASSIGNED -> EN_ROUTE_TO_PICKUP -> PICKUP -> EN_ROUTE_TO_DESTINATION -> DESTINATION_REACHED},
+ * or {@code RETURNING_TO_BASE} when EC_Central recalls the taxi.
+ * <p>
+ * Every tick moves the taxi one cell and publishes its position. A new command replaces the ride in progress.
+ * A KO from the sensors publishes STOPPED and suspends the ticks until the sensors report OK again,
+ * when the ride continues from the same state. All methods hold the lock of the machine, since commands, sensor
+ * readings and ticks arrive on different threads.
+ * <p>
+ * The shared scheduler only times the ticks: each tick is handed to a virtual thread of its own taxi, which runs the
+ * ticks of that taxi in order, so a taxi whose publish blocks does not hold back the rest of the fleet. The lock is a
+ * {@link ReentrantLock} rather than a monitor so that a virtual thread blocked while holding it does not pin its carrier.
+ */
+@Slf4j
+public class RideStateMachine {
+
+    /**
+     * Cell the taxis return to when recalled.
+     */
+    public static final int BASE_X = 1;
+    public static final int BASE_Y = 1;
+
+    private final String taxiId;
+    private final ShortestPathFinder pathFinder;
+    private final SimulationClock clock;
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<TaxiStatusDto> publisher;
+    private final long tickMs;
+    private final ExecutorService tickExecutor;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private TaxiState state = TaxiState.IDLE;
+    private boolean stopped;
+    private boolean riding;
+    private int pickupX;
+    private int pickupY;
+    private int destX;
+    private int destY;
+    private SimulationClock.Timer ticks;
+    // Se incrementa al cancelar: un tick ya en cola de un recorrido anterior no debe mover el taxi
+    private long generation;
+
+    /**
+     * Constructs a new RideStateMachine.
+     *
+     * @param taxiId     the identifier of the taxi
+     * @param pathFinder the path finder holding the position of the taxi
+     * @param clock      the clock that paces the ticks
+     * @param scheduler  the scheduler that times the ticks, possibly shared with other taxis
+     * @param publisher  the callback that publishes each status update
+     * @param tickMs     the simulated time between two moves, in milliseconds
+     */
+    public RideStateMachine(String taxiId, ShortestPathFinder pathFinder, SimulationClock clock,
+                            ScheduledExecutorService scheduler, Consumer<TaxiStatusDto> publisher, long tickMs) {
+        this.taxiId = taxiId;
+        this.pathFinder = pathFinder;
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.publisher = publisher;
+        this.tickMs = tickMs;
+        // El hilo virtual se crea con el primer tick y queda aparcado entre uno y otro
+        this.tickExecutor = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("ride-" + taxiId).factory());
+    }
+
+    /**
+     * Starts the ride ordered by EC_Central, replacing the one in progress if any.
+     *
+     * @param command the command, with the current position of the taxi and either a customer or RETURNING_TO_BASE
+     */
+    public void start(CustomerStatusDto command) {
+        lock.lock();
+        try {
+            cancelTicks();
+            pathFinder.setCurrentX(command.getX());
+            pathFinder.setCurrentY(command.getY());
+            if (command.getStatus() == TaxiState.RETURNING_TO_BASE) {
+                moveTo(TaxiState.RETURNING_TO_BASE);
+                planLeg(BASE_X, BASE_Y);
+            } else {
+                pickupX = command.getCustomerX();
+                pickupY = command.getCustomerY();
+                destX = command.getDestX();
+                destY = command.getDestY();
+                moveTo(TaxiState.ASSIGNED);
+                moveTo(TaxiState.EN_ROUTE_TO_PICKUP);
+                planLeg(pickupX, pickupY);
+            }
+            riding = true;
+            if (!stopped) {
+                scheduleTicks();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies a reading of the sensors: KO suspends the ride, OK resumes it.
+     *
+     * @param ok whether the sensors report OK
+     */
+    public void onSensorReading(boolean ok) {
+        lock.lock();
+        try {
+            if (ok == !stopped) {
+                return;
+            }
+            stopped = !ok;
+            pathFinder.setTaxiState(stopped ? TaxiState.STOPPED : state);
+            if (!isRiding()) {
+                return;
+            }
+            if (stopped) {
+                cancelTicks();
+                publish(TaxiState.STOPPED);
+            } else {
+                scheduleTicks();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether a ride is in progress, even if suspended.
+     *
+     * @return true if the taxi is on its way somewhere
+     */
+    public boolean isRiding() {
+        lock.lock();
+        try {
+            return riding;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current state of the ride.
+     *
+     * @return the state, not counting a stop
+     */
+    public TaxiState getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether the sensors have stopped the taxi.
+     *
+     * @return true if the taxi is stopped
+     */
+    public boolean isStopped() {
+        lock.lock();
+        try {
+            return stopped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the taxi one cell and publishes the result, changing state on arrival.
+     *
+     * @param scheduledGeneration the generation the tick was scheduled in
+     */
+    private void tick(long scheduledGeneration) {
+        lock.lock();
+        try {
+            if (scheduledGeneration != generation) {
+                return;
+            }
+            try {
+                switch (state) {
+                    case EN_ROUTE_TO_PICKUP -> {
+                        if (step(pickupX, pickupY)) {
+                            moveTo(TaxiState.PICKUP);
+                            publish(TaxiState.PICKUP);
+                            moveTo(TaxiState.EN_ROUTE_TO_DESTINATION);
+                            planLeg(destX, destY);
+                        } else {
+                            publish(TaxiState.EN_ROUTE_TO_PICKUP);
+                        }
+                    }
+                    case EN_ROUTE_TO_DESTINATION -> {
+                        boolean arrived = step(destX, destY);
+                        publish(TaxiState.EN_ROUTE_TO_DESTINATION);
+                        if (arrived) {
+                            moveTo(TaxiState.DESTINATION_REACHED);
+                            publish(TaxiState.DESTINATION_REACHED);
+                            finish();
+                        }
+                    }
+                    case RETURNING_TO_BASE -> {
+                        boolean arrived = step(BASE_X, BASE_Y);
+                        publish(TaxiState.RETURNING_TO_BASE);
+                        if (arrived) {
+                            finish(); // En la base, a la espera de otro servicio
+                        }
+                    }
+                    default -> finish();
+                }
+            } catch (Exception e) {
+                log.error("Error advancing the ride of taxi {}: {}", taxiId, e.getMessage());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Plans the route of a leg once, so that the ticks only follow it.
+     */
+    private void planLeg(int endX, int endY) {
+        if (pathFinder.getRouteCache() != null && !pathFinder.planRoute(endX, endY)) {
+            log.warn("Taxi {}: no route to {},{}, moving straight", taxiId, endX, endY);
+        }
+    }
+
+    /**
+     * Moves the taxi one cell towards a target.
+     *
+     * @return true if the taxi is now at the target
+     */
+    private boolean step(int endX, int endY) {
+        pathFinder.getNextPosition(endX, endY);
+        boolean arrived = pathFinder.isStop();
+        pathFinder.setStop(false);
+        return arrived;
+    }
+
+    private void finish() {
+        riding = false;
+        cancelTicks();
+    }
+
+    private void moveTo(TaxiState next) {
+        log.debug("Taxi {}: {} -> {}", taxiId, state, next);
+        state = next;
+        pathFinder.setTaxiState(stopped ? TaxiState.STOPPED : next);
+    }
+
+    private void publish(TaxiState status) {
+        log.info("Enviando posición: {},{} ({})", pathFinder.getCurrentX(), pathFinder.getCurrentY(), status);
+        publisher.accept(new TaxiStatusDto(taxiId, pathFinder.getCurrentX(), pathFinder.getCurrentY(), status, null));
+    }
+
+    private void scheduleTicks() {
+        cancelTicks();
+        long scheduledGeneration = generation;
+        Runnable tick = () -> tick(scheduledGeneration);
+        // Con el reloj por pasos el tick corre en el hilo que avanza el reloj, como el resto de temporizadores
+        ticks = clock.scheduleAtFixedRate(scheduler, clock.isStepped() ? tick : () -> tickExecutor.execute(tick),
+                0, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTicks() {
+        generation++;
+        if (ticks != null) {
+            ticks.cancel();
+            ticks = null;
+        }
+    }
+}
@@ -3,7 +3,6 @@ package org.example.ec_de.services;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.example.ec_de.model.SensorStatus;
-import org.example.ec_de.model.TaxiState;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -40,6 +39,12 @@ public class SensorService {
     @Value("${sensor.port}")
     private int sensorPort;
 
+    /**
+     * Whether the process hosts a simulated fleet, whose taxis generate their own sensor readings.
+     */
+    @Value("${fleet.enabled:false}")
+    private boolean fleetEnabled;
+
     /**
      * Constructor for SensorService.
      *
@@ -55,6 +60,9 @@ public class SensorService {
      */
     @PostConstruct
     public void startReceiving() {
+        if (fleetEnabled) {
+            return; // Los taxis simulados no tienen EC_S
+        }
         // Execute the reception in a separate thread
         new Thread(() -> {
             try {
@@ -68,9 +76,7 @@ public class SensorService {
                     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
                     String inputLine;
                     while ((inputLine = in.readLine()) != null) {
-                        if (!inputLine.equals(SensorStatus.OK.name())) {
-                            kafkaService.getShortestPathFinder().setTaxiState(TaxiState.STOPPED);
-                        }
+                        applyReading(kafkaService.getRideStateMachine(), inputLine);
                         log.info("Received: {}", inputLine);
                     }
                 }
@@ -83,6 +89,16 @@ public class SensorService {
         }).start();
     }
 
+    /**
+     * Applies a reading of the sensors to a taxi: anything but OK stops it, and OK lets it go on.
+     *
+     * @param rideStateMachine the state machine of the taxi's ride
+     * @param reading          the reading, as sent by EC_S
+     */
+    public static void applyReading(RideStateMachine rideStateMachine, String reading) {
+        rideStateMachine.onSensorReading(reading.equals(SensorStatus.OK.name()));
+    }
+
     /**
      * Closes the sensor connection.
      */
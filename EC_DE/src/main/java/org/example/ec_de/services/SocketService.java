@@ -1,17 +1,22 @@
 package org.example.ec_de.services;
 
 import lombok.extern.slf4j.Slf4j;
+import org.example.ec_de.utils.BinaryFrameCodec;
+import org.example.ec_de.utils.SimulationClock;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.Base64;
-import java.security.KeyFactory;
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service class for handling socket communication with EC_Central.
@@ -22,11 +27,36 @@ public class SocketService {
 
     private final EncryptionService encryptionService;
 
+    /**
+     * Clock that paces the heartbeats and the reconnection attempts.
+     */
+    private final SimulationClock clock;
+
     /**
      * Taxi token
      */
     private String authToken;
 
+    /**
+     * Capability advertised to EC_Central to receive a session key.
+     */
+    private static final String CAPABILITY_SESSION_KEY = "SK";
+
+    /**
+     * Capability advertised to EC_Central to announce that this taxi sends heartbeats.
+     */
+    private static final String CAPABILITY_HEARTBEAT = "HB";
+
+    /**
+     * Capability advertised to EC_Central to switch to binary frames after authentication.
+     */
+    private static final String CAPABILITY_BINARY = "BIN";
+
+    /**
+     * Capability advertised to EC_Central to exchange the status DTOs in the compact binary encoding over Kafka.
+     */
+    private static final String CAPABILITY_BINARY_DTO = "BDTO";
+
     /**
      * Start of Text character.
      */
@@ -55,6 +85,70 @@ public class SocketService {
     @Value("${central.ip}")
     private String centralIp;
 
+    /**
+     * Whether to negotiate a session key with EC_Central, injected from application properties.
+     */
+    @Value("${session-key.enabled:true}")
+    private boolean sessionKeyEnabled;
+
+    /**
+     * Age after which the session key is rotated, in seconds, injected from application properties.
+     */
+    @Value("${session-key.rotation-seconds:600}")
+    private long sessionKeyRotationSeconds;
+
+    /**
+     * Whether to send heartbeats to EC_Central, injected from application properties.
+     */
+    @Value("${heartbeat.enabled:true}")
+    private boolean heartbeatEnabled;
+
+    /**
+     * Interval between heartbeats, in milliseconds, injected from application properties.
+     * Must be well below EC_Central's liveness timeout.
+     */
+    @Value("${heartbeat.interval-ms:5000}")
+    private long heartbeatIntervalMs;
+
+    /**
+     * How long to wait for EC_Central to answer a request, in milliseconds, injected from application properties.
+     */
+    @Value("${heartbeat.read-timeout-ms:15000}")
+    private int readTimeoutMs;
+
+    /**
+     * Whether to offer the binary framing to EC_Central, injected from application properties.
+     */
+    @Value("${protocol.binary.enabled:true}")
+    private boolean binaryEnabled;
+
+    /**
+     * Largest binary frame accepted from EC_Central, injected from application properties.
+     */
+    @Value("${protocol.binary.max-frame-bytes:4096}")
+    private int maxFrameBytes;
+
+    /**
+     * Whether to offer the binary encoding of the status DTOs to EC_Central, injected from application properties.
+     */
+    @Value("${protocol.binary-dto.enabled:true}")
+    private boolean binaryDtoEnabled;
+
+    /**
+     * Whether EC_Central accepted the binary framing for the current connection.
+     */
+    private boolean binaryFraming;
+
+    /**
+     * Whether EC_Central accepted the binary encoding of the status DTOs for the current connection.
+     */
+    private volatile boolean binaryDtoAccepted;
+
+    /**
+     * Codec for the binary frames of the current connection.
+     */
+    private BinaryFrameCodec codec;
+
     /**
      * Socket for the connection to the central server.
      */
@@ -70,8 +164,9 @@ public class SocketService {
      */
     private DataInputStream inputStream;
 
-    public SocketService(EncryptionService encryptionService) {
+    public SocketService(EncryptionService encryptionService, SimulationClock clock) {
         this.encryptionService = encryptionService;
+        this.clock = clock;
     }
 
     /**
@@ -83,12 +178,43 @@ public class SocketService {
         log.info("Central Port: {}", PORT);
     }
 
+    /**
+     * Creates the socket connection of a simulated taxi, with the same configuration as this service.
+     *
+     * @param taxiId            the identifier of the simulated taxi
+     * @param encryptionService the keys of the simulated taxi
+     * @return a new, unconnected SocketService
+     */
+    public SocketService forTaxi(String taxiId, EncryptionService encryptionService) {
+        SocketService taxi = new SocketService(encryptionService, clock);
+        taxi.taxiId = taxiId;
+        taxi.centralIp = centralIp;
+        taxi.sessionKeyEnabled = sessionKeyEnabled;
+        taxi.sessionKeyRotationSeconds = sessionKeyRotationSeconds;
+        taxi.heartbeatEnabled = heartbeatEnabled;
+        taxi.heartbeatIntervalMs = heartbeatIntervalMs;
+        taxi.readTimeoutMs = readTimeoutMs;
+        taxi.binaryEnabled = binaryEnabled;
+        taxi.maxFrameBytes = maxFrameBytes;
+        taxi.binaryDtoEnabled = binaryDtoEnabled;
+        return taxi;
+    }
+
     /**
      * Initializes the socket service and starts the connection process in a new thread.
      */
     public void initialize() {
+        initialize(Thread.ofPlatform());
+    }
+
+    /**
+     * Initializes the socket service and starts the connection process in a thread of the given builder.
+     *
+     * @param threadBuilder the builder of the connection thread, virtual for simulated taxis
+     */
+    public void initialize(Thread.Builder threadBuilder) {
         this.logStartupInfo();
-        new Thread(() -> {
+        threadBuilder.start(() -> {
             while (true) {
 
                 try {
@@ -97,7 +223,7 @@ public class SocketService {
                         keepAlive();
                     } else {
                         log.error("Failed to authenticate with EC_Central.");
-                        Thread.sleep(5000);
+                        clock.sleep(5, TimeUnit.SECONDS);
 
                     }
 
@@ -106,7 +232,7 @@ public class SocketService {
                     closeConnection();
                     try {
                         log.info("Retrying connection in 5 seconds...");
-                        Thread.sleep(5000);
+                        clock.sleep(5, TimeUnit.SECONDS);
                     } catch (InterruptedException interruptedException) {
                         log.error("Interrupted while waiting to reconnect: {}", interruptedException.getMessage());
                     }
@@ -114,7 +240,7 @@ public class SocketService {
                     throw new RuntimeException(e);
                 }
             }
-        }).start();
+        });
     }
 
     /**
@@ -132,7 +258,24 @@ public class SocketService {
     public boolean authenticate() throws IOException {
         connectToCentral();
         // Formato del mensaje de autenticación: AUTH#DigitalEngine#{token}#{taxiID}
-        String authMessage = buildMessage(String.format("AUTH#%s#token123", taxiId));
+        // Las capacidades (SK, HB) se anuncian en un cuarto campo separado por comas
+        List<String> capabilities = new ArrayList<>();
+        if (sessionKeyEnabled) {
+            capabilities.add(CAPABILITY_SESSION_KEY);
+        }
+        if (heartbeatEnabled) {
+            capabilities.add(CAPABILITY_HEARTBEAT);
+        }
+        if (binaryEnabled) {
+            capabilities.add(CAPABILITY_BINARY);
+        }
+        // Los DTO binarios solo viajan cifrados con la clave de sesión
+        if (binaryDtoEnabled && sessionKeyEnabled) {
+            capabilities.add(CAPABILITY_BINARY_DTO);
+        }
+        String authMessage = buildMessage(capabilities.isEmpty()
+                ? String.format("AUTH#%s#token123", taxiId)
+                : String.format("AUTH#%s#token123#%s", taxiId, String.join(",", capabilities)));
         outputStream.writeUTF(authMessage);
         log.info("Sent authentication message: {}", authMessage);
 
@@ -150,10 +293,17 @@ public class SocketService {
             // Dividir los datos recibidos por el separador (FIELD_SEPARATOR: #)
             String[] parts = data.split("#");
 
-            // Verificar si la respuesta es un ACK con token
-            if (parts.length == 2 && "ACK".equals(parts[0])) {
+            // Verificar si la respuesta es un ACK con token (y, opcionalmente, las capacidades aceptadas)
+            if ((parts.length == 2 || parts.length == 3) && "ACK".equals(parts[0])) {
                 String token = parts[1];
                 this.authToken = token;
+                List<String> accepted = parts.length == 3 ? Arrays.asList(parts[2].split(",")) : List.of();
+                this.binaryFraming = accepted.contains(CAPABILITY_BINARY);
+                this.binaryDtoAccepted = accepted.contains(CAPABILITY_BINARY_DTO);
+                if (binaryFraming) {
+                    this.codec = new BinaryFrameCodec(maxFrameBytes);
+                    log.info("EC_Central accepted binary framing.");
+                }
                 log.info("Authentication successful. Token: {}", token);
                 return true;
             } else {
@@ -180,11 +330,13 @@ public class SocketService {
 
             // Recibir clave pública de Central
             String centralPublicKeyBase64 = inputStream.readUTF();
-            byte[] centralPublicKeyBytes = Base64.getDecoder().decode(centralPublicKeyBase64);
-            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-            PublicKey centralPublicKey = keyFactory.generatePublic(new X509EncodedKeySpec(centralPublicKeyBytes));
+            PublicKey centralPublicKey = encryptionService.decodePublicKey(centralPublicKeyBase64);
             encryptionService.setCentralPublicKey(centralPublicKey);
             log.info("Received and stored EC_Central's public key.{}", centralPublicKey);
+
+            if (sessionKeyEnabled) {
+                installSessionKey(inputStream.readUTF());
+            }
         } catch (Exception e) {
             log.error("Error during key exchange with EC_Central: {}", e.getMessage());
             throw new IOException("Public key exchange failed", e);
@@ -194,6 +346,111 @@ public class SocketService {
 
 
 
+    /**
+     * Installs the session key sent by EC_Central in a KEY#keyId#wrappedKey message.
+     *
+     * @param message the framed message
+     * @return the identifier of the installed key
+     * @throws Exception if the message is invalid or the key cannot be unwrapped
+     */
+    private int installSessionKey(String message) throws Exception {
+        if (!isValidMessage(message)) {
+            throw new IllegalArgumentException("Invalid session key message");
+        }
+        String[] parts = extractData(message).split("#");
+        if (parts.length != 3 || !"KEY".equals(parts[0])) {
+            throw new IllegalArgumentException("Unexpected session key message: " + parts[0]);
+        }
+        int keyId = Integer.parseInt(parts[1]);
+        encryptionService.installSessionKey(keyId, parts[2], clock.nanoTime());
+        log.info("Session key {} installed.", keyId);
+        return keyId;
+    }
+
+    /**
+     * Asks EC_Central for a new session key once the current one is older than the rotation interval.
+     * The previous key stays valid on both sides, so messages already in Kafka can still be read.
+     * Once the new key is installed it is confirmed to EC_Central, which keeps encrypting with the old key until then.
+     * The age is measured on the simulation clock, so rotation keeps pace with the rest of the simulation.
+     */
+    private void rotateSessionKeyIfDue() {
+        EncryptionService.SessionKey sessionKey = encryptionService.getSessionKey();
+        if (sessionKey == null
+                || clock.nanoTime() - sessionKey.createdAt() < TimeUnit.SECONDS.toNanos(sessionKeyRotationSeconds)) {
+            return;
+        }
+        try {
+            boolean confirmed;
+            if (binaryFraming) {
+                int keyId = installSessionKey(sendFrame(BinaryFrameCodec.REKEY));
+                confirmed = sendKeyAck(keyId) == BinaryFrameCodec.ACK;
+            } else {
+                int keyId = installSessionKey(sendRequest("REKEY"));
+                String response = sendRequest("KEYACK#" + keyId);
+                confirmed = isValidMessage(response) && extractData(response).startsWith("ACK");
+            }
+            if (!confirmed) {
+                log.warn("EC_Central did not confirm the new session key.");
+            }
+        } catch (Exception e) {
+            log.error("Error rotating session key: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Sends a request to EC_Central over the socket and waits for its response.
+     *
+     * @param data the data of the request, without framing
+     * @return the framed response
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized String sendRequest(String data) throws IOException {
+        outputStream.writeUTF(buildMessage(data));
+        return inputStream.readUTF();
+    }
+
+    /**
+     * Sends a frame without fields to EC_Central over the socket and waits for its response.
+     * The fields of the response can then be read from the codec.
+     *
+     * @param type the type of the frame
+     * @return the type of the response frame
+     * @throws IOException if an I/O error occurs
+     */
+    private synchronized byte sendFrame(byte type) throws IOException {
+        codec.begin(type).writeTo(outputStream);
+        return codec.readFrom(inputStream);
+    }
+
+    /**
+     * Sends a KEY_ACK frame confirming an installed session key and waits for EC_Central's response.
+     *
+     * @param keyId the identifier of the installed key
+     * @return the type of the response frame
+     * @throws IOException if an I/O error occurs
+     */
+    private synchronized byte sendKeyAck(int keyId) throws IOException {
+        codec.begin(BinaryFrameCodec.KEY_ACK).putInt(keyId).writeTo(outputStream);
+        return codec.readFrom(inputStream);
+    }
+
+    /**
+     * Installs the session key sent by EC_Central in a binary KEY frame (key id, wrapped key).
+     *
+     * @param responseType the type of the frame received
+     * @return the identifier of the installed key
+     * @throws Exception if the frame is not a KEY frame or the key cannot be unwrapped
+     */
+    private int installSessionKey(byte responseType) throws Exception {
+        if (responseType != BinaryFrameCodec.KEY) {
+            throw new IllegalArgumentException("Unexpected session key frame: " + responseType);
+        }
+        int keyId = codec.getInt();
+        encryptionService.installSessionKey(keyId, codec.getString(), clock.nanoTime());
+        log.info("Session key {} installed.", keyId);
+        return keyId;
+    }
+
     /**
      * Connects to the central server.
      *
@@ -201,25 +458,33 @@ public class SocketService {
      */
     private void connectToCentral() throws IOException {
         this.socket = new Socket(centralIp, PORT);
+        // Sin timeout, una Central caída sin cerrar la conexión dejaría la lectura bloqueada para siempre
+        this.socket.setSoTimeout(readTimeoutMs);
         this.outputStream = new DataOutputStream(socket.getOutputStream());
-        this.inputStream = new DataInputStream(socket.getInputStream());
+        this.inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
         log.info("Connected to EC_Central.");
     }
 
     /**
-     * Keeps the connection alive by sleeping the thread.
+     * Keeps the connection alive, sending a heartbeat to EC_Central every interval.
+     * Returns when the connection is lost so that the connection thread authenticates again.
      */
     public void keepAlive() {
+        long interval = heartbeatEnabled ? heartbeatIntervalMs : 5000;
         try {
             while (true) {
                 if (socket == null || socket.isClosed() || !socket.isConnected()) {
                     log.error("Connection lost. Attempting to reconnect...");
                     closeConnection();
-                    initialize(); // Intentar reconectar
-                    break; // Sal del bucle y vuelve a iniciar la conexión
+                    return; // El hilo de conexión vuelve a autenticarse
+                }
+                if (heartbeatEnabled && !sendHeartbeat()) {
+                    log.error("Heartbeat not acknowledged. Attempting to reconnect...");
+                    closeConnection();
+                    return;
                 }
-                log.info("Connection is alive.");
-                Thread.sleep(5000);
+                rotateSessionKeyIfDue();
+                clock.sleep(interval, TimeUnit.MILLISECONDS);
             }
         } catch (InterruptedException e) {
             log.error("Thread interrupted: {}", e.getMessage());
@@ -228,6 +493,24 @@ public class SocketService {
         }
     }
 
+    /**
+     * Sends a heartbeat to EC_Central and waits for its ACK.
+     *
+     * @return true if EC_Central acknowledged the heartbeat, false otherwise
+     */
+    private boolean sendHeartbeat() {
+        try {
+            if (binaryFraming) {
+                return sendFrame(BinaryFrameCodec.HEARTBEAT) == BinaryFrameCodec.ACK;
+            }
+            String response = sendRequest(CAPABILITY_HEARTBEAT);
+            return isValidMessage(response) && extractData(response).startsWith("ACK");
+        } catch (IOException e) {
+            log.error("Error sending heartbeat: {}", e.getMessage());
+            return false;
+        }
+    }
+
 
     /**
      * Closes the socket connection.
@@ -242,6 +525,9 @@ public class SocketService {
             log.error("Error while closing the connection: {}", e.getMessage());
         } finally {
             authToken = null; // Limpiar el token al cerrar la conexión
+            binaryFraming = false;
+            binaryDtoAccepted = false;
+            encryptionService.clearSessionKeys();
             log.info("Authentication token cleared.");
         }
     }
@@ -298,6 +584,15 @@ public class SocketService {
         return message.substring(1, message.indexOf(ETX));
     }
 
+    /**
+     * Checks whether EC_Central accepted the binary encoding of the status DTOs.
+     *
+     * @return true if status updates can be published in binary
+     */
+    public boolean isBinaryDtoAccepted() {
+        return binaryDtoAccepted;
+    }
+
     /**
      * Returns the authentication token.
      *
@@ -0,0 +1,281 @@
+package org.example.ec_de.utils;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Low-level cryptographic operations on bytes.
+ * Cipher, KeyGenerator and KeyFactory instances are expensive to look up and are not thread-safe,
+ * so they are created once and re-initialised for every operation. The sets are shared by every engine:
+ * each platform thread keeps its own, and virtual threads, which are created per connection or per taxi and would
+ * never reuse theirs, borrow one from a bounded pool for the length of a single operation.
+ * The {@link ByteBuffer} methods write into caller-provided buffers and allocate nothing on the message path.
+ * The transformations are the ones used on the wire: "RSA", "AES" and "AES/GCM/NoPadding".
+ */
+public class CryptoEngine {
+
+    public static final int GCM_IV_LENGTH = 12;
+    public static final int GCM_TAG_LENGTH = 16;
+
+    /**
+     * Number of sets kept for virtual threads; more are created under contention and then dropped.
+     */
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static final ThreadLocal<Instances> PER_THREAD = ThreadLocal.withInitial(Instances::new);
+    private static final BlockingQueue<Instances> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /**
+     * Encrypts with AES-GCM, writing a random IV followed by the ciphertext and tag.
+     *
+     * @param key            the AES key
+     * @param associatedData data authenticated but not encrypted
+     * @param plain          the plaintext, consumed from its position to its limit
+     * @param out            the buffer receiving IV, ciphertext and tag, needs {@link #gcmOutputSize(int)} bytes
+     * @return the number of bytes written
+     * @throws GeneralSecurityException if encryption fails
+     */
+    public int gcmEncrypt(SecretKey key, byte[] associatedData, ByteBuffer plain, ByteBuffer out) throws GeneralSecurityException {
+        Instances local = acquire();
+        try {
+            byte[] iv = local.iv;
+            local.random.nextBytes(iv);
+            Cipher cipher = local.gcm;
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
+            cipher.updateAAD(associatedData);
+            out.put(iv);
+            return GCM_IV_LENGTH + cipher.doFinal(plain, out);
+        } finally {
+            release(local);
+        }
+    }
+
+    /**
+     * Decrypts an AES-GCM message written by {@link #gcmEncrypt(SecretKey, byte[], ByteBuffer, ByteBuffer)}.
+     *
+     * @param key            the AES key
+     * @param associatedData the same associated data used to encrypt
+     * @param in             IV, ciphertext and tag, consumed from its position to its limit
+     * @param out            the buffer receiving the plaintext
+     * @return the number of bytes written
+     * @throws GeneralSecurityException if the message was tampered with or the key is wrong
+     */
+    public int gcmDecrypt(SecretKey key, byte[] associatedData, ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+        Instances local = acquire();
+        try {
+            byte[] iv = local.iv;
+            in.get(iv);
+            Cipher cipher = local.gcm;
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
+            cipher.updateAAD(associatedData);
+            return cipher.doFinal(in, out);
+        } finally {
+            release(local);
+        }
+    }
+
+    /**
+     * Encrypts with AES-GCM into a new array holding IV, ciphertext and tag.
+     *
+     * @param key            the AES key
+     * @param associatedData data authenticated but not encrypted
+     * @param plain          the plaintext
+     * @return the encrypted message
+     * @throws GeneralSecurityException if encryption fails
+     */
+    public byte[] gcmEncrypt(SecretKey key, byte[] associatedData, byte[] plain) throws GeneralSecurityException {
+        byte[] out = new byte[gcmOutputSize(plain.length)];
+        gcmEncrypt(key, associatedData, ByteBuffer.wrap(plain), ByteBuffer.wrap(out));
+        return out;
+    }
+
+    /**
+     * Decrypts an AES-GCM message into a new array.
+     *
+     * @param key            the AES key
+     * @param associatedData the same associated data used to encrypt
+     * @param message        IV, ciphertext and tag
+     * @return the plaintext
+     * @throws GeneralSecurityException if the message was tampered with or the key is wrong
+     */
+    public byte[] gcmDecrypt(SecretKey key, byte[] associatedData, byte[] message) throws GeneralSecurityException {
+        if (message.length < GCM_IV_LENGTH + GCM_TAG_LENGTH) {
+            throw new GeneralSecurityException("GCM message too short");
+        }
+        byte[] out = new byte[message.length - GCM_IV_LENGTH - GCM_TAG_LENGTH];
+        gcmDecrypt(key, associatedData, ByteBuffer.wrap(message), ByteBuffer.wrap(out));
+        return out;
+    }
+
+    /**
+     * Returns the size of an AES-GCM message for a plaintext of the given length.
+     *
+     * @param plainLength the plaintext length
+     * @return the length of IV, ciphertext and tag
+     */
+    public static int gcmOutputSize(int plainLength) {
+        return GCM_IV_LENGTH + plainLength + GCM_TAG_LENGTH;
+    }
+
+    /**
+     * Encrypts with AES in the provider's default mode, as used by the legacy message format.
+     *
+     * @param key   the AES key
+     * @param plain the plaintext
+     * @return the ciphertext
+     * @throws GeneralSecurityException if encryption fails
+     */
+    public byte[] aesEncrypt(SecretKey key, byte[] plain) throws GeneralSecurityException {
+        Instances local = acquire();
+        try {
+            Cipher cipher = local.aes;
+            cipher.init(Cipher.ENCRYPT_MODE, key);
+            return cipher.doFinal(plain);
+        } finally {
+            release(local);
+        }
+    }
+
+    /**
+     * Decrypts a legacy AES message.
+     *
+     * @param key        the AES key
+     * @param ciphertext the ciphertext
+     * @return the plaintext
+     * @throws GeneralSecurityException if decryption fails
+     */
+    public byte[] aesDecrypt(SecretKey key, byte[] ciphertext) throws GeneralSecurityException {
+        Instances local = acquire();
+        try {
+            Cipher cipher = local.aes;
+            cipher.init(Cipher.DECRYPT_MODE, key);
+            return cipher.doFinal(ciphertext);
+        } finally {
+            release(local);
+        }
+    }
+
+    /**
+     * Encrypts with RSA.
+     *
+     * @param key   the public key
+     * @param plain the plaintext
+     * @return the ciphertext
+     * @throws GeneralSecurityException if encryption fails
+     */
+    public byte[] rsaEncrypt(PublicKey key, byte[] plain) throws GeneralSecurityException {
+        Instances local = acquire();
+        try {
+            Cipher cipher = local.rsa;
+            cipher.init(Cipher.ENCRYPT_MODE, key);
+            return cipher.doFinal(plain);
+        } finally {
+            release(local);
+        }
+    }
+
+    /**
+     * Decrypts with RSA.
+     *
+     * @param key        the private key
+     * @param ciphertext the ciphertext
+     * @return the plaintext
+     * @throws GeneralSecurityException if decryption fails
+     */
+    public byte[] rsaDecrypt(PrivateKey key, byte[] ciphertext) throws GeneralSecurityException {
+        Instances local = acquire();
+        try {
+            Cipher cipher = local.rsa;
+            cipher.init(Cipher.DECRYPT_MODE, key);
+            return cipher.doFinal(ciphertext);
+        } finally {
+            release(local);
+        }
+    }
+
+    /**
+     * Generates a new 256-bit AES key.
+     *
+     * @return the key
+     */
+    public SecretKey generateAesKey() {
+        Instances local = acquire();
+        try {
+            return local.keyGenerator.generateKey();
+        } finally {
+            release(local);
+        }
+    }
+
+    /**
+     * Decodes an X.509-encoded RSA public key.
+     *
+     * @param encoded the encoded key
+     * @return the public key
+     * @throws GeneralSecurityException if the key is invalid
+     */
+    public PublicKey decodeRsaPublicKey(byte[] encoded) throws GeneralSecurityException {
+        Instances local = acquire();
+        try {
+            return local.rsaKeyFactory.generatePublic(new X509EncodedKeySpec(encoded));
+        } finally {
+            release(local);
+        }
+    }
+
+    /**
+     * Takes the set of the current platform thread, or borrows one from the pool on a virtual thread.
+     *
+     * @return the set to use for one operation, to be given back with {@link #release(Instances)}
+     */
+    private static Instances acquire() {
+        if (!Thread.currentThread().isVirtual()) {
+            return PER_THREAD.get();
+        }
+        Instances pooled = POOL.poll();
+        return pooled != null ? pooled : new Instances();
+    }
+
+    private static void release(Instances local) {
+        if (Thread.currentThread().isVirtual()) {
+            POOL.offer(local); // Si el pool está lleno, el juego sobrante se descarta
+        }
+    }
+
+    /**
+     * The cryptographic objects used by one operation at a time.
+     */
+    private static final class Instances {
+        private final Cipher gcm;
+        private final Cipher aes;
+        private final Cipher rsa;
+        private final KeyGenerator keyGenerator;
+        private final KeyFactory rsaKeyFactory;
+        private final SecureRandom random = new SecureRandom();
+        private final byte[] iv = new byte[GCM_IV_LENGTH];
+
+        private Instances() {
+            try {
+                gcm = Cipher.getInstance("AES/GCM/NoPadding");
+                aes = Cipher.getInstance("AES");
+                rsa = Cipher.getInstance("RSA");
+                keyGenerator = KeyGenerator.getInstance("AES");
+                keyGenerator.init(256, random);
+                rsaKeyFactory = KeyFactory.getInstance("RSA");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Cryptographic algorithms not available", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.example.ec_de.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GridRouterTest {
+
+    @Test
+    void goesStraightOnAnOpenGrid() {
+        GridRouter router = GridRouter.fromSpec(new GridGeometry(10, false), "", "");
+
+        assertEquals(9, router.route(0, 0, 9, 9).length);
+        assertArrayEquals(new int[0], router.route(4, 4, 4, 4));
+    }
+
+    @Test
+    void doesNotCutTheCornerOfABlockedCell() {
+        GridRouter router = GridRouter.fromSpec(new GridGeometry(10, false), "1,0", "");
+
+        // La diagonal (0,0) -> (1,1) rozaría la esquina de (1,0): hay que pasar por (0,1)
+        assertArrayEquals(new int[]{10, 11}, router.route(0, 0, 1, 1));
+    }
+
+    @Test
+    void goesAroundAWallThroughItsGap() {
+        GridRouter router = GridRouter.fromSpec(new GridGeometry(5, false), "2,0;2,1;2,2;2,3", "");
+
+        int[] route = router.route(0, 0, 4, 0);
+
+        assertEquals(10, route.length);
+        assertEquals(4, route[route.length - 1]);
+        assertTrue(Arrays.stream(route).anyMatch(cell -> cell == 4 * 5 + 2));
+        assertTrue(Arrays.stream(route).allMatch(cell -> router.isPassable(cell % 5, cell / 5)));
+    }
+
+    @Test
+    void returnsNullWhenTheTargetCannotBeReached() {
+        GridRouter router = GridRouter.fromSpec(new GridGeometry(5, false), "3,4;4,3;3,3", "");
+
+        assertNull(router.route(0, 0, 4, 4));
+        assertNull(router.route(0, 0, 3, 3));
+        assertNull(router.route(0, 0, 5, 0));
+    }
+
+    @Test
+    void avoidsCostlyCellsWhenADetourIsCheaper() {
+        GridRouter router = GridRouter.fromSpec(new GridGeometry(5, false), "", "1,0=10;2,0=10;3,0=10");
+
+        int[] route = router.route(0, 0, 4, 0);
+
+        assertEquals(4, route.length);
+        assertTrue(Arrays.stream(route).allMatch(cell -> cell / 5 == 1 || cell == 4));
+    }
+
+    @Test
+    void crossesTheEdgesOfAWrapAroundMap() {
+        GridRouter wrapped = GridRouter.fromSpec(new GridGeometry(20, true), "", "");
+        GridRouter bounded = GridRouter.fromSpec(new GridGeometry(20, false), "", "");
+
+        assertArrayEquals(new int[]{19 * 20 + 19}, wrapped.route(0, 0, 19, 19));
+        assertEquals(19, bounded.route(0, 0, 19, 19).length);
+    }
+
+    @Test
+    void respectsBlockedCornersAcrossTheEdge() {
+        // En un toro (0,19) y (19,0) cierran las esquinas entre (0,0) y (19,19): sin cortarlas hay que rodearlas, seis pasos
+        GridRouter router = GridRouter.fromSpec(new GridGeometry(20, true), "0,19;19,0", "");
+
+        int[] route = router.route(0, 0, 19, 19);
+
+        assertEquals(6, route.length);
+        assertEquals(19 * 20 + 19, route[5]);
+    }
+
+    @Test
+    void sharesTheSearchStateBetweenThreads() throws Exception {
+        int[] costs = new int[30 * 30];
+        Arrays.fill(costs, 1);
+        for (int y = 0; y < 29; y++) {
+            costs[y * 30 + 15] = GridRouter.BLOCKED;
+        }
+        // Dos conjuntos de búsqueda para ocho hilos: los demás esperan turno
+        GridRouter router = new GridRouter(new GridGeometry(30, false), costs, 2);
+        int[] expected = router.route(0, 0, 29, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<int[]>> routes = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                routes.add(executor.submit(() -> router.route(0, 0, 29, 0)));
+            }
+            for (Future<int[]> route : routes) {
+                assertArrayEquals(expected, route.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.ec_de.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class RouteCacheTest {
+
+    private final GridRouter router = GridRouter.fromSpec(new GridGeometry(10, false), "5,0;5,1;5,2", "");
+
+    @Test
+    void answersLandmarkRoutesWithoutSearching() {
+        RouteCache cache = new RouteCache(router, 8);
+        cache.setLandmarks(List.of(new int[]{1, 1}, new int[]{8, 1}, new int[]{3, 7}));
+
+        assertArrayEquals(router.route(1, 1, 8, 1), cache.route(1, 1, 8, 1));
+        assertArrayEquals(router.route(3, 7, 1, 1), cache.route(3, 7, 1, 1));
+        assertEquals(2, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    void keepsOtherRoutesAfterTheFirstSearch() {
+        RouteCache cache = new RouteCache(router, 8);
+
+        int[] first = cache.route(0, 0, 9, 9);
+        int[] second = cache.route(0, 0, 9, 9);
+
+        assertSame(first, second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedRoute() {
+        RouteCache cache = new RouteCache(router, 2);
+
+        cache.route(0, 0, 9, 9);
+        cache.route(0, 9, 9, 0);
+        cache.route(0, 0, 9, 9); // La primera pasa a ser la más reciente
+        cache.route(2, 2, 7, 7); // Expulsa la segunda
+        cache.route(0, 0, 9, 9);
+        cache.route(0, 9, 9, 0);
+
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    void landmarkRoutesAreNotEvicted() {
+        RouteCache cache = new RouteCache(router, 1);
+        cache.setLandmarks(List.of(new int[]{1, 1}, new int[]{8, 1}));
+
+        cache.route(0, 0, 9, 9);
+        cache.route(0, 9, 9, 0);
+        cache.route(1, 1, 8, 1);
+
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void remembersThatATargetCannotBeReached() {
+        GridRouter walled = GridRouter.fromSpec(new GridGeometry(5, false), "3,4;4,3;3,3", "");
+        RouteCache cache = new RouteCache(walled, 8);
+
+        assertNull(cache.route(0, 0, 4, 4));
+        assertNull(cache.route(0, 0, 4, 4));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void ignoresCellsOutsideTheGrid() {
+        RouteCache cache = new RouteCache(router, 8);
+
+        assertNull(cache.route(0, 0, 10, 0));
+        assertEquals(0, cache.getHits() + cache.getMisses());
+    }
+}
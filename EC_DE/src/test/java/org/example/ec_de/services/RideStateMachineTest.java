@@ -0,0 +1,134 @@
+package org.example.ec_de.services;
+
+import org.example.ec_de.model.CustomerStatusDto;
+import org.example.ec_de.model.ShortestPathFinder;
+import org.example.ec_de.model.TaxiState;
+import org.example.ec_de.model.TaxiStatusDto;
+import org.example.ec_de.utils.SimulationClock;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RideStateMachineTest {
+
+    private static final long TICK_MS = 1000;
+
+    // Reloj a pasos: los ticks solo corren al avanzarlo, en este mismo hilo, y no hace falta planificador
+    private final SimulationClock clock = new SimulationClock(1.0, true);
+    private final ShortestPathFinder pathFinder = new ShortestPathFinder();
+    private final List<TaxiStatusDto> published = new ArrayList<>();
+    private final RideStateMachine ride = new RideStateMachine("1", pathFinder, clock, null, published::add, TICK_MS);
+
+    @Test
+    void drivesTheCustomerFromPickupToDestination() {
+        ride.start(command(0, 0, 3, 0, 3, 3));
+
+        clock.advance(10 * TICK_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals(List.of(
+                "EN_ROUTE_TO_PICKUP 1,0", "EN_ROUTE_TO_PICKUP 2,0", "PICKUP 3,0",
+                "EN_ROUTE_TO_DESTINATION 3,1", "EN_ROUTE_TO_DESTINATION 3,2",
+                "EN_ROUTE_TO_DESTINATION 3,3", "DESTINATION_REACHED 3,3"), describe(published));
+        assertFalse(ride.isRiding());
+        assertEquals(TaxiState.DESTINATION_REACHED, ride.getState());
+    }
+
+    @Test
+    void stopsOnKoAndResumesFromTheSameStateOnOk() {
+        ride.start(command(0, 0, 3, 0, 3, 3));
+        clock.advance(TICK_MS, TimeUnit.MILLISECONDS);
+
+        ride.onSensorReading(false);
+        clock.advance(10 * TICK_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals(List.of("EN_ROUTE_TO_PICKUP 1,0", "EN_ROUTE_TO_PICKUP 2,0", "STOPPED 2,0"), describe(published));
+        assertTrue(ride.isStopped());
+        assertTrue(ride.isRiding());
+        assertEquals(TaxiState.EN_ROUTE_TO_PICKUP, ride.getState());
+
+        published.clear();
+        ride.onSensorReading(true);
+        clock.advance(10 * TICK_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals("PICKUP 3,0", describe(published).get(0));
+        assertEquals("DESTINATION_REACHED 3,3", describe(published).get(published.size() - 1));
+        assertFalse(ride.isStopped());
+        assertFalse(ride.isRiding());
+    }
+
+    @Test
+    void waitsForOkBeforeStartingACommandReceivedWhileStopped() {
+        ride.onSensorReading(false);
+        ride.start(command(5, 5, 5, 7, 6, 7));
+        clock.advance(5 * TICK_MS, TimeUnit.MILLISECONDS);
+
+        assertTrue(published.isEmpty());
+        assertTrue(ride.isRiding());
+
+        ride.onSensorReading(true);
+        clock.advance(0, TimeUnit.MILLISECONDS);
+
+        assertEquals(List.of("EN_ROUTE_TO_PICKUP 5,6"), describe(published));
+    }
+
+    @Test
+    void returnsToBaseWhenRecalled() {
+        ride.start(CustomerStatusDto.builder().taxiId("1").x(4).y(3).status(TaxiState.RETURNING_TO_BASE).build());
+
+        clock.advance(10 * TICK_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals(List.of("RETURNING_TO_BASE 3,2", "RETURNING_TO_BASE 2,1", "RETURNING_TO_BASE 1,1"), describe(published));
+        assertFalse(ride.isRiding());
+    }
+
+    @Test
+    void aTaxiBlockedInPublishDoesNotHoldBackTheOthers() throws Exception {
+        // Reloj real y un único hilo de planificador compartido, como en la flota simulada
+        SimulationClock realClock = new SimulationClock(1.0, false);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch moves = new CountDownLatch(5);
+        try {
+            RideStateMachine blocked = new RideStateMachine("1", new ShortestPathFinder(), realClock, scheduler,
+                    update -> awaitQuietly(release), 10);
+            RideStateMachine other = new RideStateMachine("2", new ShortestPathFinder(), realClock, scheduler,
+                    update -> moves.countDown(), 10);
+
+            blocked.start(command(0, 0, 9, 0, 9, 9));
+            other.start(command(0, 0, 9, 0, 9, 9));
+
+            assertTrue(moves.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static CustomerStatusDto command(int x, int y, int customerX, int customerY, int destX, int destY) {
+        return CustomerStatusDto.builder()
+                                .taxiId("1").x(x).y(y).status(TaxiState.ASSIGNED)
+                                .customerX(customerX).customerY(customerY).destX(destX).destY(destY)
+                                .build();
+    }
+
+    private static List<String> describe(List<TaxiStatusDto> updates) {
+        return updates.stream().map(update -> update.getStatus() + " " + update.getX() + "," + update.getY()).toList();
+    }
+}
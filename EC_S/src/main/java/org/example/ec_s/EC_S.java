@@ -7,6 +7,7 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 @SpringBootApplication
 @Slf4j
@@ -18,10 +19,16 @@ public class EC_S implements CommandLineRunner {
     @Value("${de.port}")
     private int dePort;
 
+    private final SimulationClock clock;
+
     private SensorSocketClient sensorClient;
     private boolean running = true;
     private boolean incidencia = false;
 
+    public EC_S(SimulationClock clock) {
+        this.clock = clock;
+    }
+
     public static void main(String[] args) {
         SpringApplication.run(EC_S.class, args);
     }
@@ -47,7 +54,7 @@ public class EC_S implements CommandLineRunner {
                     log.info("Enviado OK");
                 }
                 try {
-                    Thread.sleep(1000);
+                    clock.sleep(1, TimeUnit.SECONDS);
                 } catch (InterruptedException e) {
                     log.error("Error al dormir el hilo de envío de mensajes de estado");
                     e.printStackTrace();
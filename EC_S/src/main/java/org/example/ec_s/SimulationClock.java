@@ -0,0 +1,234 @@
+package org.example.ec_s;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock that paces the periodic loops of the simulation, so that a run can be compressed in time or stepped by hand.
+ * <p>
+ * By default it follows the system clock scaled by simulation.clock.speed: with a speed of 60, an hour of city traffic
+ * takes a minute and every simulated sleep or period is sixty times shorter. All modules must use the same speed.
+ * With simulation.clock.stepped set, time stands still until {@link #advance(long, TimeUnit)} is called, which runs
+ * the timers that fall due in order on the calling thread and wakes up the sleepers, for deterministic tests.
+ */
+@Component
+public class SimulationClock {
+
+    private final double speed;
+    private final boolean stepped;
+    private final long originNanos = System.nanoTime();
+
+    // Modo paso a paso: tiempo actual y temporizadores pendientes, protegidos por this
+    private long steppedNanos;
+    private long sequence;
+    private final PriorityQueue<SteppedTimer> steppedTimers = new PriorityQueue<>(
+            Comparator.comparingLong((SteppedTimer timer) -> timer.dueNanos).thenComparingLong(timer -> timer.sequence));
+
+    /**
+     * Constructs a new SimulationClock.
+     *
+     * @param speed   how many times faster than real time the simulation runs
+     * @param stepped whether time only moves when advanced by hand
+     */
+    public SimulationClock(@Value("${simulation.clock.speed:1.0}") double speed,
+                           @Value("${simulation.clock.stepped:false}") boolean stepped) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Simulation clock speed must be positive: " + speed);
+        }
+        this.speed = speed;
+        this.stepped = stepped;
+    }
+
+    /**
+     * Returns the simulated time, with the same use as {@link System#nanoTime()}: only differences are meaningful.
+     *
+     * @return the simulated time in nanoseconds
+     */
+    public long nanoTime() {
+        if (stepped) {
+            synchronized (this) {
+                return steppedNanos;
+            }
+        }
+        return (long) ((System.nanoTime() - originNanos) * speed);
+    }
+
+    /**
+     * Sleeps for a simulated duration.
+     *
+     * @param duration the simulated duration
+     * @param unit     the unit of the duration
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public void sleep(long duration, TimeUnit unit) throws InterruptedException {
+        if (!stepped) {
+            TimeUnit.NANOSECONDS.sleep(toRealNanos(unit.toNanos(duration)));
+            return;
+        }
+        synchronized (this) {
+            long wakeAt = steppedNanos + unit.toNanos(duration);
+            while (steppedNanos < wakeAt) {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * Converts a simulated duration to the real time it takes, for timeouts that cannot use the clock directly.
+     *
+     * @param simulatedNanos the simulated duration in nanoseconds
+     * @return the real duration in nanoseconds, or the same duration in stepped mode
+     */
+    public long toRealNanos(long simulatedNanos) {
+        return stepped ? simulatedNanos : (long) (simulatedNanos / speed);
+    }
+
+    /**
+     * Runs a task periodically at a fixed simulated rate, like {@link ScheduledExecutorService#scheduleAtFixedRate}.
+     * In stepped mode the executor is not used and the task runs on the thread that advances the clock.
+     *
+     * @param executor     the executor that runs the task in real time
+     * @param task         the task
+     * @param initialDelay the simulated delay before the first run
+     * @param period       the simulated period
+     * @param unit         the unit of the delay and the period
+     * @return a handle to cancel the task
+     */
+    public Timer scheduleAtFixedRate(ScheduledExecutorService executor, Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (stepped) {
+            return addSteppedTimer(task, unit.toNanos(initialDelay), unit.toNanos(period));
+        }
+        ScheduledFuture<?> future = executor.scheduleAtFixedRate(task, toRealNanos(unit.toNanos(initialDelay)),
+                Math.max(1, toRealNanos(unit.toNanos(period))), TimeUnit.NANOSECONDS);
+        return () -> future.cancel(false);
+    }
+
+    /**
+     * Runs a task periodically with a fixed simulated delay between runs, like {@link ScheduledExecutorService#scheduleWithFixedDelay}.
+     * In stepped mode the executor is not used and the task runs on the thread that advances the clock.
+     *
+     * @param executor     the executor that runs the task in real time
+     * @param task         the task
+     * @param initialDelay the simulated delay before the first run
+     * @param delay        the simulated delay between the end of a run and the start of the next
+     * @param unit         the unit of the delays
+     * @return a handle to cancel the task
+     */
+    public Timer scheduleWithFixedDelay(ScheduledExecutorService executor, Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        if (stepped) {
+            return addSteppedTimer(task, unit.toNanos(initialDelay), unit.toNanos(delay));
+        }
+        ScheduledFuture<?> future = executor.scheduleWithFixedDelay(task, toRealNanos(unit.toNanos(initialDelay)),
+                Math.max(1, toRealNanos(unit.toNanos(delay))), TimeUnit.NANOSECONDS);
+        return () -> future.cancel(false);
+    }
+
+    /**
+     * Moves a stepped clock forward, running in order the timers that fall due and waking up the sleepers.
+     *
+     * @param duration the simulated duration
+     * @param unit     the unit of the duration
+     * @throws IllegalStateException if the clock is not stepped
+     */
+    public void advance(long duration, TimeUnit unit) {
+        if (!stepped) {
+            throw new IllegalStateException("Only a stepped simulation clock can be advanced");
+        }
+        long target;
+        synchronized (this) {
+            target = steppedNanos + unit.toNanos(duration);
+        }
+        while (true) {
+            SteppedTimer timer;
+            synchronized (this) {
+                timer = steppedTimers.peek();
+                if (timer == null || timer.dueNanos > target) {
+                    steppedNanos = target;
+                    notifyAll();
+                    return;
+                }
+                steppedTimers.poll();
+                if (timer.cancelled) {
+                    continue;
+                }
+                steppedNanos = Math.max(steppedNanos, timer.dueNanos);
+                notifyAll();
+            }
+            // Fuera del cerrojo: la tarea puede usar el reloj
+            timer.task.run();
+            synchronized (this) {
+                if (!timer.cancelled) {
+                    timer.dueNanos += timer.periodNanos;
+                    steppedTimers.add(timer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the clock only moves when advanced by hand.
+     *
+     * @return true in stepped mode
+     */
+    public boolean isStepped() {
+        return stepped;
+    }
+
+    /**
+     * Returns how many times faster than real time the simulation runs.
+     *
+     * @return the speed-up factor
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    private synchronized Timer addSteppedTimer(Runnable task, long initialDelayNanos, long periodNanos) {
+        SteppedTimer timer = new SteppedTimer(task, steppedNanos + initialDelayNanos, Math.max(1, periodNanos), sequence++);
+        steppedTimers.add(timer);
+        return timer;
+    }
+
+    /**
+     * Handle of a periodic task.
+     */
+    public interface Timer {
+
+        /**
+         * Stops the task; a run already in progress is not interrupted.
+         */
+        void cancel();
+    }
+
+    /**
+     * A periodic task of a stepped clock.
+     */
+    private final class SteppedTimer implements Timer {
+        private final Runnable task;
+        private final long periodNanos;
+        private final long sequence;
+        private long dueNanos;
+        private volatile boolean cancelled;
+
+        private SteppedTimer(Runnable task, long dueNanos, long periodNanos, long sequence) {
+            this.task = task;
+            this.dueNanos = dueNanos;
+            this.periodNanos = periodNanos;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            synchronized (SimulationClock.this) {
+                steppedTimers.remove(this);
+            }
+        }
+    }
+}